@@ -0,0 +1,71 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Door;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Double door pair resolution, through the pair cache and without it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoorPairsBenchmark {
+    private DoorPairs _pairs;
+
+    private Block _doubleDoor;
+    private Door _doubleDoorData;
+    private Block _singleDoor;
+    private Door _singleDoorData;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        FakeServer server = FakeServer.Install();
+        Fakes.LoadSettings(new HashMap<>());
+
+        FakeWorld world = server.AddWorld("pairs");
+        _doubleDoor = world.PlaceDoor(0, 64, 0, Material.OAK_DOOR, BlockFace.EAST, Hinge.LEFT);
+        world.PlaceDoor(0, 64, 1, Material.OAK_DOOR, BlockFace.EAST, Hinge.RIGHT);
+        _singleDoor = world.PlaceDoor(8, 64, 0, Material.OAK_DOOR, BlockFace.EAST, Hinge.LEFT);
+
+        _doubleDoorData = (Door)_doubleDoor.getBlockData();
+        _singleDoorData = (Door)_singleDoor.getBlockData();
+
+        _pairs = new DoorPairs(new WorldIndex());
+    }
+
+    @Benchmark
+    public Block PairOfDoubleDoorCached() {
+        return _pairs.PairOf(_doubleDoor, _doubleDoorData);
+    }
+
+    @Benchmark
+    public Block PairOfSingleDoorCached() {
+        return _pairs.PairOf(_singleDoor, _singleDoorData);
+    }
+
+    // what the first click after a block change costs, including the
+    // invalidation itself
+    @Benchmark
+    public Block PairOfDoubleDoorUncached() {
+        _pairs.Invalidate(_doubleDoor);
+        return _pairs.PairOf(_doubleDoor, _doubleDoorData);
+    }
+}
@@ -0,0 +1,91 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Closing a double door, i.e. writing four door halves. The fakes have no
+// block physics, so this doesn't show what SkipBlockPhysics saves the server;
+// it shows what the direct writes and the look around for observers cost on
+// top of a plain setBlockData, with and without an observer watching.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoorWriteBenchmark {
+    @Param({ "true", "false" })
+    public boolean skipBlockPhysics;
+
+    @Param({ "false", "true" })
+    public boolean observed;
+
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+    private DoorCloserService _service;
+    private Block[] _halves;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.skipBlockPhysics_Key, skipBlockPhysics);
+        settings.put(Settings.playSound_Key, false);
+        Fakes.LoadSettings(settings);
+
+        _world = _server.AddWorld("writes");
+        Block left = _world.PlaceDoor(0, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.LEFT);
+        Block right = _world.PlaceDoor(1, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.RIGHT);
+        _halves = new Block[] { left, left.getRelative(BlockFace.UP), right, right.getRelative(BlockFace.UP) };
+
+        if (observed) {
+            // watching the top of the right leaf from the east
+            Block observer = _world.Set(2, 65, 0, Material.OBSERVER);
+            FakeBlockData.Of(FakeBlock.Of(observer).data).facing = BlockFace.WEST;
+        }
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserBenchmark");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+        _service = new PendingCloseService(_listener);
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    @Benchmark
+    public boolean CloseDoubleDoor() {
+        for (Block half : _halves) {
+            _world.Toggle(half);
+        }
+
+        _service.Schedule(_halves[0], 0);
+        _server.RunTicks(1);
+        return _world.IsOpen(_halves[3]);
+    }
+}
@@ -0,0 +1,106 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.entity.EntityInteractEvent;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// A villager trading hall: a few chunks of doors that villagers open over and
+// over, with CloseEntityDoors on. Each operation is one tick in which every
+// villager opens a door and half of them shut it again behind them. Pending
+// closes should stay bounded by the doors, not grow with the opens.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityDoorBenchmark {
+    @Param({ "100", "1000" })
+    public int villagers;
+
+    // DOORS doors in a row along x, two blocks apart, over several chunks
+    private static final int DOORS = 256;
+
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+    private Block[] _doors;
+    private EntityInteractEvent[] _opens;
+    private int _tick;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.closeEntityDoors_Key, true);
+        Fakes.LoadSettings(settings);
+
+        _world = _server.AddWorld("villagers");
+        _doors = new Block[DOORS];
+        for (int i = 0; i < DOORS; i++) {
+            _doors[i] = _world.PlaceDoor(i * 2, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.LEFT);
+        }
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserBenchmark");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+
+        Entity villager = (Entity)Proxy.newProxyInstance(EntityDoorBenchmark.class.getClassLoader(), new Class<?>[] { Entity.class },
+            (proxy, method, args) -> Fakes.DefaultFor(method.getReturnType()));
+
+        _opens = new EntityInteractEvent[DOORS];
+        for (int i = 0; i < DOORS; i++) {
+            _opens[i] = new EntityInteractEvent(villager, _doors[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    @Benchmark
+    public long OpenAndTick() {
+        int tick = _tick++;
+
+        for (int v = 0; v < villagers; v++) {
+            int door = (v * 31 + tick) % DOORS;
+            Block block = _doors[door];
+
+            if (!_world.IsOpen(block)) {
+                _listener.entityInteract(_opens[door]);
+                _world.Toggle(block);
+            } else if ((v & 1) == 0) {
+                // villagers close doors behind them; no event for that
+                _world.Toggle(block);
+            }
+        }
+
+        _server.RunTicks(1);
+        return _listener.GetMetrics().PendingCloses();
+    }
+}
@@ -0,0 +1,118 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The PlayerInteractEvent handler, which runs for every right click on the
+// server. Each in-scope click is followed by the toggle the server itself
+// would do, so with DebounceTicks at 0 the door alternates between being
+// scheduled and cancelled, and with it on the clicks land in the debounce
+// window and only move the deadline. With debugTrace every click and close
+// is also written to the /dctrace ring.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InteractBenchmark {
+    @Param({ "0", "10" })
+    public int debounceTicks;
+
+    @Param({ "false", "true" })
+    public boolean debugTrace;
+
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+
+    private Block _stone;
+    private Block _gate;
+    private Block _door;
+
+    private PlayerInteractEvent _stoneClick;
+    private PlayerInteractEvent _gateClick;
+    private PlayerInteractEvent _doorClick;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.debounceTicks_Key, debounceTicks);
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        _world = _server.AddWorld("interact");
+        _stone = _world.Set(0, 64, 0, Material.STONE);
+        _gate = _world.Set(4, 64, 0, Material.OAK_FENCE_GATE);
+
+        // a double door, clicked on its left leaf
+        _door = _world.PlaceDoor(8, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.LEFT);
+        _world.PlaceDoor(9, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.RIGHT);
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserBenchmark");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+
+        if (debugTrace) {
+            _listener.GetDebugTrace().TraceAll();
+        }
+
+        Player player = _server.CreatePlayer("clicker");
+        _stoneClick = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, _stone, BlockFace.NORTH);
+        _gateClick = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, _gate, BlockFace.NORTH);
+        _doorClick = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, _door, BlockFace.NORTH);
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    // the common case: a click on something that isn't a door at all
+    @Benchmark
+    public PlayerInteractEvent InteractOutOfScope() {
+        _listener.blockInteract(_stoneClick);
+        return _stoneClick;
+    }
+
+    @Benchmark
+    public PlayerInteractEvent InteractInScopeGate() {
+        _listener.blockInteract(_gateClick);
+        _world.Toggle(_gate);
+        return _gateClick;
+    }
+
+    // includes the pair lookup and the sync of the other leaf
+    @Benchmark
+    public PlayerInteractEvent InteractInScopeDoubleDoor() {
+        _listener.blockInteract(_doorClick);
+        _world.Toggle(_door);
+        return _doorClick;
+    }
+}
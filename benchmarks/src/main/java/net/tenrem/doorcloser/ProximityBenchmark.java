@@ -0,0 +1,123 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// CloseMode Proximity with AutoOpen, thousands of doors and many players.
+// Each operation is one server tick: every player steps one block along a
+// row of doors, which updates the player index and opens the doors they walk
+// up to, then the tick re-checks the proximity closes that are due.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProximityBenchmark {
+    @Param({ "100", "500" })
+    public int players;
+
+    // a GRID x GRID square of trap doors, SPACING blocks apart
+    private static final int GRID = 64;
+    private static final int SPACING = 4;
+    private static final int WIDTH = GRID * SPACING;
+
+    private FakeServer _server;
+    private InteractListener _listener;
+
+    // per player, one move event for each step along its row and back
+    private PlayerMoveEvent[][] _moves;
+    private int _step;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.closeMode_Key, "Proximity");
+        settings.put(Settings.autoOpen_Key, true);
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        FakeWorld world = _server.AddWorld("proximity");
+        Block[] doors = new Block[GRID * GRID];
+        for (int i = 0; i < doors.length; i++) {
+            doors[i] = world.Set((i % GRID) * SPACING, 64, (i / GRID) * SPACING, Material.OAK_TRAPDOOR);
+        }
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserBenchmark");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+
+        // click every door open once with nobody around, so they're all
+        // closed by proximity and remembered for AutoOpen
+        Player clicker = _server.CreatePlayer("clicker");
+        for (Block door : doors) {
+            _listener.blockInteract(new PlayerInteractEvent(clicker, Action.RIGHT_CLICK_BLOCK, null, door, BlockFace.NORTH));
+            world.Toggle(door);
+        }
+        _server.RunTicks(20);
+
+        // players walk up and down rows next to the doors, one row each
+        World handle = world.Handle();
+        _moves = new PlayerMoveEvent[players][2 * WIDTH];
+
+        for (int p = 0; p < players; p++) {
+            Player player = _server.CreatePlayer("walker" + p);
+            double z = ((p * 7) % GRID) * SPACING + 1;
+            Location previous = new Location(handle, 0.5, 64, z);
+
+            for (int step = 0; step < 2 * WIDTH; step++) {
+                int x = step < WIDTH ? step : 2 * WIDTH - 1 - step;
+                Location next = new Location(handle, x + 0.5, 64, z);
+                _moves[p][step] = new PlayerMoveEvent(player, previous, next);
+                previous = next;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    @Benchmark
+    public int MoveAndTick() {
+        int step = _step;
+        _step = step + 1 == 2 * WIDTH ? 0 : step + 1;
+
+        PlayerIndex playerIndex = _listener.GetPlayerIndex();
+        for (PlayerMoveEvent[] moves : _moves) {
+            playerIndex.playerMove(moves[step]);
+        }
+
+        _server.RunTicks(1);
+        return playerIndex.Size();
+    }
+}
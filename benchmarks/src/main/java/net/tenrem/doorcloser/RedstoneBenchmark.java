@@ -0,0 +1,124 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The redstone side of LeavePoweredDoors: the event handler, which sees every
+// redstone change on the server and should turn away dust and the like on
+// the material alone, a click on a door a circuit is holding open, and a
+// clock that powers a door while a close is pending on it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedstoneBenchmark {
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+
+    private Block _clockDoor;
+
+    private BlockRedstoneEvent _wireOn;
+    private BlockRedstoneEvent _clockOn;
+    private BlockRedstoneEvent _clockOff;
+    private PlayerInteractEvent _poweredClick;
+    private PlayerInteractEvent _clockClick;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        _world = _server.AddWorld("redstone");
+        Block wire = _world.Set(0, 64, 0, Material.REDSTONE_WIRE);
+
+        // held open by a lever, the whole time
+        Block poweredDoor = _world.PlaceDoor(4, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.RIGHT);
+        SetPowered(poweredDoor, true);
+
+        _clockDoor = _world.PlaceDoor(8, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.RIGHT);
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserBenchmark");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+        _listener.blockRedstone(new BlockRedstoneEvent(poweredDoor, 0, 15));
+
+        Player player = _server.CreatePlayer("clicker");
+        _wireOn = new BlockRedstoneEvent(wire, 0, 15);
+        _clockOn = new BlockRedstoneEvent(_clockDoor, 0, 15);
+        _clockOff = new BlockRedstoneEvent(_clockDoor, 15, 0);
+        _poweredClick = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, poweredDoor, BlockFace.NORTH);
+        _clockClick = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, _clockDoor, BlockFace.NORTH);
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    // the common case: redstone that has nothing to do with doors
+    @Benchmark
+    public BlockRedstoneEvent RedstoneNotDoor() {
+        _listener.blockRedstone(_wireOn);
+        return _wireOn;
+    }
+
+    @Benchmark
+    public PlayerInteractEvent ClickPoweredDoor() {
+        _listener.blockInteract(_poweredClick);
+        return _poweredClick;
+    }
+
+    // a player opens the door, then the clock powers it (cancelling the
+    // close) and lets it go again
+    @Benchmark
+    public long ClockCancelsClose() {
+        _listener.blockInteract(_clockClick);
+
+        SetPowered(_clockDoor, true);
+        _listener.blockRedstone(_clockOn);
+
+        SetPowered(_clockDoor, false);
+        _listener.blockRedstone(_clockOff);
+
+        return _listener.GetMetrics().PendingCloses();
+    }
+
+    // what the server does to both halves when the power changes
+    private void SetPowered(Block lower, boolean powered) {
+        for (Block block : new Block[] { lower, lower.getRelative(BlockFace.UP) }) {
+            FakeBlockData data = FakeBlockData.Of(FakeBlock.Of(block).data);
+            data.powered = powered;
+            data.open = powered;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Finding the settings for a clicked block with a growing number of Regions
+// overrides. The time per lookup should stay about flat as regions are added.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionLookupBenchmark {
+    @Param({ "0", "100", "10000" })
+    public int regions;
+
+    // regions and doors are spread over a WORLD_SIZE square
+    private static final int WORLD_SIZE = 8192;
+    private static final int REGION_SIZE = 48;
+    private static final int DOORS = 4096;
+
+    private Settings _settings;
+    private Block[] _doors;
+    private int _next;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        FakeServer server = FakeServer.Install();
+        Random random = new Random(17);
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.worlds_Key + ".regions." + Settings.secondsToRemainOpen_Key, 5);
+
+        for (int i = 0; i < regions; i++) {
+            String prefix = Settings.regions_Key + ".r" + i + ".";
+            int x = random.nextInt(WORLD_SIZE);
+            int z = random.nextInt(WORLD_SIZE);
+
+            settings.put(prefix + Settings.regionWorld_Key, "regions");
+            settings.put(prefix + Settings.regionMin_Key, Arrays.asList(x, 0, z));
+            settings.put(prefix + Settings.regionMax_Key, Arrays.asList(x + REGION_SIZE, 255, z + REGION_SIZE));
+            settings.put(prefix + Settings.regionPriority_Key, i % 4);
+            settings.put(prefix + Settings.secondsToRemainOpen_Key, 1 + i % 10);
+        }
+        Fakes.LoadSettings(settings);
+        _settings = Settings.Current();
+
+        FakeWorld world = server.AddWorld("regions");
+        _doors = new Block[DOORS];
+        for (int i = 0; i < DOORS; i++) {
+            _doors[i] = world.Set(random.nextInt(WORLD_SIZE), 64, random.nextInt(WORLD_SIZE), Material.OAK_DOOR);
+        }
+    }
+
+    @Benchmark
+    public Settings At() {
+        Block door = _doors[_next];
+        _next = (_next + 1) & (DOORS - 1);
+        return _settings.At(door);
+    }
+}
@@ -0,0 +1,103 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Closes scheduled and fired on region threads, the way they run on Folia.
+// Each operation schedules a close on every door from the thread that owns
+// it, then runs ticks until they have all fired. Shards are created and
+// retired along the way, as on a real server.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegionTickBenchmark {
+    @Param({ "1", "4" })
+    public int threads;
+
+    // region sections per side, and doors in each
+    private static final int SECTIONS = 8;
+    private static final int DOORS_PER_SECTION = 256;
+
+    // blocks per side of a region section
+    private static final int SECTION_BLOCKS = 16 << CloseShard.SECTION_SHIFT;
+
+    private FakeRegionScheduling _scheduling;
+    private InteractListener _listener;
+    private World _world;
+    private Block[] _doors;
+    private long[] _keys;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        FakeServer server = FakeServer.Install();
+        server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.maxBlockUpdatesPerTick_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        // every block is created up front, so the fake world's map is only
+        // read once the worker threads are running
+        FakeWorld world = server.AddWorld("regions");
+        _world = world.Handle();
+        _doors = new Block[SECTIONS * SECTIONS * DOORS_PER_SECTION];
+        _keys = new long[_doors.length];
+
+        int i = 0;
+        for (int sectionX = 0; sectionX < SECTIONS; sectionX++) {
+            for (int sectionZ = 0; sectionZ < SECTIONS; sectionZ++) {
+                for (int d = 0; d < DOORS_PER_SECTION; d++) {
+                    int x = sectionX * SECTION_BLOCKS + (d % 16) * 16;
+                    int z = sectionZ * SECTION_BLOCKS + (d / 16) * 16;
+                    _doors[i] = world.Set(x, 64, z, Material.OAK_TRAPDOOR);
+                    _keys[i] = BlockKey.Pack(0, x, 64, z);
+                    i++;
+                }
+            }
+        }
+
+        _scheduling = new FakeRegionScheduling(threads);
+        _listener = new InteractListener(server.CreatePlugin("DoorCloserBenchmark"), _scheduling);
+        _listener.Start();
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        _listener.CloseAllPending();
+        _scheduling.Shutdown();
+    }
+
+    @Benchmark
+    public long ScheduleAndFire() {
+        for (int i = 0; i < _doors.length; i++) {
+            Block door = _doors[i];
+            long key = _keys[i];
+            _scheduling.RunAt(_world, door.getX() >> 4, door.getZ() >> 4, () -> _listener.ScheduleClose(door, null, key, 1, false));
+        }
+
+        // one second of delay, plus the tick the closes are scheduled on
+        _scheduling.RunTicks(22);
+        return _listener.GetMetrics().closesFired.sum();
+    }
+}
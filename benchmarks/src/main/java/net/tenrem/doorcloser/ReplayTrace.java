@@ -0,0 +1,361 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.GameMode;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+// Replays door clicks against the plugin without a server: a trace recorded
+// with /dcrecord, or a synthetic one. Each click goes to the interact handler
+// on the tick it was recorded on, the door flips the way the server would
+// flip it, and then the tick runs. Afterwards it keeps ticking until nothing
+// is pending, and reports throughput, the work done per tick and how many
+// closes were pending over time.
+//
+//   java -cp benchmarks/target/benchmarks.jar net.tenrem.doorcloser.ReplayTrace <trace> [options]
+//   java -cp benchmarks/target/benchmarks.jar net.tenrem.doorcloser.ReplayTrace --synthetic [options]
+//
+// Like the benchmarks, this runs on the in-memory fakes, so compare numbers
+// between runs rather than reading them as real server timings.
+public final class ReplayTrace {
+    private static final String USAGE = String.join("\n",
+        "Usage: ReplayTrace <trace file> | --synthetic [options]",
+        "  --config <config.yml>  the server's config (default: every wooden door, gate and trap door in scope)",
+        "  --set <Key>=<Value>    change one setting, e.g. --set MaxBlockUpdatesPerTick=64 (repeatable)",
+        "  --doors <n>            synthetic: doors, gates and trap doors to place (default 10000)",
+        "  --players <n>          synthetic: players clicking (default 200)",
+        "  --clicks <n>           synthetic: average clicks per tick (default 20)",
+        "  --ticks <n>            synthetic: ticks to generate clicks for (default 12000)",
+        "  --seed <n>             synthetic: random seed (default 1)");
+
+    // stop waiting for the last closes after this many ticks
+    private static final int MAX_DRAIN_TICKS = 20 * 60 * 10;
+
+    // rows in the pending-over-time table
+    private static final int TIMELINE_ROWS = 20;
+
+    private static final class Click {
+        final int tick;
+        final FakeWorld world;
+        final Block block;
+        final Player player;
+
+        // the state the door was in when it was clicked, or null to click it
+        // as it is
+        final Boolean wasOpen;
+
+        Click(int tick, FakeWorld world, Block block, Player player, Boolean wasOpen) {
+            this.tick = tick;
+            this.world = world;
+            this.block = block;
+            this.player = player;
+            this.wasOpen = wasOpen;
+        }
+    }
+
+    private final FakeServer _server = FakeServer.Install();
+    private final Map<String, FakeWorld> _worlds = new HashMap<>();
+    private final Map<Integer, Player> _players = new HashMap<>();
+    private final Map<Integer, UUID> _playerIds = new HashMap<>();
+    private final TreeSet<String> _materials = new TreeSet<>();
+    private final List<Click> _clicks = new ArrayList<>();
+    private int _skipped;
+
+    private ReplayTrace() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String trace = null;
+        boolean synthetic = false;
+        String config = null;
+        Map<String, Object> settings = new HashMap<>();
+        int doors = 10000, players = 200, clicks = 20, ticks = 12000;
+        long seed = 1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+
+                if (arg.equals("--synthetic")) {
+                    synthetic = true;
+                } else if (arg.equals("--config")) {
+                    config = args[++i];
+                } else if (arg.equals("--set")) {
+                    String[] pair = args[++i].split("=", 2);
+                    settings.put(pair[0], ParseValue(pair[1]));
+                } else if (arg.equals("--doors")) {
+                    doors = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--players")) {
+                    players = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--clicks")) {
+                    clicks = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--ticks")) {
+                    ticks = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--seed")) {
+                    seed = Long.parseLong(args[++i]);
+                } else if (!arg.startsWith("--") && trace == null) {
+                    trace = arg;
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (RuntimeException ex) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (synthetic == (trace != null)) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        ReplayTrace replay = new ReplayTrace();
+        if (synthetic) {
+            replay.Generate(doors, players, clicks, ticks, new Random(seed));
+        } else {
+            replay.Load(new File(trace));
+        }
+
+        replay.LoadSettings(config, settings);
+        replay.Run();
+    }
+
+    private static Object ParseValue(String value) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value);
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            // not a whole number
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return value;
+        }
+    }
+
+    private void Load(File file) throws IOException {
+        InteractionTrace.Read(file, (tick, worldName, x, y, z, materialName, player, flags) -> {
+            Material material = materialName != null ? Material.matchMaterial(materialName) : null;
+            if (worldName == null || material == null) {
+                _skipped++;
+                return;
+            }
+
+            FakeWorld world = WorldNamed(worldName);
+            Block block = Place(world, x, y, z, material);
+            _clicks.add(new Click(tick, world, block, PlayerFor(player, flags), (flags & InteractionTrace.FLAG_WAS_OPEN) != 0));
+        });
+
+        System.out.println("Loaded " + _clicks.size() + " clicks from " + file
+            + (_skipped > 0 ? " (" + _skipped + " skipped, unknown world or material)" : "") + ".");
+    }
+
+    // doors, gates and trap doors in a square, clicked at random by random
+    // players; each tick gets anywhere from none to twice the average clicks
+    private void Generate(int doors, int players, int clicksPerTick, int ticks, Random random) {
+        Material[] kinds = { Material.OAK_DOOR, Material.OAK_FENCE_GATE, Material.OAK_TRAPDOOR };
+        FakeWorld world = WorldNamed("synthetic");
+        int side = (int)Math.ceil(Math.sqrt(doors));
+
+        Block[] blocks = new Block[doors];
+        for (int i = 0; i < doors; i++) {
+            blocks[i] = Place(world, (i % side) * 3, 64, (i / side) * 3, kinds[i % kinds.length]);
+        }
+
+        for (int tick = 0; tick < ticks; tick++) {
+            int count = clicksPerTick > 0 ? random.nextInt(2 * clicksPerTick + 1) : 0;
+            for (int c = 0; c < count; c++) {
+                Block block = blocks[random.nextInt(doors)];
+                _clicks.add(new Click(tick, world, block, PlayerFor(random.nextInt(players), 0), null));
+            }
+        }
+
+        System.out.println("Generated " + _clicks.size() + " clicks on " + doors + " blocks by " + players + " players over " + ticks + " ticks.");
+    }
+
+    private void LoadSettings(String configFile, Map<String, Object> settings) {
+        if (configFile != null) {
+            YamlConfiguration config = YamlConfiguration.loadConfiguration(new File(configFile));
+            config.set(Settings.persistPendingCloses_Key, false);
+            for (Map.Entry<String, Object> entry : settings.entrySet()) {
+                config.set(entry.getKey(), entry.getValue());
+            }
+            Settings.ReadConfigValues(config, Logger.getLogger("DoorCloser"));
+            return;
+        }
+
+        // everything that was clicked is in scope, except the iron ones
+        Map<String, Object> defaults = new HashMap<>();
+        defaults.put(Settings.trapDoorsInScope_Key, InScope("_TRAPDOOR"));
+        defaults.put(Settings.gatesInScope_Key, InScope("_FENCE_GATE"));
+        defaults.put(Settings.doorsInScope_Key, InScope("_DOOR"));
+        defaults.putAll(settings);
+        Fakes.LoadSettings(defaults);
+    }
+
+    private List<String> InScope(String suffix) {
+        List<String> names = new ArrayList<>();
+        for (String name : _materials) {
+            if (name.endsWith(suffix) && !name.startsWith("IRON_")) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private void Run() {
+        _server.ClearTasks();
+        Plugin plugin = _server.CreatePlugin("DoorCloserReplay");
+        InteractListener listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        listener.Start();
+        Metrics metrics = listener.GetMetrics();
+
+        int lastTick = _clicks.isEmpty() ? 0 : _clicks.get(_clicks.size() - 1).tick;
+        long[] tickNanos = new long[lastTick + 1 + MAX_DRAIN_TICKS];
+        int[] pending = new int[tickNanos.length];
+
+        long started = System.nanoTime();
+        int next = 0;
+        int tick = 0;
+
+        // every recorded tick, then on until the last close has fired
+        for (; tick < tickNanos.length; tick++) {
+            if (tick > lastTick && metrics.PendingCloses() == 0) {
+                break;
+            }
+
+            long tickStart = System.nanoTime();
+
+            while (next < _clicks.size() && _clicks.get(next).tick <= tick) {
+                Feed(listener, _clicks.get(next++));
+            }
+            _server.RunTicks(1);
+
+            tickNanos[tick] = System.nanoTime() - tickStart;
+            pending[tick] = (int)metrics.PendingCloses();
+        }
+
+        long elapsed = System.nanoTime() - started;
+        Report(tick, lastTick, elapsed, Arrays.copyOf(tickNanos, tick), Arrays.copyOf(pending, tick));
+
+        for (String line : metrics.Report()) {
+            System.out.println(line);
+        }
+
+        listener.CloseAllPending();
+    }
+
+    // the click, then the flip the server makes unless a plugin cancelled it
+    private void Feed(InteractListener listener, Click click) {
+        if (click.wasOpen != null && click.world.IsOpen(click.block) != click.wasOpen) {
+            click.world.Toggle(click.block);
+        }
+
+        PlayerInteractEvent event = new PlayerInteractEvent(click.player, Action.RIGHT_CLICK_BLOCK, null, click.block, BlockFace.NORTH);
+        listener.blockInteract(event);
+
+        if (!event.isCancelled()) {
+            click.world.Toggle(click.block);
+        }
+    }
+
+    private void Report(int ticks, int lastTick, long elapsedNanos, long[] tickNanos, int[] pending) {
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.println();
+        System.out.printf("Replayed %d clicks over %d ticks (%d more to drain) in %.2f s%n", _clicks.size(), lastTick + 1, ticks - lastTick - 1, seconds);
+        System.out.printf("Throughput: %.0f clicks/s, %.0f ticks/s (%.1fx real time)%n",
+            _clicks.size() / seconds, ticks / seconds, ticks / seconds / 20);
+
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+
+        System.out.printf("Work per tick (us): mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+            sorted.length > 0 ? total / 1e3 / sorted.length : 0,
+            Percentile(sorted, 0.5) / 1e3, Percentile(sorted, 0.9) / 1e3, Percentile(sorted, 0.99) / 1e3, Percentile(sorted, 1) / 1e3);
+
+        // pending closes and the worst tick, over even slices of the run
+        System.out.println();
+        System.out.println("      tick    pending  max pending  max work (us)");
+
+        int rowTicks = Math.max(1, (ticks + TIMELINE_ROWS - 1) / TIMELINE_ROWS);
+        for (int start = 0; start < ticks; start += rowTicks) {
+            int end = Math.min(ticks, start + rowTicks);
+            int maxPending = 0;
+            long maxNanos = 0;
+
+            for (int t = start; t < end; t++) {
+                maxPending = Math.max(maxPending, pending[t]);
+                maxNanos = Math.max(maxNanos, tickNanos[t]);
+            }
+
+            System.out.printf("%10d %10d %12d %14.1f%n", start, pending[end - 1], maxPending, maxNanos / 1e3);
+        }
+        System.out.println();
+    }
+
+    private static long Percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int)Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private FakeWorld WorldNamed(String name) {
+        return _worlds.computeIfAbsent(name, _server::AddWorld);
+    }
+
+    // puts the material at the position, if it isn't there already
+    private Block Place(FakeWorld world, int x, int y, int z, Material material) {
+        Block block = world.BlockAt(x, y, z);
+        if (block.getType() == material) {
+            return block;
+        }
+
+        _materials.add(material.name());
+        if (material.name().endsWith("_DOOR")) {
+            return world.PlaceDoor(x, y, z, material, BlockFace.NORTH, Hinge.LEFT);
+        }
+        return world.Set(x, y, z, material);
+    }
+
+    // one fake player per recorded player and sneaking/creative combination,
+    // all with that player's id
+    private Player PlayerFor(int number, int flags) {
+        boolean sneaking = (flags & InteractionTrace.FLAG_SNEAKING) != 0;
+        boolean creative = (flags & InteractionTrace.FLAG_CREATIVE) != 0;
+        int variant = number * 4 + (sneaking ? 1 : 0) + (creative ? 2 : 0);
+
+        return _players.computeIfAbsent(variant, key -> _server.CreatePlayer("player" + number,
+            _playerIds.computeIfAbsent(number, n -> UUID.randomUUID()),
+            creative ? GameMode.CREATIVE : GameMode.SURVIVAL, sneaking));
+    }
+}
@@ -0,0 +1,96 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Scheduling and cancelling closes with a large number already pending.
+// Every operation cancels one pending close and schedules it again, so the
+// pending count stays at the parameter for the whole run. Deadlines are
+// spread over ten minutes to exercise every level of the wheel.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class ScheduleBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int pendingCloses;
+
+    // spread the doors over a square this many blocks wide
+    private static final int AREA = 2048;
+
+    private InteractListener _listener;
+    private Block _door;
+    private long[] _keys;
+    private PendingClose[] _pending;
+    private int _next;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        FakeServer server = FakeServer.Install();
+        server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.maxPendingCloses_Key, pendingCloses * 2);
+        Fakes.LoadSettings(settings);
+
+        // the wheel, index and shards all work off the key, so one block
+        // handle stands in for every door and keeps the fake out of the heap
+        FakeWorld world = server.AddWorld("schedule");
+        _door = world.Set(0, 64, 0, Material.OAK_TRAPDOOR);
+
+        Plugin plugin = server.CreatePlugin("DoorCloserBenchmark");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+
+        _keys = new long[pendingCloses];
+        _pending = new PendingClose[pendingCloses];
+
+        for (int i = 0; i < pendingCloses; i++) {
+            _keys[i] = BlockKey.Pack(0, i % AREA - AREA / 2, 64 + i / (AREA * AREA), (i / AREA) % AREA - AREA / 2);
+            _pending[i] = _listener.ScheduleClose(_door, null, _keys[i], SecondsFor(i), false);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        for (PendingClose pending : _pending) {
+            _listener.CancelClose(pending);
+        }
+    }
+
+    @Benchmark
+    public PendingClose CancelAndSchedule() {
+        int i = _next;
+        _next = i + 1 == pendingCloses ? 0 : i + 1;
+
+        _listener.CancelClose(_pending[i]);
+        PendingClose pending = _listener.ScheduleClose(_door, null, _keys[i], SecondsFor(i), false);
+        _pending[i] = pending;
+        return pending;
+    }
+
+    // 1 to 600 seconds
+    private static float SecondsFor(int i) {
+        return 1 + i % 600;
+    }
+}
@@ -0,0 +1,91 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+// In-memory Block. Like the real one, getBlockData() hands out a copy and
+// changes only stick once they're passed back through setBlockData().
+final class FakeBlock implements InvocationHandler {
+    private final FakeWorld _world;
+    private final int _x;
+    private final int _y;
+    private final int _z;
+
+    BlockData data = FakeBlockData.Create(Material.AIR);
+
+    private FakeBlock(FakeWorld world, int x, int y, int z) {
+        _world = world;
+        _x = x;
+        _y = y;
+        _z = z;
+    }
+
+    static Block Create(FakeWorld world, int x, int y, int z) {
+        return (Block)Proxy.newProxyInstance(FakeBlock.class.getClassLoader(), new Class<?>[] { Block.class }, new FakeBlock(world, x, y, z));
+    }
+
+    static FakeBlock Of(Block block) {
+        return (FakeBlock)Proxy.getInvocationHandler(block);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getType":
+                return data.getMaterial();
+            case "getBlockData":
+                return FakeBlockData.Of(data).Copy();
+            case "setBlockData":
+                data = FakeBlockData.Of((BlockData)args[0]).Copy();
+                if (args.length == 1 || (Boolean)args[1]) {
+                    _world.ApplyPhysics((Block)proxy);
+                }
+                return null;
+            case "setType":
+                data = FakeBlockData.Create((Material)args[0]);
+                return null;
+            case "getX":
+                return _x;
+            case "getY":
+                return _y;
+            case "getZ":
+                return _z;
+            case "getWorld":
+                return _world.Handle();
+            case "getLocation":
+                if (args == null) {
+                    return new Location(_world.Handle(), _x, _y, _z);
+                }
+                return null;
+            case "getRelative":
+                return Relative(args);
+            case "isEmpty":
+                return data.getMaterial() == Material.AIR;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "FakeBlock[" + _x + "," + _y + "," + _z + "," + data.getMaterial() + "]";
+            default:
+                return Fakes.DefaultFor(method.getReturnType());
+        }
+    }
+
+    private Block Relative(Object[] args) {
+        if (args.length == 3) {
+            return _world.BlockAt(_x + (Integer)args[0], _y + (Integer)args[1], _z + (Integer)args[2]);
+        }
+
+        BlockFace face = (BlockFace)args[0];
+        int distance = args.length == 2 ? (Integer)args[1] : 1;
+        return _world.BlockAt(_x + face.getModX() * distance, _y + face.getModY() * distance, _z + face.getModZ() * distance);
+    }
+}
@@ -0,0 +1,113 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.Bisected.Half;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Door;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.block.data.type.Gate;
+import org.bukkit.block.data.type.Observer;
+import org.bukkit.block.data.type.TrapDoor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+// In-memory BlockData. Doors, gates, trap doors and observers (picked by
+// material name) also implement the matching Bukkit interface, with just
+// enough state for the plugin: facing, half, hinge, open and powered.
+final class FakeBlockData implements InvocationHandler {
+    final Material material;
+    BlockFace facing = BlockFace.NORTH;
+    Half half = Half.BOTTOM;
+    Hinge hinge = Hinge.LEFT;
+    boolean open;
+    boolean powered;
+
+    private FakeBlockData(Material material) {
+        this.material = material;
+    }
+
+    static BlockData Create(Material material) {
+        return new FakeBlockData(material).NewProxy();
+    }
+
+    static FakeBlockData Of(BlockData data) {
+        return (FakeBlockData)Proxy.getInvocationHandler(data);
+    }
+
+    // a separate copy, the same as the server hands out from getBlockData()
+    BlockData Copy() {
+        FakeBlockData copy = new FakeBlockData(material);
+        copy.facing = facing;
+        copy.half = half;
+        copy.hinge = hinge;
+        copy.open = open;
+        copy.powered = powered;
+        return copy.NewProxy();
+    }
+
+    private BlockData NewProxy() {
+        return (BlockData)Proxy.newProxyInstance(FakeBlockData.class.getClassLoader(), new Class<?>[] { InterfaceFor(material) }, this);
+    }
+
+    private static Class<?> InterfaceFor(Material material) {
+        String name = material.name();
+
+        if (name.endsWith("_TRAPDOOR")) {
+            return TrapDoor.class;
+        } else if (name.endsWith("_FENCE_GATE")) {
+            return Gate.class;
+        } else if (name.endsWith("_DOOR")) {
+            return Door.class;
+        } else if (name.equals("OBSERVER")) {
+            return Observer.class;
+        } else {
+            return BlockData.class;
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getMaterial":
+                return material;
+            case "getFacing":
+                return facing;
+            case "setFacing":
+                facing = (BlockFace)args[0];
+                return null;
+            case "getHalf":
+                return half;
+            case "setHalf":
+                half = (Half)args[0];
+                return null;
+            case "getHinge":
+                return hinge;
+            case "setHinge":
+                hinge = (Hinge)args[0];
+                return null;
+            case "isOpen":
+                return open;
+            case "setOpen":
+                open = (Boolean)args[0];
+                return null;
+            case "isPowered":
+                return powered;
+            case "setPowered":
+                powered = (Boolean)args[0];
+                return null;
+            case "clone":
+                return Copy();
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "FakeBlockData[" + material + (open ? ",open" : "") + "]";
+            default:
+                return Fakes.DefaultFor(method.getReturnType());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Stands in for Folia's region threads. Every region section belongs to one
+// of a fixed number of worker threads, picked by hash, and RunTicks() runs a
+// tick of each worker's tasks in parallel and waits for all of them, much
+// like regions ticking side by side. Global and async tasks run on the
+// calling thread.
+final class FakeRegionScheduling extends Scheduling {
+    private static final class Timer implements Task {
+        final Runnable task;
+        volatile boolean cancelled;
+
+        Timer(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void Cancel() {
+            cancelled = true;
+        }
+    }
+
+    // one region thread's tasks. Timers are only touched by the worker itself
+    private static final class Worker implements Callable<Void> {
+        final List<Timer> timers = new ArrayList<>();
+        final ConcurrentLinkedQueue<Runnable> queued = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public Void call() {
+            Runnable task;
+            while ((task = queued.poll()) != null) {
+                task.run();
+            }
+
+            for (int i = 0; i < timers.size(); i++) {
+                Timer timer = timers.get(i);
+                if (!timer.cancelled) {
+                    timer.task.run();
+                }
+            }
+            timers.removeIf(timer -> timer.cancelled);
+            return null;
+        }
+    }
+
+    private final Worker[] _workers;
+    private final List<Worker> _workerList = new ArrayList<>();
+    private final ExecutorService _executor;
+    private final List<Timer> _globalTimers = new ArrayList<>();
+
+    FakeRegionScheduling(int threads) {
+        _workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            _workers[i] = new Worker();
+            _workerList.add(_workers[i]);
+        }
+        _executor = Executors.newFixedThreadPool(threads);
+    }
+
+    // runs the global tasks, then every region's tasks, one tick at a time
+    void RunTicks(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            for (int t = 0; t < _globalTimers.size(); t++) {
+                Timer timer = _globalTimers.get(t);
+                if (!timer.cancelled) {
+                    timer.task.run();
+                }
+            }
+            _globalTimers.removeIf(timer -> timer.cancelled);
+
+            try {
+                for (Future<Void> future : _executor.invokeAll(_workerList)) {
+                    future.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+    }
+
+    void Shutdown() {
+        _executor.shutdownNow();
+    }
+
+    private Worker WorkerFor(int chunkX, int chunkZ) {
+        int sectionX = chunkX >> CloseShard.SECTION_SHIFT;
+        int sectionZ = chunkZ >> CloseShard.SECTION_SHIFT;
+        return _workers[Math.floorMod(sectionX * 31 + sectionZ, _workers.length)];
+    }
+
+    @Override
+    boolean IsRegionized() {
+        return true;
+    }
+
+    @Override
+    Task RunRepeating(Runnable task) {
+        Timer timer = new Timer(task);
+        _globalTimers.add(timer);
+        return timer;
+    }
+
+    // only called from the worker that owns the chunk, so no locking
+    @Override
+    Task RunRepeatingAt(World world, int chunkX, int chunkZ, Runnable task) {
+        Timer timer = new Timer(task);
+        WorkerFor(chunkX, chunkZ).timers.add(timer);
+        return timer;
+    }
+
+    @Override
+    void RunAt(World world, int chunkX, int chunkZ, Runnable task) {
+        WorkerFor(chunkX, chunkZ).queued.add(task);
+    }
+
+    @Override
+    void RunGlobal(Runnable task) {
+        task.run();
+    }
+
+    @Override
+    void RunAsync(Runnable task) {
+        task.run();
+    }
+}
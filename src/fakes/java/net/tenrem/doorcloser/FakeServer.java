@@ -0,0 +1,252 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Just enough of a Bukkit server for the plugin to run outside one: block
+// data creation for the Settings material table, worlds by id, a plugin
+// manager that hands events to at most one other plugin (see
+// SetEventListener), and a scheduler whose repeating
+// tasks only run when the caller calls RunTicks(). Tasks that aren't
+// repeating run straight away.
+final class FakeServer implements InvocationHandler {
+    private static FakeServer _installed;
+
+    // a repeating task and the tick it next runs on
+    private static final class Timer {
+        final Runnable task;
+        final long period;
+        long next;
+        boolean cancelled;
+
+        Timer(Runnable task, long delay, long period) {
+            this.task = task;
+            this.period = Math.max(1, period);
+            this.next = Math.max(1, delay);
+        }
+    }
+
+    private final Logger _logger = Logger.getLogger("FakeServer");
+    private final Map<UUID, World> _worlds = new HashMap<>();
+    private final List<Timer> _timers = new ArrayList<>();
+    private final BukkitScheduler _scheduler;
+    private final PluginManager _pluginManager;
+    private Consumer<Event> _eventListener;
+    private long _tick;
+
+    private FakeServer() {
+        _scheduler = (BukkitScheduler)Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[] { BukkitScheduler.class }, this::InvokeScheduler);
+
+        // registering listeners does nothing
+        _pluginManager = (PluginManager)Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[] { PluginManager.class },
+            (proxy, method, args) -> {
+                if (method.getName().equals("callEvent") && _eventListener != null) {
+                    _eventListener.accept((Event)args[0]);
+                }
+                return Fakes.DefaultFor(method.getReturnType());
+            });
+    }
+
+    // stands in for other plugins: sees every event the plugin calls, until
+    // set back to null
+    void SetEventListener(Consumer<Event> listener) {
+        _eventListener = listener;
+    }
+
+    // Bukkit only takes a server once per JVM, so every test and benchmark shares this one
+    static synchronized FakeServer Install() {
+        if (_installed == null) {
+            _installed = new FakeServer();
+            Bukkit.setServer((Server)Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[] { Server.class }, _installed));
+        }
+        return _installed;
+    }
+
+    FakeWorld AddWorld(String name) {
+        FakeWorld world = new FakeWorld(name);
+        _worlds.put(world.Handle().getUID(), world.Handle());
+        return world;
+    }
+
+    // drops repeating tasks left over from an earlier trial
+    void ClearTasks() {
+        _timers.clear();
+    }
+
+    // runs every repeating task that is due, one tick at a time
+    void RunTicks(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            _tick++;
+
+            for (int t = 0; t < _timers.size(); t++) {
+                Timer timer = _timers.get(t);
+                if (!timer.cancelled && timer.next <= _tick) {
+                    timer.next = _tick + timer.period;
+                    timer.task.run();
+                }
+            }
+        }
+    }
+
+    Plugin CreatePlugin(String name) {
+        File dataFolder = new File(System.getProperty("java.io.tmpdir"), name);
+        Logger logger = Logger.getLogger(name);
+
+        return (Plugin)Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[] { Plugin.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getLogger":
+                    return logger;
+                case "getDataFolder":
+                    return dataFolder;
+                case "isEnabled":
+                    return true;
+                case "getServer":
+                    return Bukkit.getServer();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return name;
+                default:
+                    return Fakes.DefaultFor(method.getReturnType());
+            }
+        });
+    }
+
+    // a survival player without any permissions, standing nowhere in particular
+    Player CreatePlayer(String name) {
+        return CreatePlayer(name, UUID.randomUUID(), GameMode.SURVIVAL, false);
+    }
+
+    Player CreatePlayer(String name, UUID id, GameMode gameMode, boolean sneaking) {
+
+        return (Player)Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[] { Player.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUniqueId":
+                    return id;
+                case "getGameMode":
+                    return gameMode;
+                case "isSneaking":
+                    return sneaking;
+                case "isOnline":
+                    return true;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return id.hashCode();
+                case "toString":
+                    return name;
+                default:
+                    return Fakes.DefaultFor(method.getReturnType());
+            }
+        });
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getName":
+                return "FakeServer";
+            case "getVersion":
+            case "getBukkitVersion":
+                return "benchmark";
+            case "getLogger":
+                return _logger;
+            case "getScheduler":
+                return _scheduler;
+            case "getPluginManager":
+                return _pluginManager;
+            case "isPrimaryThread":
+                return true;
+            case "createBlockData":
+                if (args.length == 1 && args[0] instanceof Material) {
+                    return FakeBlockData.Create((Material)args[0]);
+                }
+                return null;
+            case "getWorld":
+                return args[0] instanceof UUID ? _worlds.get(args[0]) : null;
+            case "getWorlds":
+                return new ArrayList<>(_worlds.values());
+            case "getOnlinePlayers":
+                return Collections.emptyList();
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "FakeServer";
+            default:
+                return Fakes.DefaultFor(method.getReturnType());
+        }
+    }
+
+    private Object InvokeScheduler(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+
+        if (args != null && args.length >= 2 && args[1] instanceof Runnable && method.getReturnType() == BukkitTask.class) {
+            Runnable task = (Runnable)args[1];
+
+            if (name.startsWith("runTaskTimer")) {
+                Timer timer = new Timer(task, (Long)args[2], (Long)args[3]);
+                _timers.add(timer);
+                return CreateTask(timer);
+            }
+
+            // one-off tasks, sync or async, just run now
+            task.run();
+            return CreateTask(null);
+        }
+
+        return Fakes.DefaultFor(method.getReturnType());
+    }
+
+    private BukkitTask CreateTask(Timer timer) {
+        return (BukkitTask)Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[] { BukkitTask.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "cancel":
+                    if (timer != null) {
+                        timer.cancelled = true;
+                        _timers.remove(timer);
+                    }
+                    return null;
+                case "isCancelled":
+                    return timer == null || timer.cancelled;
+                case "isSync":
+                    return true;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return Fakes.DefaultFor(method.getReturnType());
+            }
+        });
+    }
+}
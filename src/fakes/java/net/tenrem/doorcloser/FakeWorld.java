@@ -0,0 +1,152 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.Bisected.Half;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Door;
+import org.bukkit.block.data.type.Door.Hinge;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.UUID;
+
+// In-memory World. Every chunk counts as loaded, blocks that were never set
+// are air, and block handles are cached per position so a block is always
+// the same object, which keeps the fake's own allocations out of the way.
+final class FakeWorld implements InvocationHandler {
+    private final String _name;
+    private final UUID _id = UUID.randomUUID();
+    private final World _world;
+    private final LongObjectMap<Block> _blocks = new LongObjectMap<>(1024);
+
+    // writes that went through block physics, see ApplyPhysics
+    int physicsUpdates;
+
+    FakeWorld(String name) {
+        _name = name;
+        _world = (World)Proxy.newProxyInstance(FakeWorld.class.getClassLoader(), new Class<?>[] { World.class }, this);
+    }
+
+    World Handle() {
+        return _world;
+    }
+
+    Block BlockAt(int x, int y, int z) {
+        long key = BlockKey.Pack(0, x, y, z);
+        Block block = _blocks.Get(key);
+        if (block == null) {
+            block = FakeBlock.Create(this, x, y, z);
+            _blocks.Put(key, block);
+        }
+        return block;
+    }
+
+    Block Set(int x, int y, int z, Material material) {
+        Block block = BlockAt(x, y, z);
+        FakeBlock.Of(block).data = FakeBlockData.Create(material);
+        return block;
+    }
+
+    // places both halves of a closed door and returns the lower one
+    Block PlaceDoor(int x, int y, int z, Material material, BlockFace facing, Hinge hinge) {
+        Block lower = Set(x, y, z, material);
+        Block upper = Set(x, y + 1, z, material);
+
+        for (Block block : new Block[] { lower, upper }) {
+            FakeBlockData data = FakeBlockData.Of(FakeBlock.Of(block).data);
+            data.facing = facing;
+            data.hinge = hinge;
+            data.half = block == lower ? Half.BOTTOM : Half.TOP;
+        }
+
+        return lower;
+    }
+
+    // flips a door, gate or trap door the way the server does after a click
+    void Toggle(Block block) {
+        BlockData data = FakeBlock.Of(block).data;
+        FakeBlockData fake = FakeBlockData.Of(data);
+        fake.open = !fake.open;
+    }
+
+    // a chunk handle for chunk events; the blocks stay where they are
+    Chunk ChunkAt(int chunkX, int chunkZ) {
+        return (Chunk)Proxy.newProxyInstance(FakeWorld.class.getClassLoader(), new Class<?>[] { Chunk.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return chunkX;
+                case "getZ":
+                    return chunkZ;
+                case "getWorld":
+                    return _world;
+                case "isLoaded":
+                    return true;
+                case "getBlock":
+                    return BlockAt((chunkX << 4) + (Integer)args[0], (Integer)args[1], (chunkZ << 4) + (Integer)args[2]);
+                default:
+                    return Fakes.DefaultFor(method.getReturnType());
+            }
+        });
+    }
+
+    // what block physics does after a write, as far as doors go: the other
+    // half of a door follows the half that changed. Counted, so tests can
+    // tell which writes went through physics
+    void ApplyPhysics(Block block) {
+        physicsUpdates++;
+
+        FakeBlock changed = FakeBlock.Of(block);
+        if (!(changed.data instanceof Door)) {
+            return;
+        }
+
+        int otherY = ((Door)changed.data).getHalf() == Half.BOTTOM ? block.getY() + 1 : block.getY() - 1;
+        FakeBlock other = FakeBlock.Of(BlockAt(block.getX(), otherY, block.getZ()));
+        if (other.data instanceof Door) {
+            FakeBlockData.Of(other.data).open = ((Door)changed.data).isOpen();
+        }
+    }
+
+    boolean IsOpen(Block block) {
+        return FakeBlockData.Of(FakeBlock.Of(block).data).open;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getName":
+                return _name;
+            case "getUID":
+                return _id;
+            case "isChunkLoaded":
+                return true;
+            case "getBlockAt":
+                if (args.length == 1) {
+                    Location location = (Location)args[0];
+                    return BlockAt(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+                }
+                return BlockAt((Integer)args[0], (Integer)args[1], (Integer)args[2]);
+            case "getPlayers":
+                return Collections.emptyList();
+            case "getMinHeight":
+                return -64;
+            case "getMaxHeight":
+                return 320;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return _id.hashCode();
+            case "toString":
+                return "FakeWorld[" + _name + "]";
+            default:
+                return Fakes.DefaultFor(method.getReturnType());
+        }
+    }
+}
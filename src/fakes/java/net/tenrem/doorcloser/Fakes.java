@@ -0,0 +1,57 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.configuration.MemoryConfiguration;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Bits shared by the fake server objects, the tests and the benchmarks.
+//
+// The fakes are java.lang.reflect.Proxy instances, so every call into them
+// goes through reflection and may box its arguments. That overhead is part of
+// every number the benchmarks report; compare runs against each other rather
+// than reading the absolute figures as server timings.
+final class Fakes {
+    private Fakes() {
+    }
+
+    // what a proxy returns for methods the fake doesn't implement
+    static Object DefaultFor(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == byte.class) {
+            return (byte)0;
+        } else if (type == short.class) {
+            return (short)0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else {
+            return 0d;
+        }
+    }
+
+    // Installs a settings snapshot with the oak door, gate and trap door in
+    // scope and the journal off, plus whatever the caller overrides.
+    static void LoadSettings(Map<String, Object> overrides) {
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set(Settings.trapDoorsInScope_Key, Arrays.asList("OAK_TRAPDOOR"));
+        config.set(Settings.gatesInScope_Key, Arrays.asList("OAK_FENCE_GATE"));
+        config.set(Settings.doorsInScope_Key, Arrays.asList("OAK_DOOR"));
+        config.set(Settings.persistPendingCloses_Key, false);
+
+        for (Map.Entry<String, Object> entry : overrides.entrySet()) {
+            config.set(entry.getKey(), entry.getValue());
+        }
+
+        Settings.ReadConfigValues(config, Logger.getLogger("DoorCloser"));
+    }
+}
@@ -0,0 +1,214 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.block.Block;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Doors the plugin has closed in proximity mode, bucketed by chunk, so
+// AutoOpen can find the doors around a player who just moved without looking
+// at any blocks. A door is dropped once AutoOpen opens it (its next proximity
+// close adds it back) or its chunk unloads. Entries are only checked against
+// the world when a player comes close; the caller drops anything that's no
+// longer a door then.
+final class AutoOpenDoors {
+    // doors past this many are not remembered, see Add
+    static final int LIMIT = 65536;
+
+    // a player that protection plugins kept out of a door, and the tick
+    // until which we don't ask them again
+    static final class Denial {
+        final UUID player;
+        final long until;
+        Denial next;
+
+        Denial(UUID player, long until) {
+            this.player = player;
+            this.until = until;
+        }
+    }
+
+    static final class Door {
+        final Block block;
+        final Block pairedBlock;
+        final long key;
+
+        // intrusive links for the chunk bucket the door is in
+        Door prev;
+        Door next;
+
+        // usually empty; goes with the door when it's dropped
+        private Denial _denials;
+
+        Door(Block block, Block pairedBlock, long key) {
+            this.block = block;
+            this.pairedBlock = pairedBlock;
+            this.key = key;
+        }
+
+        // whether the player was kept out of this door recently. Drops the
+        // denials that have run out on the way
+        boolean IsDenied(UUID player, long now) {
+            Denial previous = null;
+            for (Denial denial = _denials; denial != null; denial = denial.next) {
+                if (denial.until <= now) {
+                    if (previous == null) {
+                        _denials = denial.next;
+                    } else {
+                        previous.next = denial.next;
+                    }
+                } else if (denial.player.equals(player)) {
+                    return true;
+                } else {
+                    previous = denial;
+                }
+            }
+            return false;
+        }
+
+        void Deny(UUID player, long until) {
+            Denial denial = new Denial(player, until);
+            denial.next = _denials;
+            _denials = denial;
+        }
+    }
+
+    private final LongObjectMap<Door> _byKey = new LongObjectMap<>(256);
+
+    // per world: chunk key -> first door in that chunk
+    @SuppressWarnings("unchecked")
+    private final LongObjectMap<Door>[] _bucketsByWorld = new LongObjectMap[BlockKey.MAX_WORLDS];
+
+    int Size() {
+        return _byKey.Size();
+    }
+
+    boolean IsEmpty() {
+        return _byKey.IsEmpty();
+    }
+
+    // False if the door couldn't be remembered because LIMIT doors already
+    // are. It then won't open for players until it's clicked open and closed
+    // again
+    boolean Add(Block block, Block pairedBlock, long key) {
+        if (_byKey.Get(key) != null) {
+            return true;
+        }
+        if (_byKey.Size() >= LIMIT) {
+            return false;
+        }
+
+        Door door = new Door(block, pairedBlock, key);
+        _byKey.Put(key, door);
+
+        int worldIndex = BlockKey.WorldIndex(key);
+        LongObjectMap<Door> buckets = _bucketsByWorld[worldIndex];
+        if (buckets == null) {
+            buckets = new LongObjectMap<>(64);
+            _bucketsByWorld[worldIndex] = buckets;
+        }
+
+        long chunkKey = ChunkShards.ChunkKey(ChunkShards.ChunkX(key), ChunkShards.ChunkZ(key));
+        Door head = buckets.Get(chunkKey);
+        door.next = head;
+        if (head != null) {
+            head.prev = door;
+        }
+        buckets.Put(chunkKey, door);
+        return true;
+    }
+
+    void Remove(long key) {
+        Door door = _byKey.Remove(key);
+        if (door == null) {
+            return;
+        }
+
+        if (door.next != null) {
+            door.next.prev = door.prev;
+        }
+
+        if (door.prev != null) {
+            door.prev.next = door.next;
+        } else {
+            LongObjectMap<Door> buckets = _bucketsByWorld[BlockKey.WorldIndex(key)];
+            long chunkKey = ChunkShards.ChunkKey(ChunkShards.ChunkX(key), ChunkShards.ChunkZ(key));
+
+            if (door.next != null) {
+                buckets.Put(chunkKey, door.next);
+            } else {
+                buckets.Remove(chunkKey);
+            }
+        }
+
+        door.prev = null;
+        door.next = null;
+    }
+
+    // Calls the visitor for every door within radius blocks of the given block
+    // position. The visitor may remove the door it's given.
+    void ForEachNear(int worldIndex, int x, int y, int z, int radius, Consumer<Door> visitor) {
+        LongObjectMap<Door> buckets = _bucketsByWorld[worldIndex];
+        if (buckets == null) {
+            return;
+        }
+
+        long radiusSquared = (long)radius * radius;
+
+        for (int chunkX = (x - radius) >> 4; chunkX <= (x + radius) >> 4; chunkX++) {
+            for (int chunkZ = (z - radius) >> 4; chunkZ <= (z + radius) >> 4; chunkZ++) {
+                Door door = buckets.Get(ChunkShards.ChunkKey(chunkX, chunkZ));
+
+                while (door != null) {
+                    Door next = door.next;
+
+                    long dx = BlockKey.X(door.key) - x;
+                    long dy = BlockKey.Y(door.key) - y;
+                    long dz = BlockKey.Z(door.key) - z;
+
+                    if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                        visitor.accept(door);
+                    }
+
+                    door = next;
+                }
+            }
+        }
+    }
+
+    void RemoveChunk(int worldIndex, int chunkX, int chunkZ) {
+        LongObjectMap<Door> buckets = _bucketsByWorld[worldIndex];
+        if (buckets == null) {
+            return;
+        }
+
+        Door door = buckets.Remove(ChunkShards.ChunkKey(chunkX, chunkZ));
+        while (door != null) {
+            Door next = door.next;
+            _byKey.Remove(door.key);
+            door.prev = null;
+            door.next = null;
+            door = next;
+        }
+    }
+
+    void RemoveWorld(int worldIndex) {
+        LongObjectMap<Door> buckets = _bucketsByWorld[worldIndex];
+        if (buckets == null) {
+            return;
+        }
+
+        _bucketsByWorld[worldIndex] = null;
+        buckets.ForEach((chunkKey, head) -> {
+            for (Door door = head; door != null; door = door.next) {
+                _byKey.Remove(door.key);
+            }
+        });
+    }
+
+    void Clear() {
+        _byKey.Clear();
+        Arrays.fill(_bucketsByWorld, null);
+    }
+}
@@ -0,0 +1,49 @@
+package net.tenrem.doorcloser;
+
+// Packs a block position and a small world index into a single long so it can
+// be used as a map key without allocating a Location or Vector.
+//
+// Layout (high to low bits): world 6 | y 10 | x 24 | z 24
+// That covers 64 worlds, y -512..511 and x/z within +/- 8,388,608 blocks.
+// Positions outside that range are not packable and are simply not tracked.
+// World index 63 is never handed out, so NONE (all bits set) can't collide
+// with a real key.
+final class BlockKey {
+    static final long NONE = -1L;
+    static final int MAX_WORLDS = (1 << 6) - 1;
+
+    private static final int XZ_LIMIT = 1 << 23;
+    private static final int Y_LIMIT = 1 << 9;
+
+    private BlockKey() {
+    }
+
+    static boolean IsPackable(int x, int y, int z) {
+        return x >= -XZ_LIMIT && x < XZ_LIMIT
+            && z >= -XZ_LIMIT && z < XZ_LIMIT
+            && y >= -Y_LIMIT && y < Y_LIMIT;
+    }
+
+    static long Pack(int worldIndex, int x, int y, int z) {
+        return ((long)worldIndex << 58)
+            | ((long)(y & 0x3FF) << 48)
+            | ((long)(x & 0xFFFFFF) << 24)
+            | (long)(z & 0xFFFFFF);
+    }
+
+    static int WorldIndex(long key) {
+        return (int)(key >>> 58);
+    }
+
+    static int X(long key) {
+        return (int)(key << 16 >> 40);
+    }
+
+    static int Y(long key) {
+        return (int)(key << 6 >> 54);
+    }
+
+    static int Z(long key) {
+        return (int)(key << 40 >> 40);
+    }
+}
@@ -0,0 +1,46 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+// Scheduling for a normal, single main thread server.
+final class BukkitScheduling extends Scheduling {
+    private final Plugin _plugin;
+
+    BukkitScheduling(Plugin plugin) {
+        _plugin = plugin;
+    }
+
+    @Override
+    boolean IsRegionized() {
+        return false;
+    }
+
+    @Override
+    Task RunRepeating(Runnable task) {
+        BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimer(_plugin, task, 1, 1);
+        return bukkitTask::cancel;
+    }
+
+    @Override
+    Task RunRepeatingAt(World world, int chunkX, int chunkZ, Runnable task) {
+        return RunRepeating(task);
+    }
+
+    @Override
+    void RunAt(World world, int chunkX, int chunkZ, Runnable task) {
+        Bukkit.getScheduler().runTask(_plugin, task);
+    }
+
+    @Override
+    void RunGlobal(Runnable task) {
+        Bukkit.getScheduler().runTask(_plugin, task);
+    }
+
+    @Override
+    void RunAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(_plugin, task);
+    }
+}
@@ -0,0 +1,127 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Remembers whether each online player has the bypass permission, so clicks
+// don't go through the permission plugin every time. Entries are filled on
+// join and dropped on quit, world change (permissions can be per world),
+// /dcreload, and when LuckPerms says a player's permissions were recalculated.
+// Anything else that changes permissions is picked up when the entry expires
+// after BypassCacheSeconds.
+//
+// Entries are immutable and the map is concurrent, so clicks on any region
+// thread and the LuckPerms event thread can all use it directly.
+final class BypassCache implements Listener {
+    private static final class Entry {
+        final boolean bypass;
+        final long expiresAt;
+
+        Entry(boolean bypass, long expiresAt) {
+            this.bypass = bypass;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Plugin _plugin;
+    private final Map<UUID, Entry> _entries = new ConcurrentHashMap<>();
+
+    BypassCache(Plugin plugin) {
+        _plugin = plugin;
+    }
+
+    boolean HasBypass(Player player, Settings settings) {
+        if (settings.bypassCacheSeconds <= 0) {
+            return player.hasPermission(settings.bypassPermission);
+        }
+
+        long now = System.nanoTime();
+        Entry entry = _entries.get(player.getUniqueId());
+
+        if (entry != null && now - entry.expiresAt < 0) {
+            return entry.bypass;
+        }
+
+        boolean bypass = player.hasPermission(settings.bypassPermission);
+        _entries.put(player.getUniqueId(), new Entry(bypass, now + settings.bypassCacheSeconds * 1000000000L));
+        return bypass;
+    }
+
+    void Invalidate(UUID playerId) {
+        _entries.remove(playerId);
+    }
+
+    void Clear() {
+        _entries.clear();
+    }
+
+    // Subscribes to LuckPerms' UserDataRecalculateEvent if LuckPerms is
+    // installed. Done through reflection so LuckPerms stays optional.
+    void HookLuckPerms() {
+        try {
+            Class<?> luckPermsClass = Class.forName("net.luckperms.api.LuckPerms");
+            Class<?> eventBusClass = Class.forName("net.luckperms.api.event.EventBus");
+            Class<?> recalculateClass = Class.forName("net.luckperms.api.event.user.UserDataRecalculateEvent");
+            Method getUser = recalculateClass.getMethod("getUser");
+            Method getUniqueId = Class.forName("net.luckperms.api.model.user.User").getMethod("getUniqueId");
+
+            if (Bukkit.getServicesManager() == null) {
+                return;
+            }
+
+            RegisteredServiceProvider<?> registration = Bukkit.getServicesManager().getRegistration(luckPermsClass);
+            if (registration == null) {
+                return;
+            }
+
+            Object eventBus = luckPermsClass.getMethod("getEventBus").invoke(registration.getProvider());
+
+            // LuckPerms may fire this on any thread, which is fine for the
+            // concurrent map
+            Consumer<Object> handler = event -> {
+                try {
+                    Invalidate((UUID)getUniqueId.invoke(getUser.invoke(event)));
+                } catch (ReflectiveOperationException ex) {
+                    // leave it to the TTL
+                }
+            };
+
+            eventBusClass.getMethod("subscribe", Object.class, Class.class, Consumer.class).invoke(eventBus, _plugin, recalculateClass, handler);
+            _plugin.getLogger().info("Listening for LuckPerms permission changes.");
+        } catch (ClassNotFoundException ex) {
+            // LuckPerms isn't installed
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            _plugin.getLogger().warning("Could not hook LuckPerms, bypass permission changes will apply after BypassCacheSeconds: " + ex);
+        }
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerJoin(PlayerJoinEvent e) {
+        Invalidate(e.getPlayer().getUniqueId());
+        HasBypass(e.getPlayer(), Settings.Current());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerQuit(PlayerQuitEvent e) {
+        Invalidate(e.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerChangedWorld(PlayerChangedWorldEvent e) {
+        Invalidate(e.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,119 @@
+package net.tenrem.doorcloser;
+
+// Pending closes grouped by the chunk they are in, one map per world index.
+// This lets chunk and world events find the affected closes without walking
+// everything that's pending.
+final class ChunkShards {
+    // all pending closes inside one chunk, as an intrusive list
+    static final class ChunkShard {
+        PendingClose head;
+        int size;
+
+        // how many of them were opened by mobs
+        int entitySize;
+    }
+
+    @SuppressWarnings("unchecked")
+    private final LongObjectMap<ChunkShard>[] _byWorld = new LongObjectMap[BlockKey.MAX_WORLDS];
+
+    // number of pending closes per world index
+    private final int[] _sizeByWorld = new int[BlockKey.MAX_WORLDS];
+
+    static long ChunkKey(int chunkX, int chunkZ) {
+        return ((long)chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    static int ChunkX(long blockKey) {
+        return BlockKey.X(blockKey) >> 4;
+    }
+
+    static int ChunkZ(long blockKey) {
+        return BlockKey.Z(blockKey) >> 4;
+    }
+
+    int SizeOf(int worldIndex) {
+        return _sizeByWorld[worldIndex];
+    }
+
+    ChunkShard Get(int worldIndex, int chunkX, int chunkZ) {
+        LongObjectMap<ChunkShard> shards = _byWorld[worldIndex];
+        return shards == null ? null : shards.Get(ChunkKey(chunkX, chunkZ));
+    }
+
+    void Add(PendingClose close) {
+        int worldIndex = BlockKey.WorldIndex(close.key);
+        LongObjectMap<ChunkShard> shards = _byWorld[worldIndex];
+
+        if (shards == null) {
+            shards = new LongObjectMap<>(64);
+            _byWorld[worldIndex] = shards;
+        }
+
+        long chunkKey = ChunkKey(ChunkX(close.key), ChunkZ(close.key));
+        ChunkShard shard = shards.Get(chunkKey);
+
+        if (shard == null) {
+            shard = new ChunkShard();
+            shards.Put(chunkKey, shard);
+        }
+
+        close.chunkPrev = null;
+        close.chunkNext = shard.head;
+        if (shard.head != null) {
+            shard.head.chunkPrev = close;
+        }
+        shard.head = close;
+        shard.size++;
+        if (close.byEntity) {
+            shard.entitySize++;
+        }
+        close.chunkShard = shard;
+        _sizeByWorld[worldIndex]++;
+    }
+
+    void Remove(PendingClose close) {
+        ChunkShard shard = close.chunkShard;
+        if (shard == null) {
+            return;
+        }
+
+        if (close.chunkPrev != null) {
+            close.chunkPrev.chunkNext = close.chunkNext;
+        } else {
+            shard.head = close.chunkNext;
+        }
+
+        if (close.chunkNext != null) {
+            close.chunkNext.chunkPrev = close.chunkPrev;
+        }
+
+        close.chunkPrev = null;
+        close.chunkNext = null;
+        close.chunkShard = null;
+
+        // the world's shards may already have been detached by RemoveWorld
+        LongObjectMap<ChunkShard> shards = _byWorld[BlockKey.WorldIndex(close.key)];
+        if (shards != null) {
+            _sizeByWorld[BlockKey.WorldIndex(close.key)]--;
+        }
+
+        if (close.byEntity) {
+            shard.entitySize--;
+        }
+
+        if (--shard.size == 0) {
+            if (shards != null && shards.Get(ChunkKey(ChunkX(close.key), ChunkZ(close.key))) == shard) {
+                shards.Remove(ChunkKey(ChunkX(close.key), ChunkZ(close.key)));
+            }
+        }
+    }
+
+    // Detaches every shard of a world and returns them (or null). The closes
+    // in them keep their chunk links, so callers can still walk each shard.
+    LongObjectMap<ChunkShard> RemoveWorld(int worldIndex) {
+        LongObjectMap<ChunkShard> shards = _byWorld[worldIndex];
+        _byWorld[worldIndex] = null;
+        _sizeByWorld[worldIndex] = 0;
+        return shards;
+    }
+}
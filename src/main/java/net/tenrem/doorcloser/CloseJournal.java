@@ -0,0 +1,498 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+// Append-only, memory-mapped log of pending closes, so doors left open by a
+// crash or kill -9 get closed on the next start. Each record keeps when the
+// close is due by the wall clock and what kind of close it is, so it comes
+// back with the time it had left. A close whose deadline moves is written
+// again; the latest record for a door wins.
+//
+// Two files are used in turn. Compaction writes the live set into the idle
+// file and only then stamps its header with a higher generation, so a crash
+// part way through a compaction leaves the previous file as the valid one.
+// Writes go to the OS page cache through the mapping, which survives the
+// process dying; we only force them to disk on compaction and shutdown.
+//
+// Appends are plain writes into the mapping and never compact. Compaction
+// is meant for an async thread: it reads the log up to where it was when
+// it started and writes the live set out without holding the lock, so
+// appends carry on meanwhile. Only the switch to the new file is locked,
+// and it copies over just the records appended during the compaction. A
+// file past three quarters full asks for a compaction (see WantsCompaction);
+// one that fills up before that's done is made bigger rather than waited on.
+//
+// On Folia closes are scheduled from many region threads, so every method
+// that touches the active file is synchronized. Compaction works from the
+// log itself rather than from the pending closes, which live in region
+// shards.
+final class CloseJournal {
+    static final byte OP_END = 0;
+    static final byte OP_SCHEDULE = 1;
+    static final byte OP_REMOVE = 2;
+
+    static final byte FLAG_TARGET_OPEN = 1;
+    static final byte FLAG_HAS_PAIR = 2;
+    static final byte FLAG_PROXIMITY = 4;
+    static final byte FLAG_BY_ENTITY = 8;
+
+    private static final int MAGIC = 0x44434A31; // "DCJ1"
+    private static final int VERSION = 2;
+
+    // version 1 records had no deadline. A file of those is read once at
+    // startup and rewritten, its closes as overdue
+    private static final int VERSION_1 = 1;
+    private static final int VERSION_1_RECORD_SIZE = 40;
+
+    // magic, version, generation
+    private static final int HEADER_SIZE = 16;
+
+    // op, flags, 2 reserved, x, y, z, pairX, pairZ, world uuid, deadline
+    // (System.currentTimeMillis())
+    private static final int RECORD_SIZE = 48;
+
+    // one journaled close, as read back at startup
+    static final class Record {
+        final long worldMost;
+        final long worldLeast;
+        final int x;
+        final int y;
+        final int z;
+        final int pairX;
+        final int pairZ;
+        final byte flags;
+        final long deadlineMillis;
+
+        Record(long worldMost, long worldLeast, int x, int y, int z, int pairX, int pairZ, byte flags, long deadlineMillis) {
+            this.worldMost = worldMost;
+            this.worldLeast = worldLeast;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.pairX = pairX;
+            this.pairZ = pairZ;
+            this.flags = flags;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        UUID WorldId() {
+            return new UUID(worldMost, worldLeast);
+        }
+
+        boolean HasPair() {
+            return (flags & FLAG_HAS_PAIR) != 0;
+        }
+
+        boolean TargetOpen() {
+            return (flags & FLAG_TARGET_OPEN) != 0;
+        }
+
+        boolean Proximity() {
+            return (flags & FLAG_PROXIMITY) != 0;
+        }
+
+        boolean ByEntity() {
+            return (flags & FLAG_BY_ENTITY) != 0;
+        }
+
+        // records are identified by world and position only
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Record)) {
+                return false;
+            }
+            Record r = (Record)o;
+            return worldMost == r.worldMost && worldLeast == r.worldLeast && x == r.x && y == r.y && z == r.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(worldMost, worldLeast, x, y, z);
+        }
+    }
+
+    private final FileChannel[] _channels = new FileChannel[2];
+    private final MappedByteBuffer[] _buffers = new MappedByteBuffer[2];
+
+    private final int _capacity;
+
+    private int _active;
+    private long _generation;
+    private int _writePosition;
+    private int _liveRecords;
+    private int _deadRecords;
+    private boolean _closed;
+
+    // set by an append once the file is filling up, cleared by compaction
+    private volatile boolean _wantsCompaction;
+
+    // one compaction at a time. Taken before this, never inside it
+    private final Object _compactLock = new Object();
+
+    CloseJournal(File folder, int capacity) throws IOException {
+        folder.mkdirs();
+
+        _capacity = capacity;
+        int size = SizeFor(capacity);
+
+        for (int i = 0; i < 2; i++) {
+            File file = new File(folder, "pending-closes." + i + ".journal");
+            _channels[i] = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            _buffers[i] = _channels[i].map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, _channels[i].size()));
+        }
+
+        // pick the newest file with a valid header
+        long best = -1;
+        for (int i = 0; i < 2; i++) {
+            MappedByteBuffer buffer = _buffers[i];
+            int version = buffer.getInt(4);
+            if (buffer.getInt(0) == MAGIC && (version == VERSION || version == VERSION_1) && buffer.getLong(8) > best) {
+                best = buffer.getLong(8);
+                _active = i;
+            }
+        }
+
+        if (best < 0) {
+            // nothing usable on disk; start a fresh journal
+            _active = 0;
+            _generation = 1;
+            WriteHeader(_buffers[0], _generation);
+            _buffers[0].put(HEADER_SIZE, OP_END);
+        } else {
+            _generation = best;
+            if (_buffers[_active].getInt(4) == VERSION_1) {
+                Upgrade();
+            }
+        }
+
+        _writePosition = HEADER_SIZE;
+    }
+
+    // Rewrites a version 1 file into the idle one, the same way a compaction
+    // does. Its closes get no deadline, so they replay straight away
+    private void Upgrade() throws IOException {
+        MappedByteBuffer source = _buffers[_active];
+        List<Record> live = ReadLiveRecords(source, EndOf(source, VERSION_1_RECORD_SIZE), VERSION_1_RECORD_SIZE);
+
+        int target = 1 - _active;
+        MappedByteBuffer buffer = Mapped(target, SizeFor(Math.max(_capacity, live.size())));
+        buffer.putInt(0, 0);
+
+        int position = HEADER_SIZE;
+        for (Record record : live) {
+            WriteRecord(buffer, position, OP_SCHEDULE, record);
+            position += RECORD_SIZE;
+        }
+        buffer.put(position, OP_END);
+        buffer.force();
+
+        _generation++;
+        WriteHeader(buffer, _generation);
+        buffer.force();
+        _active = target;
+    }
+
+    // Reads the active file and returns the closes that were still pending,
+    // in the order they were scheduled. Leaves the write position at the end.
+    synchronized List<Record> ReadLive() {
+        _writePosition = EndOf(_buffers[_active], RECORD_SIZE);
+        List<Record> live = ReadLiveRecords(_buffers[_active], _writePosition, RECORD_SIZE);
+        _liveRecords = live.size();
+        _deadRecords = (_writePosition - HEADER_SIZE) / RECORD_SIZE - _liveRecords;
+        return live;
+    }
+
+    synchronized int LiveRecords() {
+        return _liveRecords;
+    }
+
+    synchronized int DeadRecords() {
+        return _deadRecords;
+    }
+
+    // worth compacting: more records of finished closes than live ones
+    synchronized boolean NeedsCompaction() {
+        return _deadRecords > _liveRecords;
+    }
+
+    // the file is filling up and should be compacted soon. Cheap enough to
+    // check every tick
+    boolean WantsCompaction() {
+        return _wantsCompaction;
+    }
+
+    // deadlineMillis is when the close is due, by System.currentTimeMillis()
+    synchronized void AppendSchedule(PendingClose pending, long deadlineMillis) throws IOException {
+        MakeRoom();
+        Write(_buffers[_active], _writePosition, OP_SCHEDULE, pending, deadlineMillis);
+        _writePosition += RECORD_SIZE;
+        _liveRecords++;
+    }
+
+    // a close that's already journaled but is now due at another time or
+    // ends differently. The new record replaces the old one, which is dead
+    // from here on
+    synchronized void AppendUpdate(PendingClose pending, long deadlineMillis) throws IOException {
+        MakeRoom();
+        Write(_buffers[_active], _writePosition, OP_SCHEDULE, pending, deadlineMillis);
+        _writePosition += RECORD_SIZE;
+        _deadRecords++;
+    }
+
+    synchronized void AppendRemove(PendingClose pending) throws IOException {
+        MakeRoom();
+        Write(_buffers[_active], _writePosition, OP_REMOVE, pending, 0);
+        _writePosition += RECORD_SIZE;
+        _liveRecords--;
+        _deadRecords += 2;
+    }
+
+    // drops a journaled close that can't be restored, e.g. its world is gone
+    synchronized void AppendRemove(Record record) throws IOException {
+        MakeRoom();
+        WriteRecord(_buffers[_active], _writePosition, OP_REMOVE, record);
+        _writePosition += RECORD_SIZE;
+        _liveRecords--;
+        _deadRecords += 2;
+    }
+
+    // Rewrites the closes that are still live into the idle file, and
+    // switches to it. Blocks for as long as that takes, including forcing the
+    // new file to disk, so run it on an async thread unless shutting down.
+    void Compact() throws IOException {
+        synchronized (_compactLock) {
+            MappedByteBuffer source;
+            int target;
+            int cut;
+
+            synchronized (this) {
+                if (_closed) {
+                    return;
+                }
+                source = _buffers[_active];
+                target = 1 - _active;
+                cut = _writePosition;
+            }
+
+            // everything up to cut is written and won't change; appends only
+            // ever go after it. The idle file is ours alone until the switch
+            List<Record> live = ReadLiveRecords(source, cut, RECORD_SIZE);
+            MappedByteBuffer buffer = Mapped(target, SizeFor(Math.max(_capacity, live.size())));
+
+            // invalidate the header first, so a half-written file is never picked
+            buffer.putInt(0, 0);
+
+            int position = HEADER_SIZE;
+            for (Record record : live) {
+                WriteRecord(buffer, position, OP_SCHEDULE, record);
+                position += RECORD_SIZE;
+            }
+            buffer.put(position, OP_END);
+            buffer.force();
+
+            synchronized (this) {
+                if (_closed) {
+                    return;
+                }
+
+                // what was appended while we worked goes after the live set
+                int tail = _writePosition - cut;
+                if (position + tail + 2 * RECORD_SIZE > buffer.capacity()) {
+                    buffer = Mapped(target, Grown(buffer.capacity(), position + tail + 2 * RECORD_SIZE));
+                }
+                Copy(_buffers[_active], cut, buffer, position, tail);
+                position += tail;
+                buffer.put(position, OP_END);
+
+                WriteHeader(buffer, _generation + 1);
+
+                _generation++;
+                _active = target;
+                _writePosition = position;
+                _deadRecords = (position - HEADER_SIZE) / RECORD_SIZE - _liveRecords;
+                _wantsCompaction = false;
+            }
+
+            buffer.force();
+        }
+    }
+
+    // Each append also writes the end marker of the following record. Past
+    // three quarters full this asks for a compaction; with no room left at
+    // all, before one has run, the file is made bigger instead, which costs
+    // a remap rather than a compaction on the calling thread
+    private void MakeRoom() throws IOException {
+        int capacity = _buffers[_active].capacity();
+
+        if (_writePosition + 2 * RECORD_SIZE > capacity) {
+            _buffers[_active] = Mapped(_active, Grown(capacity, _writePosition + 2 * RECORD_SIZE));
+            _wantsCompaction = true;
+        } else if (_writePosition > capacity - capacity / 4) {
+            _wantsCompaction = true;
+        }
+    }
+
+    // a file's mapping, remapped if it has to be bigger than size
+    private MappedByteBuffer Mapped(int file, int size) throws IOException {
+        if (_buffers[file].capacity() < size) {
+            _buffers[file] = _channels[file].map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        return _buffers[file];
+    }
+
+    // double, or more if needed, up to what a mapping can hold
+    private static int Grown(int capacity, int needed) throws IOException {
+        long size = Math.max((long)capacity * 2, needed);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Pending close journal is full.");
+        }
+        return (int)size;
+    }
+
+    private static void Copy(MappedByteBuffer from, int fromPosition, MappedByteBuffer to, int toPosition, int length) {
+        ByteBuffer source = from.duplicate();
+        source.position(fromPosition);
+        source.limit(fromPosition + length);
+
+        ByteBuffer target = to.duplicate();
+        target.position(toPosition);
+        target.put(source);
+    }
+
+    // where the log in a file ends: the first slot that isn't a record
+    private static int EndOf(MappedByteBuffer buffer, int recordSize) {
+        int position = HEADER_SIZE;
+        while (position + recordSize <= buffer.capacity()) {
+            byte op = buffer.get(position);
+            if (op != OP_SCHEDULE && op != OP_REMOVE) {
+                break;
+            }
+            position += recordSize;
+        }
+        return position;
+    }
+
+    // the live records of a file's log up to end, oldest first
+    private static List<Record> ReadLiveRecords(MappedByteBuffer buffer, int end, int recordSize) {
+        Map<Record, Record> live = new LinkedHashMap<>();
+
+        for (int position = HEADER_SIZE; position < end; position += recordSize) {
+            byte op = buffer.get(position);
+
+            Record record = new Record(
+                buffer.getLong(position + 24),
+                buffer.getLong(position + 32),
+                buffer.getInt(position + 4),
+                buffer.getInt(position + 8),
+                buffer.getInt(position + 12),
+                buffer.getInt(position + 16),
+                buffer.getInt(position + 20),
+                buffer.get(position + 1),
+                recordSize == RECORD_SIZE ? buffer.getLong(position + 40) : 0);
+
+            if (op == OP_SCHEDULE) {
+                live.remove(record);
+                live.put(record, record);
+            } else {
+                live.remove(record);
+            }
+        }
+
+        return new ArrayList<>(live.values());
+    }
+
+    // A compaction still running on another thread gives up at its switch
+    synchronized void Close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                _buffers[i].force();
+                _channels[i].close();
+            } catch (IOException ex) {
+                // nothing useful to do on shutdown
+            }
+        }
+    }
+
+    private static void WriteHeader(MappedByteBuffer buffer, long generation) {
+        buffer.putLong(8, generation);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(0, MAGIC);
+    }
+
+    // Writes one record. The op byte goes in last, so a record that was only
+    // partly written when the process died reads back as the end of the log.
+    private static void Write(MappedByteBuffer buffer, int position, byte op, PendingClose pending, long deadlineMillis) {
+        Block door1Block = pending.door1Block;
+        Block pairedDoorBlock = pending.pairedDoorBlock;
+        World world = door1Block.getWorld();
+        UUID worldId = world.getUID();
+
+        byte flags = 0;
+        if (pending.targetOpen) {
+            flags |= FLAG_TARGET_OPEN;
+        }
+        if (pairedDoorBlock != null) {
+            flags |= FLAG_HAS_PAIR;
+        }
+        if (pending.proximity) {
+            flags |= FLAG_PROXIMITY;
+        }
+        if (pending.byEntity) {
+            flags |= FLAG_BY_ENTITY;
+        }
+
+        buffer.put(position + RECORD_SIZE, OP_END);
+        buffer.put(position + 1, flags);
+        buffer.putInt(position + 4, door1Block.getX());
+        buffer.putInt(position + 8, door1Block.getY());
+        buffer.putInt(position + 12, door1Block.getZ());
+        buffer.putInt(position + 16, pairedDoorBlock != null ? pairedDoorBlock.getX() : 0);
+        buffer.putInt(position + 20, pairedDoorBlock != null ? pairedDoorBlock.getZ() : 0);
+        buffer.putLong(position + 24, worldId.getMostSignificantBits());
+        buffer.putLong(position + 32, worldId.getLeastSignificantBits());
+        buffer.putLong(position + 40, deadlineMillis);
+        buffer.put(position, op);
+    }
+
+    // same, for a record read back from the log
+    private static void WriteRecord(MappedByteBuffer buffer, int position, byte op, Record record) {
+        buffer.put(position + RECORD_SIZE, OP_END);
+        buffer.put(position + 1, record.flags);
+        buffer.putInt(position + 4, record.x);
+        buffer.putInt(position + 8, record.y);
+        buffer.putInt(position + 12, record.z);
+        buffer.putInt(position + 16, record.pairX);
+        buffer.putInt(position + 20, record.pairZ);
+        buffer.putLong(position + 24, record.worldMost);
+        buffer.putLong(position + 32, record.worldLeast);
+        buffer.putLong(position + 40, record.deadlineMillis);
+        buffer.put(position, op);
+    }
+
+    // room for twice the cap, so a compacted journal is at most half full
+    // and fills to the compaction mark only after a quarter as many appends
+    // again as the cap, plus one spare record for the end marker
+    private static int SizeFor(int capacity) {
+        long size = HEADER_SIZE + ((long)Math.max(capacity, 1024) * 2 + 1) * RECORD_SIZE;
+        return (int)Math.min(size, Integer.MAX_VALUE);
+    }
+}
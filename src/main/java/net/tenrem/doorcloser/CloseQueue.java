@@ -0,0 +1,62 @@
+package net.tenrem.doorcloser;
+
+// FIFO of closes that have come due but haven't been applied yet because the
+// per-tick block update budget ran out. The wheel expires closes in deadline
+// order, so the head is always the most overdue one.
+final class CloseQueue {
+    private PendingClose _head;
+    private PendingClose _tail;
+    private int _size;
+
+    int Size() {
+        return _size;
+    }
+
+    PendingClose Peek() {
+        return _head;
+    }
+
+    void Add(PendingClose close) {
+        close.queuePrev = _tail;
+        close.queueNext = null;
+        if (_tail != null) {
+            _tail.queueNext = close;
+        } else {
+            _head = close;
+        }
+        _tail = close;
+        close.queued = true;
+        _size++;
+    }
+
+    void Remove(PendingClose close) {
+        if (!close.queued) {
+            return;
+        }
+
+        if (close.queuePrev != null) {
+            close.queuePrev.queueNext = close.queueNext;
+        } else {
+            _head = close.queueNext;
+        }
+
+        if (close.queueNext != null) {
+            close.queueNext.queuePrev = close.queuePrev;
+        } else {
+            _tail = close.queuePrev;
+        }
+
+        close.queuePrev = null;
+        close.queueNext = null;
+        close.queued = false;
+        _size--;
+    }
+
+    PendingClose Poll() {
+        PendingClose head = _head;
+        if (head != null) {
+            Remove(head);
+        }
+        return head;
+    }
+}
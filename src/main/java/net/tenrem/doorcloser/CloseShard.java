@@ -0,0 +1,70 @@
+package net.tenrem.doorcloser;
+
+// One set of pending closes, with its own wheel, index and queues, that is
+// only ever touched by one thread at a time.
+//
+// On a normal server there is a single shard for everything, ticked on the
+// main thread. On Folia there is one shard per region section (16x16 chunks)
+// per world. Folia always keeps a section, and the sections next to it, in a
+// single region, so a shard is only used by the thread of the region that
+// owns it, and the shard's own repeating task runs there too.
+final class CloseShard {
+    // chunks per side of a region section, as a shift
+    static final int SECTION_SHIFT = 4;
+
+    final long sectionKey;
+
+    // pending closes in this shard, by block key
+    final PendingIndex pending;
+
+    // the same closes, grouped by chunk
+    final ChunkShards chunks = new ChunkShards();
+
+    // and those opened by players, grouped by player
+    final OwnerIndex owners = new OwnerIndex();
+
+    final CloseWheel wheel = new CloseWheel();
+
+    // closes that are due but over this tick's block update budget
+    final CloseQueue ready = new CloseQueue();
+
+    // close sounds queued this tick
+    final CloseSounds sounds;
+
+    // this shard's repeating task on Folia; unused on a normal server
+    Scheduling.Task task;
+
+    CloseShard(long sectionKey, int expectedSize, CloseSounds sounds) {
+        this.sectionKey = sectionKey;
+        this.pending = new PendingIndex(expectedSize);
+        this.sounds = sounds;
+    }
+
+    // nothing pending, due or waiting to be heard
+    boolean IsIdle() {
+        return pending.Size() == 0 && ready.Size() == 0 && sounds.IsEmpty();
+    }
+
+    // world index and region section of a block key, packed into a long
+    static long SectionKeyOf(long blockKey) {
+        return SectionKey(BlockKey.WorldIndex(blockKey),
+            ChunkShards.ChunkX(blockKey) >> SECTION_SHIFT,
+            ChunkShards.ChunkZ(blockKey) >> SECTION_SHIFT);
+    }
+
+    static long SectionKey(int worldIndex, int sectionX, int sectionZ) {
+        return ((long)worldIndex << 48) | ((long)(sectionX & 0xFFFFFF) << 24) | (sectionZ & 0xFFFFFF);
+    }
+
+    static int SectionWorld(long sectionKey) {
+        return (int)(sectionKey >>> 48);
+    }
+
+    static int SectionX(long sectionKey) {
+        return (int)(sectionKey << 16 >> 40);
+    }
+
+    static int SectionZ(long sectionKey) {
+        return (int)(sectionKey << 40 >> 40);
+    }
+}
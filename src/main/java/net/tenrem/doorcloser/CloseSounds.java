@@ -0,0 +1,85 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+// Collects the door sounds for a tick and plays them once at the end of it.
+// Sounds are keyed by door position, so a double door or a door that gets
+// several closes in the same tick makes one sound, and each sound only goes
+// to the players close enough to hear it.
+final class CloseSounds {
+    private final WorldIndex _worldIndex;
+    private final PlayerIndex _players;
+
+    // door key -> sound to play there
+    private final LongObjectMap<Sound> _pending = new LongObjectMap<>(256);
+
+    // players may be null, in which case sounds are played through the world
+    CloseSounds(WorldIndex worldIndex, PlayerIndex players) {
+        _worldIndex = worldIndex;
+        _players = players;
+    }
+
+    // queues the closing sound for a door, based on its material
+    void Add(Block doorBlock, Settings settings) {
+        Sound sound = SoundFor(Settings.KindOnly(settings.KindOf(doorBlock.getType())));
+        if (sound == null) {
+            return;
+        }
+
+        long key = _worldIndex.KeyOf(doorBlock);
+        if (key != BlockKey.NONE) {
+            _pending.Put(key, sound);
+        }
+    }
+
+    boolean IsEmpty() {
+        return _pending.IsEmpty();
+    }
+
+    void Flush(int radius) {
+        if (_pending.IsEmpty()) {
+            return;
+        }
+
+        _pending.ForEach((key, sound) -> Play(key, sound, radius));
+        _pending.Clear();
+    }
+
+    private void Play(long key, Sound sound, int radius) {
+        int worldIndex = BlockKey.WorldIndex(key);
+        World world = _worldIndex.WorldAt(worldIndex);
+        if (world == null) {
+            return;
+        }
+
+        int x = BlockKey.X(key);
+        int y = BlockKey.Y(key);
+        int z = BlockKey.Z(key);
+        Location location = new Location(world, x + 0.5, y + 0.5, z + 0.5);
+
+        if (_players == null) {
+            // no player index on region-threaded servers; the world sends it
+            // to the players near the door in this region
+            world.playSound(location, sound, 1, 1);
+            return;
+        }
+
+        _players.ForEachNear(worldIndex, x, y, z, radius, player -> player.playSound(location, sound, 1, 1));
+    }
+
+    private static Sound SoundFor(byte kind) {
+        switch (kind) {
+            case Settings.KIND_TRAPDOOR:
+                return Sound.BLOCK_WOODEN_TRAPDOOR_CLOSE;
+            case Settings.KIND_GATE:
+                return Sound.BLOCK_FENCE_GATE_CLOSE;
+            case Settings.KIND_DOOR:
+                return Sound.BLOCK_WOODEN_DOOR_CLOSE;
+            default:
+                return null;
+        }
+    }
+}
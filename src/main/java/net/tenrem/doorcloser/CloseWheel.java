@@ -0,0 +1,185 @@
+package net.tenrem.doorcloser;
+
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel for pending door closes. One repeating task calls
+// Advance() once per server tick, so the Bukkit scheduler only ever sees a
+// single task from us no matter how many doors are open.
+//
+// Level 0 has one slot per tick for the next 64 ticks, level 1 one slot per
+// 64 ticks, and so on. Entries further out are moved ("cascaded") down a level
+// when the level below wraps around. Insert and cancel are O(1).
+final class CloseWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    // furthest distance (in ticks) the wheel can represent without re-cascading
+    private static final long MAX_RANGE = 1L << (SLOT_BITS * LEVELS);
+
+    private final PendingClose[][] _slots = new PendingClose[LEVELS][SLOTS];
+
+    private long _currentTick;
+    private int _size;
+
+    long CurrentTick() {
+        return _currentTick;
+    }
+
+    int Size() {
+        return _size;
+    }
+
+    // Schedules (or re-schedules) a close. A deadline at or before the current
+    // tick fires on the next Advance().
+    void Schedule(PendingClose close, long deadline) {
+        if (close.IsScheduled()) {
+            Cancel(close);
+        }
+
+        close.deadline = deadline;
+        Insert(close, _currentTick + 1);
+        _size++;
+    }
+
+    void Cancel(PendingClose close) {
+        if (!close.IsScheduled()) {
+            return;
+        }
+
+        Unlink(close);
+        _size--;
+    }
+
+    // Moves the wheel forward one tick and hands every close due on that tick
+    // to the consumer.
+    void Advance(Consumer<PendingClose> expired) {
+        long tick = ++_currentTick;
+
+        // cascade higher levels first, so anything they drop into a lower
+        // level slot that is also wrapping this tick is handled below
+        int topLevel = 0;
+        while (topLevel < LEVELS - 1 && (tick & ((1L << (SLOT_BITS * (topLevel + 1))) - 1)) == 0) {
+            topLevel++;
+        }
+
+        for (int level = topLevel; level >= 1; level--) {
+            Cascade(level, (int)((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+        }
+
+        int slot = (int)(tick & SLOT_MASK);
+        PendingClose close = DetachSlot(0, slot);
+
+        while (close != null) {
+            PendingClose next = close.wheelNext;
+            close.wheelPrev = null;
+            close.wheelNext = null;
+
+            if (close.deadline > tick) {
+                // only happens for far-future entries that were clamped
+                Insert(close, tick + 1);
+            } else {
+                _size--;
+                expired.accept(close);
+            }
+
+            close = next;
+        }
+    }
+
+    // Removes every entry from the wheel, handing each one to the consumer.
+    // Used on shutdown.
+    void Drain(Consumer<PendingClose> drained) {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                PendingClose close = DetachSlot(level, slot);
+
+                while (close != null) {
+                    PendingClose next = close.wheelNext;
+                    close.wheelPrev = null;
+                    close.wheelNext = null;
+                    _size--;
+                    drained.accept(close);
+                    close = next;
+                }
+            }
+        }
+    }
+
+    private void Cascade(int level, int slot) {
+        PendingClose close = DetachSlot(level, slot);
+
+        while (close != null) {
+            PendingClose next = close.wheelNext;
+            close.wheelPrev = null;
+            close.wheelNext = null;
+            // the current tick's level 0 slot has not been expired yet, so
+            // entries due right now can still land in it
+            Insert(close, _currentTick);
+            close = next;
+        }
+    }
+
+    private void Insert(PendingClose close, long earliestTick) {
+        // anything already due goes into the earliest slot we can still expire
+        long target = Math.max(close.deadline, earliestTick);
+        long delta = target - _currentTick;
+
+        if (delta >= MAX_RANGE) {
+            // park it as far out as we can reach; it will be re-inserted
+            // when that slot cascades
+            target = _currentTick + MAX_RANGE - 1;
+            delta = MAX_RANGE - 1;
+        }
+
+        int level = 0;
+        while (delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+
+        int slot = (int)((target >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        PendingClose head = _slots[level][slot];
+        close.wheelPrev = null;
+        close.wheelNext = head;
+        if (head != null) {
+            head.wheelPrev = close;
+        }
+        _slots[level][slot] = close;
+
+        close.wheelLevel = level;
+        close.wheelSlot = slot;
+    }
+
+    private void Unlink(PendingClose close) {
+        if (close.wheelPrev != null) {
+            close.wheelPrev.wheelNext = close.wheelNext;
+        } else {
+            _slots[close.wheelLevel][close.wheelSlot] = close.wheelNext;
+        }
+
+        if (close.wheelNext != null) {
+            close.wheelNext.wheelPrev = close.wheelPrev;
+        }
+
+        close.wheelPrev = null;
+        close.wheelNext = null;
+        close.wheelLevel = -1;
+        close.wheelSlot = -1;
+    }
+
+    // Takes the whole list out of a slot. Entries keep their next links so the
+    // caller can walk them, but are no longer considered scheduled.
+    private PendingClose DetachSlot(int level, int slot) {
+        PendingClose head = _slots[level][slot];
+        _slots[level][slot] = null;
+
+        for (PendingClose close = head; close != null; close = close.wheelNext) {
+            close.wheelLevel = -1;
+            close.wheelSlot = -1;
+        }
+
+        return head;
+    }
+}
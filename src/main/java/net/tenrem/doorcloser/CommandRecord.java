@@ -0,0 +1,68 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.io.IOException;
+
+public class CommandRecord implements CommandExecutor {
+    private final DoorCloserPlugin _plugin;
+
+    public CommandRecord(DoorCloserPlugin plugin) {
+        _plugin = plugin;
+    }
+
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] split) {
+        InteractListener listener = _plugin.GetInteractListener();
+
+        if (listener == null) {
+            sender.sendMessage("DoorCloser is not running.");
+            return true;
+        }
+
+        String action = split.length > 0 ? split[0] : "status";
+
+        try {
+            if (action.equalsIgnoreCase("start")) {
+                InteractionTrace trace = listener.StartRecording();
+
+                if (trace == null) {
+                    sender.sendMessage("Already recording to " + listener.GetRecording().GetFile().getName() + ".");
+                } else {
+                    sender.sendMessage("Recording door clicks to " + trace.GetFile().getName() + ".");
+                }
+            } else if (action.equalsIgnoreCase("stop")) {
+                // the file is finished off the main thread; by the time it's
+                // done a player may have left
+                InteractionTrace trace = listener.StopRecording(message -> {
+                    if (!(sender instanceof Player) || ((Player)sender).isOnline()) {
+                        sender.sendMessage(message);
+                    }
+                });
+
+                if (trace == null) {
+                    sender.sendMessage("Not recording.");
+                } else {
+                    sender.sendMessage("Recorded " + trace.Clicks() + " clicks to " + trace.GetFile().getName() + ".");
+                }
+            } else if (action.equalsIgnoreCase("status")) {
+                InteractionTrace trace = listener.GetRecording();
+
+                if (trace == null) {
+                    sender.sendMessage("Not recording.");
+                } else {
+                    sender.sendMessage("Recording to " + trace.GetFile().getName() + ", " + trace.Clicks() + " clicks so far.");
+                }
+            } else {
+                return false;
+            }
+        } catch (IOException ex) {
+            sender.sendMessage("Interaction trace failed: " + ex.getMessage());
+            _plugin.getLogger().warning("Interaction trace failed: " + ex.getMessage());
+        }
+
+        return true;
+    }
+}
@@ -13,13 +13,20 @@ public class CommandReload implements CommandExecutor {
     }
 
     public boolean onCommand(CommandSender sender, Command command, String label, String[] split) {
-        Settings.Reload();
+        // parsing happens off the main thread; we hear back once it's swapped in
+        Settings.ReloadAsync((oldSettings, newSettings) -> {
+            // on Folia the pending closes are gone through on their own
+            // threads, so the summary may come after this returns
+            _plugin.SettingsReloaded(oldSettings, newSettings, summary -> {
+                if (sender instanceof Player) {
+                    Player player = (Player)sender;
 
-        if (sender instanceof Player) {
-            Player player = (Player)sender;
-
-            player.sendMessage("DoorCloser settings reloaded from config.yml.");
-        }
+                    if (player.isOnline()) {
+                        player.sendMessage("DoorCloser settings reloaded from config.yml. " + summary);
+                    }
+                }
+            });
+        });
 
         return true;
     }
@@ -0,0 +1,28 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+public class CommandStats implements CommandExecutor {
+    private final DoorCloserPlugin _plugin;
+
+    public CommandStats(DoorCloserPlugin plugin) {
+        _plugin = plugin;
+    }
+
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] split) {
+        Metrics metrics = _plugin.GetMetrics();
+
+        if (metrics == null) {
+            sender.sendMessage("DoorCloser is not running.");
+            return true;
+        }
+
+        for (String line : metrics.Report()) {
+            sender.sendMessage(line);
+        }
+
+        return true;
+    }
+}
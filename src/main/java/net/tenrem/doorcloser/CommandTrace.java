@@ -0,0 +1,116 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+public class CommandTrace implements CommandExecutor {
+    private final DoorCloserPlugin _plugin;
+
+    public CommandTrace(DoorCloserPlugin plugin) {
+        _plugin = plugin;
+    }
+
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] split) {
+        InteractListener listener = _plugin.GetInteractListener();
+
+        if (listener == null) {
+            sender.sendMessage("DoorCloser is not running.");
+            return true;
+        }
+
+        DebugTrace trace = listener.GetDebugTrace();
+        if (!trace.IsAvailable()) {
+            sender.sendMessage("Door tracing is turned off in config.yml (DebugTrace).");
+            return true;
+        }
+
+        String action = split.length > 0 ? split[0] : "status";
+
+        if (action.equalsIgnoreCase("all")) {
+            trace.TraceAll();
+        } else if (action.equalsIgnoreCase("world")) {
+            World world = split.length > 1 ? Bukkit.getWorld(split[1]) : WorldOf(sender);
+            if (world == null) {
+                sender.sendMessage(split.length > 1 ? "No world called " + split[1] + "." : "Name a world to trace.");
+                return true;
+            }
+
+            int worldIndex = listener.WorldNumberOf(world);
+            if (worldIndex == WorldIndex.NO_INDEX) {
+                sender.sendMessage("DoorCloser is already tracking as many worlds as it can.");
+                return true;
+            }
+            trace.TraceWorld(worldIndex, world.getName());
+        } else if (action.equalsIgnoreCase("chunk")) {
+            World world;
+            int chunkX, chunkZ;
+
+            if (split.length > 3) {
+                world = Bukkit.getWorld(split[1]);
+                try {
+                    chunkX = Integer.parseInt(split[2]);
+                    chunkZ = Integer.parseInt(split[3]);
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            } else if (sender instanceof Player) {
+                Location location = ((Player)sender).getLocation();
+                world = location.getWorld();
+                chunkX = location.getBlockX() >> 4;
+                chunkZ = location.getBlockZ() >> 4;
+            } else {
+                return false;
+            }
+
+            if (world == null) {
+                sender.sendMessage("No world called " + split[1] + ".");
+                return true;
+            }
+
+            int worldIndex = listener.WorldNumberOf(world);
+            if (worldIndex == WorldIndex.NO_INDEX) {
+                sender.sendMessage("DoorCloser is already tracking as many worlds as it can.");
+                return true;
+            }
+            trace.TraceChunk(worldIndex, world.getName(), chunkX, chunkZ);
+        } else if (action.equalsIgnoreCase("player")) {
+            Player player = split.length > 1 ? Bukkit.getPlayerExact(split[1]) : (sender instanceof Player ? (Player)sender : null);
+            if (player == null) {
+                sender.sendMessage(split.length > 1 ? split[1] + " is not online." : "Name a player to trace.");
+                return true;
+            }
+            trace.TracePlayer(player.getUniqueId(), player.getName());
+        } else if (action.equalsIgnoreCase("off")) {
+            trace.Off();
+            sender.sendMessage("Door tracing is off. " + trace.Recorded() + " records so far; '/" + label + " dump' writes them out.");
+            return true;
+        } else if (action.equalsIgnoreCase("dump")) {
+            // the file is written off the main thread; by the time it's done
+            // a player may have left
+            listener.DumpDebugTrace(message -> {
+                if (!(sender instanceof Player) || ((Player)sender).isOnline()) {
+                    sender.sendMessage(message);
+                }
+            });
+            return true;
+        } else if (action.equalsIgnoreCase("status")) {
+            String tracing = trace.Describe();
+            sender.sendMessage((tracing != null ? "Tracing " + tracing + ". " : "Door tracing is off. ") + trace.Recorded() + " records so far.");
+            return true;
+        } else {
+            return false;
+        }
+
+        sender.sendMessage("Tracing " + trace.Describe() + ", keeping the last " + DebugTrace.RECORDS + " records.");
+        return true;
+    }
+
+    private static World WorldOf(CommandSender sender) {
+        return sender instanceof Player ? ((Player)sender).getWorld() : null;
+    }
+}
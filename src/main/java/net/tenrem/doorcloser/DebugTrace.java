@@ -0,0 +1,341 @@
+package net.tenrem.doorcloser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// The last RECORDS things that happened to doors, for /dctrace: clicks and
+// why they were taken or turned away, double doors paired up, and closes
+// scheduled, run and cancelled. Off until someone turns it on, for the whole
+// server or for one world, chunk or player.
+//
+// Records are a fixed number of longs in one array that's allocated the
+// first time tracing is turned on, and then reused, so recording allocates
+// nothing and takes no lock. Any thread can record: it claims a slot with
+// one atomic increment and writes the record seqlock style, stamp last, so
+// the dump can tell a finished record from one still being written or
+// overwritten. A writer the whole ring laps before it's done could still
+// leave one garbled record, which at these sizes doesn't happen.
+final class DebugTrace {
+    // what a record is about
+    enum Kind {
+        CLICK,
+        PAIR,
+        SCHEDULED,
+        FIRED,
+        CANCELLED
+    }
+
+    // why. For clicks, whether the click was taken up at all
+    enum Reason {
+        NONE("", false),
+
+        // clicks
+        EVENT_CANCELLED("event_cancelled", false),
+        NOT_DOOR("not_door", false),
+        OUT_OF_RANGE("out_of_range", false),
+        RATE_LIMITED("rate_limited", false),
+        BYPASS("bypass", false),
+        CREATIVE("creative", false),
+        SNEAKING("sneaking", false),
+        POWERED("powered", false),
+        OUT_OF_SCOPE("out_of_scope", false),
+        TOGGLED("toggled_pending", true),
+        SCHEDULED("scheduled", true),
+
+        // who a close was scheduled for
+        PLAYER("player", true),
+        AUTO_OPEN("auto_open", true),
+        MOB("mob", true),
+        PLUGIN("plugin", true),
+        JOURNAL("journal", true),
+
+        // why a close ran or was dropped
+        DUE("due", true),
+        EVICTED("evicted", true),
+        OVER_QUOTA("over_player_limit", true),
+        CHUNK_UNLOAD("chunk_unload", true),
+        WORLD_UNLOAD("world_unload", true),
+        SHUTDOWN("shutdown", true),
+        TOGGLED_BACK("toggled_back", true),
+        REDSTONE("redstone", true),
+        VETOED("vetoed", true),
+        RELOAD("reload", true);
+
+        final String label;
+        final boolean accepted;
+
+        Reason(String label, boolean accepted) {
+            this.label = label;
+            this.accepted = accepted;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final Reason[] REASONS = Reason.values();
+
+    // 64k records of 64 bytes, 4 MB
+    static final int RECORDS = 1 << 16;
+
+    // the longs of one record. The stamp is the record's sequence number
+    // once it's complete, BUSY while it's being written
+    private static final int RECORD_LONGS = 8;
+    private static final int STAMP = 0;
+    private static final int TICK = 1;
+    private static final int WHAT = 2;      // kind, reason, thread id
+    private static final int KEY = 3;       // the door, see BlockKey
+    private static final int AUX = 4;       // depends on the kind, see Write
+    private static final int PLAYER_MOST = 5;
+    private static final int PLAYER_LEAST = 6;
+    private static final int MILLIS = 7;
+
+    private static final long BUSY = -1;
+
+    // what's being traced. The world is a WorldIndex number, -1 for any
+    private static final class Filter {
+        final int world;
+        final boolean chunk;
+        final int chunkX;
+        final int chunkZ;
+        final UUID player;
+        final String description;
+
+        Filter(int world, boolean chunk, int chunkX, int chunkZ, UUID player, String description) {
+            this.world = world;
+            this.chunk = chunk;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.player = player;
+            this.description = description;
+        }
+
+        boolean Matches(long key, UUID player) {
+            if (this.player != null) {
+                return this.player.equals(player);
+            }
+            if (world < 0) {
+                return true;
+            }
+            if (key == BlockKey.NONE || BlockKey.WorldIndex(key) != world) {
+                return false;
+            }
+            return !chunk || (ChunkShards.ChunkX(key) == chunkX && ChunkShards.ChunkZ(key) == chunkZ);
+        }
+    }
+
+    // null while tracing is off
+    private volatile Filter _filter;
+
+    // false if DebugTrace is off in the config
+    private final boolean _enabled;
+
+    // null until tracing is first turned on. Set before the filter, so a
+    // recorder that sees a filter sees the ring
+    private volatile AtomicLongArray _ring;
+    private final AtomicLong _next = new AtomicLong();
+
+    DebugTrace(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    // false if DebugTrace is off in the config; then On does nothing
+    boolean IsAvailable() {
+        return _enabled;
+    }
+
+    // one volatile read; call sites check this before working out anything
+    // they'd only need for a record
+    boolean IsOn() {
+        return _filter != null;
+    }
+
+    // what's being traced, or null when off
+    String Describe() {
+        Filter filter = _filter;
+        return filter != null ? filter.description : null;
+    }
+
+    long Recorded() {
+        return _next.get();
+    }
+
+    void TraceAll() {
+        On(new Filter(-1, false, 0, 0, null, "everything"));
+    }
+
+    void TraceWorld(int worldIndex, String name) {
+        On(new Filter(worldIndex, false, 0, 0, null, "world " + name));
+    }
+
+    void TraceChunk(int worldIndex, String name, int chunkX, int chunkZ) {
+        On(new Filter(worldIndex, true, chunkX, chunkZ, null, "chunk " + chunkX + ", " + chunkZ + " in " + name));
+    }
+
+    void TracePlayer(UUID player, String name) {
+        On(new Filter(-1, false, 0, 0, player, "player " + name));
+    }
+
+    // stops recording; what's in the ring stays there for a dump
+    void Off() {
+        _filter = null;
+    }
+
+    // the ring is allocated here, on the command's thread, never by a
+    // recorder
+    private synchronized void On(Filter filter) {
+        if (!_enabled) {
+            return;
+        }
+        if (_ring == null) {
+            _ring = new AtomicLongArray(RECORDS * RECORD_LONGS);
+        }
+        _filter = filter;
+    }
+
+    // Records one event if tracing is on and it's about what's being traced.
+    // player may be null
+    void Record(Kind kind, Reason reason, long tick, long key, long aux, UUID player) {
+        Filter filter = _filter;
+        if (filter == null || !filter.Matches(key, player)) {
+            return;
+        }
+
+        AtomicLongArray ring = _ring;
+        long sequence = _next.getAndIncrement();
+        int at = (int)(sequence & (RECORDS - 1)) * RECORD_LONGS;
+
+        // lazySet is an ordered store: nothing written after it can be seen
+        // before it, so the dump sees BUSY or a new stamp before any new field
+        ring.lazySet(at + STAMP, BUSY);
+        ring.lazySet(at + TICK, tick);
+        ring.lazySet(at + WHAT, kind.ordinal() | reason.ordinal() << 8 | Thread.currentThread().getId() << 16);
+        ring.lazySet(at + KEY, key);
+        ring.lazySet(at + AUX, aux);
+        ring.lazySet(at + PLAYER_MOST, player != null ? player.getMostSignificantBits() : 0);
+        ring.lazySet(at + PLAYER_LEAST, player != null ? player.getLeastSignificantBits() : 0);
+        ring.lazySet(at + MILLIS, System.currentTimeMillis());
+        ring.lazySet(at + STAMP, sequence);
+    }
+
+    // Copies out the complete records, oldest first, RECORD_LONGS longs
+    // each. Records still being written or overwritten during the copy are
+    // left out. Safe on any thread while others keep recording
+    long[] Snapshot() {
+        AtomicLongArray ring = _ring;
+        if (ring == null) {
+            return new long[0];
+        }
+
+        long end = _next.get();
+        long start = Math.max(0, end - RECORDS);
+        long[] records = new long[(int)(end - start) * RECORD_LONGS];
+        int copied = 0;
+
+        for (long sequence = start; sequence < end; sequence++) {
+            int at = (int)(sequence & (RECORDS - 1)) * RECORD_LONGS;
+            if (ring.get(at + STAMP) != sequence) {
+                continue;
+            }
+
+            for (int i = 0; i < RECORD_LONGS; i++) {
+                records[copied + i] = ring.get(at + i);
+            }
+
+            if (ring.get(at + STAMP) == sequence) {
+                copied += RECORD_LONGS;
+            }
+        }
+
+        long[] complete = new long[copied];
+        System.arraycopy(records, 0, complete, 0, copied);
+        return complete;
+    }
+
+    // Writes a snapshot out as text, one record per line. worldNames is by
+    // WorldIndex number. Meant for an async thread
+    static int Write(File file, long[] records, String[] worldNames) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Can't create " + folder);
+        }
+
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        int count = 0;
+
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.println("# time, tick, thread, kind, reason, world x y z, details");
+
+            for (int at = 0; at < records.length; at += RECORD_LONGS) {
+                long what = records[at + WHAT];
+                Kind kind = KINDS[(int)(what & 0xFF)];
+                Reason reason = REASONS[(int)(what >>> 8 & 0xFF)];
+
+                StringBuilder line = new StringBuilder();
+                line.append(time.format(new Date(records[at + MILLIS])))
+                    .append(" tick ").append(records[at + TICK])
+                    .append(" thread ").append(what >>> 16)
+                    .append(' ').append(kind.name().toLowerCase());
+
+                if (kind == Kind.CLICK) {
+                    line.append(reason.accepted ? " accepted " : " rejected ").append(reason.label);
+                } else if (reason != Reason.NONE) {
+                    line.append(' ').append(reason.label);
+                }
+
+                line.append(' ');
+                AppendBlock(line, records[at + KEY], worldNames);
+
+                long aux = records[at + AUX];
+                switch (kind) {
+                    case PAIR:
+                        line.append(" pair ");
+                        AppendBlock(line, aux, worldNames);
+                        break;
+                    case SCHEDULED:
+                        line.append(" in ").append(aux).append(" ticks");
+                        break;
+                    case FIRED:
+                        line.append(' ').append(aux).append(" ticks late");
+                        break;
+                    default:
+                        break;
+                }
+
+                long most = records[at + PLAYER_MOST];
+                long least = records[at + PLAYER_LEAST];
+                if (most != 0 || least != 0) {
+                    line.append(" player ").append(new UUID(most, least));
+                }
+
+                out.println(line);
+                count++;
+            }
+
+            if (out.checkError()) {
+                throw new IOException("Couldn't write " + file);
+            }
+        }
+        return count;
+    }
+
+    private static void AppendBlock(StringBuilder line, long key, String[] worldNames) {
+        if (key == BlockKey.NONE) {
+            line.append("-");
+            return;
+        }
+
+        int world = BlockKey.WorldIndex(key);
+        line.append(world < worldNames.length && worldNames[world] != null ? worldNames[world] : "#" + world)
+            .append(' ').append(BlockKey.X(key))
+            .append(' ').append(BlockKey.Y(key))
+            .append(' ').append(BlockKey.Z(key));
+    }
+}
@@ -0,0 +1,65 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.block.Block;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+// Called just before DoorCloser closes a door (or puts it back the way it
+// was). Cancelling it leaves the door as it is and drops the close.
+//
+// Only created when something is listening for it, so servers without such
+// a plugin pay nothing per close.
+public final class DoorAutoCloseEvent extends Event implements Cancellable {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final Block _door;
+    private final Block _pairedDoor;
+    private final boolean _openedByEntity;
+    private boolean _cancelled;
+
+    DoorAutoCloseEvent(Block door, Block pairedDoor, boolean openedByEntity) {
+        _door = door;
+        _pairedDoor = pairedDoor;
+        _openedByEntity = openedByEntity;
+    }
+
+    // the door, gate or trap door; the lower half for doors
+    public Block getBlock() {
+        return _door;
+    }
+
+    // the lower half of the other leaf of a double door, if that is closed
+    // along with it, or null
+    public Block getPairedBlock() {
+        return _pairedDoor;
+    }
+
+    // opened by a villager or other mob (CloseEntityDoors) rather than a player
+    public boolean isOpenedByEntity() {
+        return _openedByEntity;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return _cancelled;
+    }
+
+    @Override
+    public void setCancelled(boolean cancelled) {
+        _cancelled = cancelled;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+
+    static boolean HasListeners() {
+        return HANDLERS.getRegisteredListeners().length > 0;
+    }
+}
@@ -1,12 +1,18 @@
 package net.tenrem.doorcloser;
 
-import org.bukkit.Bukkit;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.function.Consumer;
+
 public class DoorCloserPlugin extends JavaPlugin {
+    private InteractListener _interactListener;
+    private Scheduling _scheduling;
+
     @Override
     public void onEnable() {
         Settings.ThisPlugin = this;
+        _scheduling = Scheduling.For(this);
 
         Settings.ReadConfigValues();
 
@@ -19,22 +25,61 @@ public class DoorCloserPlugin extends JavaPlugin {
 
 
     private void RegisterEvents() {
-        getServer().getPluginManager().registerEvents(new InteractListener(this), this);
+        _interactListener = new InteractListener(this);
+        getServer().getPluginManager().registerEvents(_interactListener, this);
+        getServer().getPluginManager().registerEvents(_interactListener.GetDoorPairs(), this);
+        getServer().getPluginManager().registerEvents(_interactListener.GetBypassCache(), this);
+        _interactListener.GetBypassCache().HookLuckPerms();
+
+        PlayerIndex playerIndex = _interactListener.GetPlayerIndex();
+        if (playerIndex != null) {
+            getServer().getPluginManager().registerEvents(playerIndex, this);
+            playerIndex.AddOnlinePlayers(getServer().getOnlinePlayers());
+        }
+
+        _interactListener.Start();
+
+        // for other plugins; Bukkit drops it again when we're disabled
+        getServer().getServicesManager().register(DoorCloserService.class, new PendingCloseService(_interactListener), this, ServicePriority.Normal);
+    }
+
+    // Bukkit scheduler, or Folia's region schedulers when running on Folia
+    Scheduling GetScheduling() {
+        return _scheduling;
+    }
+
+    // called by /dcreload on the main thread (Folia: the global region
+    // thread), after the new settings are in. report gets a line about what
+    // happened to the pending closes, possibly later and from another thread
+    void SettingsReloaded(Settings oldSettings, Settings newSettings, Consumer<String> report) {
+        if (_interactListener != null) {
+            _interactListener.SettingsReloaded(oldSettings, newSettings, report);
+        }
+    }
+
+    // null until the listener is set up
+    InteractListener GetInteractListener() {
+        return _interactListener;
+    }
+
+    // likewise
+    Metrics GetMetrics() {
+        return _interactListener != null ? _interactListener.GetMetrics() : null;
     }
 
     private void RegisterCommands() {
         getCommand("dcreload").setExecutor(new CommandReload(this));
+        getCommand("dcstats").setExecutor(new CommandStats(this));
+        getCommand("dcrecord").setExecutor(new CommandRecord(this));
+        getCommand("dctrace").setExecutor(new CommandTrace(this));
     }
 
     @Override
     public void onDisable() {
         // removal of commands and events is done automatically by Bukkit/Spigot
-        // runs all scheduled tasks to open/close doors
-        Bukkit.getScheduler().getPendingTasks().forEach(worker -> {
-            if (worker.getOwner().equals(this)) {
-                ((Runnable) worker).run();
-            }
-        });
-        //getLogger().info("onDisable has been invoked!");
+        // runs all pending closes to open/close doors
+        if (_interactListener != null) {
+            _interactListener.CloseAllPending();
+        }
     }
 }
@@ -0,0 +1,55 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Collection;
+
+// DoorCloser's API for other plugins, registered with Bukkit's
+// ServicesManager while DoorCloser is enabled:
+//
+//   DoorCloserService doors = Bukkit.getServicesManager().load(DoorCloserService.class);
+//
+// A door can be given as either of its halves, or either leaf of a double
+// door; they all share one pending close. Lookups by block are a hash lookup.
+// The bulk calls cost about the number of closes pending in the area, or the
+// number of chunks in it, whichever is less.
+//
+// Call from the main thread. On Folia, call from the thread of the region
+// that owns the blocks, and keep areas within what that region owns.
+//
+// To veto a single close as it happens, listen for DoorAutoCloseEvent.
+public interface DoorCloserService {
+    // whether a close is pending on the door
+    boolean IsPending(Block door);
+
+    // ticks until the door's close is due, 0 if it's due already, or -1 if
+    // nothing is pending on it
+    long TicksUntilClose(Block door);
+
+    // drops the door's pending close without running it. False if there was
+    // none
+    boolean Cancel(Block door);
+
+    // Closes the door delayTicks from now, whatever state it's in by then.
+    // A close already pending on the door is moved to the new time and
+    // from then on closes it, even one that would have left the door open
+    // or waited for players to walk away. A close waiting for its chunk to
+    // load keeps waiting, and closes the door once the chunk loads. False
+    // if the block isn't a door, gate or trap door, or can't be tracked.
+    boolean Schedule(Block door, long delayTicks);
+
+    // the same for many doors; returns how many were scheduled
+    int Schedule(Collection<Block> doors, long delayTicks);
+
+    // Drops every close pending in the chunk or area, returning how many.
+    // Areas are inclusive block coordinates.
+    int CancelInChunk(Chunk chunk);
+    int CancelInArea(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+
+    // Moves every close pending in the chunk or area to delayTicks from now,
+    // returning how many. Closes parked in unloaded chunks are left alone.
+    int RescheduleInChunk(Chunk chunk, long delayTicks);
+    int RescheduleInArea(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, long delayTicks);
+}
@@ -0,0 +1,248 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Door;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.List;
+
+// Works out which door, if any, forms a double door with a given door, and
+// remembers the answer per block position. Cached answers are dropped when a
+// block at or next to the door changes, so busy double doors (spawn gates,
+// shops) skip the neighbour lookups entirely after the first use.
+//
+// The cache is split into lock stripes by region section, so region threads
+// on Folia rarely wait on each other; on a normal server the locks are never
+// contended.
+final class DoorPairs implements Listener {
+    private static final int STRIPES = 64;
+
+    // a stripe is simply cleared if it grows past this
+    private static final int STRIPE_LIMIT = 1024;
+
+    // marks "looked at this door, it's a single door"
+    private static final Object NO_PAIR = new Object();
+
+    // For each (facing, hinge), the side the other half of a double door is
+    // on: the side opposite the hinge.
+    private static final BlockFace[][] PAIR_DIRECTION = new BlockFace[BlockFace.values().length][Hinge.values().length];
+
+    static {
+        SetPairDirection(BlockFace.NORTH, BlockFace.EAST, BlockFace.WEST);
+        SetPairDirection(BlockFace.SOUTH, BlockFace.WEST, BlockFace.EAST);
+        SetPairDirection(BlockFace.EAST, BlockFace.SOUTH, BlockFace.NORTH);
+        SetPairDirection(BlockFace.WEST, BlockFace.NORTH, BlockFace.SOUTH);
+    }
+
+    private static void SetPairDirection(BlockFace facing, BlockFace leftHinge, BlockFace rightHinge) {
+        PAIR_DIRECTION[facing.ordinal()][Hinge.LEFT.ordinal()] = leftHinge;
+        PAIR_DIRECTION[facing.ordinal()][Hinge.RIGHT.ordinal()] = rightHinge;
+    }
+
+    private final WorldIndex _worldIndex;
+
+    // lower door half key -> paired lower door half (Block) or NO_PAIR, one
+    // map per stripe, each guarded by itself
+    @SuppressWarnings("unchecked")
+    private final LongObjectMap<Object>[] _stripes = new LongObjectMap[STRIPES];
+
+    // set once anything has been cached, so the physics handler can skip the
+    // work until doors are actually in use
+    private volatile boolean _anyCached;
+
+    DoorPairs(WorldIndex worldIndex) {
+        _worldIndex = worldIndex;
+
+        for (int i = 0; i < STRIPES; i++) {
+            _stripes[i] = new LongObjectMap<>(64);
+        }
+    }
+
+    // Returns the lower half of the door paired with doorBlock, or null for a
+    // single door. doorBlock must be a lower half. doorData may be passed in
+    // if the caller already has it, otherwise it's read on a cache miss.
+    Block PairOf(Block doorBlock, Door doorData) {
+        long key = _worldIndex.KeyOf(doorBlock);
+        if (key == BlockKey.NONE) {
+            return Resolve(doorBlock, doorData);
+        }
+
+        LongObjectMap<Object> stripe = StripeOf(key);
+
+        synchronized (stripe) {
+            Object cached = stripe.Get(key);
+            if (cached != null) {
+                return cached == NO_PAIR ? null : (Block)cached;
+            }
+        }
+
+        Block pair = Resolve(doorBlock, doorData);
+
+        synchronized (stripe) {
+            if (stripe.Size() >= STRIPE_LIMIT) {
+                stripe.Clear();
+            }
+            stripe.Put(key, pair != null ? pair : NO_PAIR);
+        }
+        _anyCached = true;
+
+        return pair;
+    }
+
+    // The door of a pair that pending closes are keyed on, so clicking either
+    // half of a double door finds the same entry: the partner of a left-hinged
+    // door, otherwise the door itself.
+    static Block CanonicalOf(Block doorBlock, Door doorData, Block pair) {
+        if (pair != null && doorData.getHinge() == Hinge.LEFT) {
+            return pair;
+        }
+        return doorBlock;
+    }
+
+    private Block Resolve(Block doorBlock, Door doorData) {
+        if (doorData == null) {
+            BlockData data = doorBlock.getBlockData();
+            if (!(data instanceof Door)) {
+                return null;
+            }
+            doorData = (Door)data;
+        }
+
+        Hinge hinge = doorData.getHinge();
+        BlockFace direction = PAIR_DIRECTION[doorData.getFacing().ordinal()][hinge.ordinal()];
+
+        if (direction == null) {
+            return null;
+        }
+
+        // check the block we found that is opposite the hinge. If it
+        // is a door and has a hinge that is opposite this one, then
+        // it is our pair
+        Block neighbour = doorBlock.getRelative(direction);
+        BlockData data = neighbour.getBlockData();
+
+        if (data instanceof Door && ((Door)data).getHinge() != hinge) {
+            return neighbour;
+        }
+
+        // neighbour is not a door, or has its hinge on the same side
+        return null;
+    }
+
+    // Drops cached answers that a change at this block could affect: the
+    // block itself and its horizontal neighbours, at this level and the one
+    // below (in case it's a top half).
+    void Invalidate(Block block) {
+        if (!_anyCached) {
+            return;
+        }
+
+        int worldIndex = _worldIndex.Find(block.getWorld());
+        if (worldIndex == WorldIndex.NO_INDEX) {
+            return;
+        }
+
+        int x = block.getX();
+        int y = block.getY();
+        int z = block.getZ();
+
+        for (int dy = -1; dy <= 0; dy++) {
+            Remove(worldIndex, x, y + dy, z);
+            Remove(worldIndex, x + 1, y + dy, z);
+            Remove(worldIndex, x - 1, y + dy, z);
+            Remove(worldIndex, x, y + dy, z + 1);
+            Remove(worldIndex, x, y + dy, z - 1);
+        }
+    }
+
+    void Clear() {
+        for (LongObjectMap<Object> stripe : _stripes) {
+            synchronized (stripe) {
+                stripe.Clear();
+            }
+        }
+    }
+
+    private void Remove(int worldIndex, int x, int y, int z) {
+        if (BlockKey.IsPackable(x, y, z)) {
+            long key = BlockKey.Pack(worldIndex, x, y, z);
+            LongObjectMap<Object> stripe = StripeOf(key);
+
+            synchronized (stripe) {
+                stripe.Remove(key);
+            }
+        }
+    }
+
+    // neighbouring blocks mostly share a stripe, since it's picked by region section
+    private LongObjectMap<Object> StripeOf(long key) {
+        int sectionX = ChunkShards.ChunkX(key) >> CloseShard.SECTION_SHIFT;
+        int sectionZ = ChunkShards.ChunkZ(key) >> CloseShard.SECTION_SHIFT;
+        return _stripes[(sectionX * 31 + sectionZ) & (STRIPES - 1)];
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void blockPlace(BlockPlaceEvent e) {
+        Invalidate(e.getBlockPlaced());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void blockBreak(BlockBreakEvent e) {
+        Invalidate(e.getBlock());
+    }
+
+    // fires constantly, so only bother when a door is involved
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void blockPhysics(BlockPhysicsEvent e) {
+        if (!_anyCached) {
+            return;
+        }
+
+        Settings settings = Settings.Current();
+        Block block = e.getBlock();
+
+        if (Settings.KindOnly(settings.KindOf(block.getType())) == Settings.KIND_DOOR
+                || Settings.KindOnly(settings.KindOf(e.getChangedType())) == Settings.KIND_DOOR) {
+            Invalidate(block);
+        }
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void pistonExtend(BlockPistonExtendEvent e) {
+        InvalidateMoved(e.getBlocks(), e.getDirection());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void pistonRetract(BlockPistonRetractEvent e) {
+        InvalidateMoved(e.getBlocks(), e.getDirection());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void worldUnload(WorldUnloadEvent e) {
+        // rare enough that dropping everything is fine
+        Clear();
+    }
+
+    private void InvalidateMoved(List<Block> blocks, BlockFace direction) {
+        if (!_anyCached) {
+            return;
+        }
+
+        for (Block block : blocks) {
+            Invalidate(block);
+            Invalidate(block.getRelative(direction));
+        }
+    }
+}
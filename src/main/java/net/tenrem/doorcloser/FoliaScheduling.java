@@ -0,0 +1,113 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+
+// Scheduling for Folia's region threads, through its region, global region
+// and async schedulers. We build against the Spigot API, so the Folia
+// schedulers are looked up by reflection once, up front.
+final class FoliaScheduling extends Scheduling {
+    private static final String REGIONIZED_SERVER = "io.papermc.paper.threadedregions.RegionizedServer";
+
+    private final Plugin _plugin;
+
+    private final Object _regionScheduler;
+    private final Object _globalScheduler;
+    private final Object _asyncScheduler;
+
+    private final Method _regionRunAtFixedRate;
+    private final Method _regionExecute;
+    private final Method _globalRunAtFixedRate;
+    private final Method _globalExecute;
+    private final Method _asyncRunNow;
+    private final Method _taskCancel;
+
+    static boolean IsAvailable() {
+        try {
+            Class.forName(REGIONIZED_SERVER);
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    FoliaScheduling(Plugin plugin) {
+        _plugin = plugin;
+
+        try {
+            Class<?> regionClass = Class.forName("io.papermc.paper.threadedregions.scheduler.RegionScheduler");
+            Class<?> globalClass = Class.forName("io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler");
+            Class<?> asyncClass = Class.forName("io.papermc.paper.threadedregions.scheduler.AsyncScheduler");
+            Class<?> taskClass = Class.forName("io.papermc.paper.threadedregions.scheduler.ScheduledTask");
+
+            _regionScheduler = Bukkit.class.getMethod("getRegionScheduler").invoke(null);
+            _globalScheduler = Bukkit.class.getMethod("getGlobalRegionScheduler").invoke(null);
+            _asyncScheduler = Bukkit.class.getMethod("getAsyncScheduler").invoke(null);
+
+            _regionRunAtFixedRate = regionClass.getMethod("runAtFixedRate", Plugin.class, World.class, int.class, int.class, Consumer.class, long.class, long.class);
+            _regionExecute = regionClass.getMethod("execute", Plugin.class, World.class, int.class, int.class, Runnable.class);
+            _globalRunAtFixedRate = globalClass.getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class);
+            _globalExecute = globalClass.getMethod("execute", Plugin.class, Runnable.class);
+            _asyncRunNow = asyncClass.getMethod("runNow", Plugin.class, Consumer.class);
+            _taskCancel = taskClass.getMethod("cancel");
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Folia detected, but its schedulers could not be found", ex);
+        }
+    }
+
+    @Override
+    boolean IsRegionized() {
+        return true;
+    }
+
+    @Override
+    Task RunRepeating(Runnable task) {
+        Consumer<Object> consumer = scheduled -> task.run();
+        return Wrap(Invoke(_globalRunAtFixedRate, _globalScheduler, _plugin, consumer, 1L, 1L));
+    }
+
+    @Override
+    Task RunRepeatingAt(World world, int chunkX, int chunkZ, Runnable task) {
+        Consumer<Object> consumer = scheduled -> task.run();
+        return Wrap(Invoke(_regionRunAtFixedRate, _regionScheduler, _plugin, world, chunkX, chunkZ, consumer, 1L, 1L));
+    }
+
+    @Override
+    void RunAt(World world, int chunkX, int chunkZ, Runnable task) {
+        Invoke(_regionExecute, _regionScheduler, _plugin, world, chunkX, chunkZ, task);
+    }
+
+    @Override
+    void RunGlobal(Runnable task) {
+        Invoke(_globalExecute, _globalScheduler, _plugin, task);
+    }
+
+    @Override
+    void RunAsync(Runnable task) {
+        Consumer<Object> consumer = scheduled -> task.run();
+        Invoke(_asyncRunNow, _asyncScheduler, _plugin, consumer);
+    }
+
+    private Task Wrap(Object scheduledTask) {
+        return () -> Invoke(_taskCancel, scheduledTask);
+    }
+
+    private static Object Invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package net.tenrem.doorcloser;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-bucket histogram. Each bucket counts values up to and including its
+// upper bound, plus one overflow bucket at the end. Recording is a short scan
+// and a LongAdder increment, so it's fine on the main thread.
+final class Histogram {
+    private final long[] _bounds;
+    private final LongAdder[] _counts;
+    private final LongAdder _sum = new LongAdder();
+
+    // bounds must be in ascending order
+    Histogram(long... bounds) {
+        _bounds = bounds;
+        _counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < _counts.length; i++) {
+            _counts[i] = new LongAdder();
+        }
+    }
+
+    void Record(long value) {
+        int bucket = 0;
+        while (bucket < _bounds.length && value > _bounds[bucket]) {
+            bucket++;
+        }
+
+        _counts[bucket].increment();
+        _sum.add(value);
+    }
+
+    int Buckets() {
+        return _counts.length;
+    }
+
+    // upper bound of a bucket, or Long.MAX_VALUE for the overflow bucket
+    long UpperBound(int bucket) {
+        return bucket < _bounds.length ? _bounds[bucket] : Long.MAX_VALUE;
+    }
+
+    // values recorded in this bucket alone (not cumulative)
+    long CountIn(int bucket) {
+        return _counts[bucket].sum();
+    }
+
+    long Count() {
+        long count = 0;
+        for (LongAdder adder : _counts) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    long Sum() {
+        return _sum.sum();
+    }
+
+    // Rough percentile: the upper bound of the bucket the given fraction of
+    // values falls in. Long.MAX_VALUE if it's in the overflow bucket, -1 if
+    // nothing has been recorded.
+    long Percentile(double fraction) {
+        long count = Count();
+        if (count == 0) {
+            return -1;
+        }
+
+        long target = (long)Math.ceil(count * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < _counts.length; bucket++) {
+            seen += _counts[bucket].sum();
+            if (seen >= target) {
+                return UpperBound(bucket);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
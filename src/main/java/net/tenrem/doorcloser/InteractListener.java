@@ -6,129 +6,1490 @@ import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.block.data.Openable;
 import org.bukkit.block.data.Bisected.Half;
 import org.bukkit.block.data.type.Door;
-import org.bukkit.block.data.type.Door.Hinge;
-import org.bukkit.block.data.type.Gate;
-import org.bukkit.block.data.type.TrapDoor;
+import org.bukkit.block.data.type.Observer;
 import org.bukkit.event.Listener;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
+import org.bukkit.event.Event;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.entity.EntityInteractEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 
 
 import org.bukkit.*;
 import org.bukkit.GameMode;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.scheduler.BukkitTask;
-import org.bukkit.util.Vector;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
-import java.util.Map;
-import java.util.WeakHashMap;
+public final class InteractListener implements Listener {
+    // this is a bukkit / minecraft constant. Put here only for clarity
+    private static final int TICKS_PER_SECOND = 20;
+
+    // where an observer next to a door could be watching it from
+    private static final BlockFace[] NEIGHBOUR_FACES = {
+        BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST, BlockFace.UP, BlockFace.DOWN
+    };
+
+    // how often a proximity close looks for players near its door
+    private static final int PROXIMITY_CHECK_TICKS = 5;
+
+    // a mob re-opening a door moves its close back at most this often
+    private static final long ENTITY_COALESCE_TICKS = TICKS_PER_SECOND;
+
+    // once protection plugins keep a player out of a door, AutoOpen doesn't
+    // ask them about that player and door again for this long
+    private static final long AUTO_OPEN_DENIED_TICKS = 5 * TICKS_PER_SECOND;
+
+    // what a reload did to the pending closes, by index into the counts
+    private static final int RECONCILE_CHECKED = 0;
+    private static final int RECONCILE_CANCELLED = 1;
+    private static final int RECONCILE_RETIMED = 2;
+    private static final int RECONCILE_MICROS = 3;
+    private static final int RECONCILE_COUNTS = 4;
+
+    private final Plugin _plugin;
+    private final Scheduling _scheduling;
+
+    public InteractListener(DoorCloserPlugin plugin) {
+        this(plugin, plugin.GetScheduling());
+    }
+
+    // only needs the Plugin interface, so the benchmarks can run the listener
+    // without a real server behind it
+    InteractListener(Plugin plugin, Scheduling scheduling) {
+        _plugin = plugin;
+        _scheduling = scheduling;
+        _bypassCache = new BypassCache(plugin);
+
+        if (scheduling.IsRegionized()) {
+            // nothing can keep a player index up to date across regions, so
+            // close sounds fall back to the world's own (see CloseSounds)
+            _playerIndex = null;
+            _mainShard = null;
+            _allShards = _shards.values();
+        } else {
+            _playerIndex = new PlayerIndex(_worldIndex);
+            _playerIndex.SetBlockChangeListener(this::PlayerMovedBlock);
+            _mainShard = new CloseShard(0, Settings.Current().maxPendingCloses, new CloseSounds(_worldIndex, _playerIndex));
+            _allShards = Collections.singletonList(_mainShard);
+        }
+
+        _metrics = new Metrics(_worldIndex, () -> _allShards, _load);
+    }
+
+    private final WorldIndex _worldIndex = new WorldIndex();
+    private final DoorPairs _doorPairs = new DoorPairs(_worldIndex);
+    private final PoweredBlocks _poweredBlocks = new PoweredBlocks();
+    private final PlayerIndex _playerIndex;
+    private final BypassCache _bypassCache;
+
+    // On a normal server every pending close lives in this one shard, whose
+    // wheel is advanced by a single repeating task instead of one Bukkit task
+    // per door. null on Folia
+    private final CloseShard _mainShard;
+
+    // On Folia, one shard per region section with closes pending, by
+    // CloseShard.SectionKey. Each is only touched by the thread of the region
+    // that owns its section
+    private final ConcurrentHashMap<Long, CloseShard> _shards = new ConcurrentHashMap<>();
+
+    private final Collection<CloseShard> _allShards;
+
+    // pending closes over all shards, for MaxPendingCloses
+    private final AtomicInteger _pendingTotal = new AtomicInteger();
+
+    // pending closes per player over all shards, for
+    // MaxPendingClosesPerPlayer. Players with none aren't in here
+    private final ConcurrentHashMap<UUID, Integer> _ownedByPlayer = new ConcurrentHashMap<>();
+
+    // metrics and journal upkeep, plus the main shard on a normal server
+    private Scheduling.Task _globalTask;
+    private volatile long _globalTick;
+
+    // crash-safe record of what's pending. null if disabled or it failed
+    private volatile CloseJournal _journal;
+
+    // a journal compaction is running on an async thread
+    private volatile boolean _compactingJournal;
+
+    private final Metrics _metrics;
+
+    // recent tick times, and how much work to shed because of them
+    private final LoadMonitor _load = new LoadMonitor();
+
+    // doors that AutoOpen may open, see AutoOpenDoors
+    private final AutoOpenDoors _autoOpenDoors = new AutoOpenDoors();
+
+    // the fake click AutoOpen sends to protection plugins; blockInteract
+    // ignores it
+    private PlayerInteractEvent _autoOpenCheck;
+
+    // AutoOpenDoors has been full, and we've said so in the log
+    private boolean _autoOpenFullLogged;
+
+    // the metrics file is written off the main thread; skip a write while the
+    // previous one is still going
+    private volatile boolean _writingMetricsFile;
+
+    // where accepted clicks are being recorded (/dcrecord), or null
+    private volatile InteractionTrace _trace;
+
+    // what just happened to doors, when /dctrace has it on
+    private final DebugTrace _debugTrace = new DebugTrace(Settings.Current().debugTrace);
+
+    // the double door cache also listens for block changes, so the plugin
+    // registers it alongside this listener
+    DoorPairs GetDoorPairs() {
+        return _doorPairs;
+    }
+
+    // likewise the player lookup used to pick who hears close sounds. null on
+    // Folia
+    PlayerIndex GetPlayerIndex() {
+        return _playerIndex;
+    }
+
+    // and the bypass permission cache, which tracks joins and quits
+    BypassCache GetBypassCache() {
+        return _bypassCache;
+    }
+
+    Metrics GetMetrics() {
+        return _metrics;
+    }
+
+    // the doors AutoOpen remembers, for the tests
+    AutoOpenDoors GetAutoOpenDoors() {
+        return _autoOpenDoors;
+    }
+
+    DebugTrace GetDebugTrace() {
+        return _debugTrace;
+    }
+
+    // the number BlockKey uses for a world, handing one out if needed.
+    // WorldIndex.NO_INDEX if there are none left
+    int WorldNumberOf(World world) {
+        return _worldIndex.IndexOf(world);
+    }
+
+    // Writes what the debug trace holds to a new file in the traces folder.
+    // The records are copied here and written on an async thread; done gets
+    // a line saying how it went, back on the main (Folia: global) thread
+    void DumpDebugTrace(Consumer<String> done) {
+        long[] records = _debugTrace.Snapshot();
+
+        String[] worldNames = new String[BlockKey.MAX_WORLDS];
+        for (int i = 0; i < worldNames.length; i++) {
+            World world = _worldIndex.WorldAt(i);
+            worldNames[i] = world != null ? world.getName() : null;
+        }
+
+        String name = "debug-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt";
+        File file = new File(new File(_plugin.getDataFolder(), "traces"), name);
+
+        _scheduling.RunAsync(() -> {
+            try {
+                int written = DebugTrace.Write(file, records, worldNames);
+                _scheduling.RunGlobal(() -> done.accept("Wrote " + written + " trace records to " + name + "."));
+            } catch (IOException ex) {
+                _plugin.getLogger().warning("Could not write debug trace " + file + ": " + ex.getMessage());
+                _scheduling.RunGlobal(() -> done.accept("Could not write the debug trace: " + ex.getMessage()));
+            }
+        });
+    }
+
+    // the recording in progress, or null
+    InteractionTrace GetRecording() {
+        return _trace;
+    }
+
+    // Starts recording accepted clicks to a new file in the plugin's traces
+    // folder. Returns null if a recording is already running.
+    synchronized InteractionTrace StartRecording() throws IOException {
+        if (_trace != null) {
+            return null;
+        }
+
+        String name = "interactions-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".trace";
+        _trace = new InteractionTrace(new File(new File(_plugin.getDataFolder(), "traces"), name), _scheduling, _globalTick);
+        return _trace;
+    }
+
+    // Stops the recording and returns it, or null if there wasn't one. The
+    // file is finished on an async thread; if that fails, failed gets a line
+    // saying so, back on the main (Folia: global) thread
+    synchronized InteractionTrace StopRecording(Consumer<String> failed) {
+        InteractionTrace trace = _trace;
+        if (trace == null) {
+            return null;
+        }
+
+        _trace = null;
+        FinishRecording(trace, failed);
+        return trace;
+    }
+
+    // the recorder stopped itself because the file got too big
+    private synchronized void RecordingFull(InteractionTrace trace) {
+        if (_trace != trace) {
+            return;
+        }
+
+        _trace = null;
+        FinishRecording(trace, null);
+        _plugin.getLogger().warning("Interaction trace " + trace.GetFile() + " is full; recording stopped.");
+    }
+
+    private void FinishRecording(InteractionTrace trace, Consumer<String> failed) {
+        trace.Close(ex -> {
+            if (ex == null) {
+                return;
+            }
+
+            _plugin.getLogger().warning("Couldn't finish interaction trace " + trace.GetFile() + ": " + ex.getMessage());
+            if (failed != null) {
+                _scheduling.RunGlobal(() -> failed.accept("Couldn't finish " + trace.GetFile().getName() + ": " + ex.getMessage()));
+            }
+        });
+    }
+
+    // called on the main thread once /dcreload has swapped the settings
+    void SettingsReloaded(Settings oldSettings, Settings newSettings, Consumer<String> report) {
+        // the bypass permission itself may have changed
+        _bypassCache.Clear();
+
+        if (!newSettings.closeByProximity || !newSettings.autoOpen) {
+            _autoOpenDoors.Clear();
+        }
+
+        if (newSettings.SchedulesLike(oldSettings)) {
+            report.accept("Pending closes unchanged.");
+            return;
+        }
+        Reconcile(oldSettings, newSettings, report);
+    }
+
+    // Brings the pending closes in line with reloaded settings, one pass
+    // over each shard on the thread that owns it. report gets the totals
+    // once the last shard is done
+    private void Reconcile(Settings oldSettings, Settings newSettings, Consumer<String> report) {
+        if (_mainShard != null) {
+            int[] counts = new int[RECONCILE_COUNTS];
+            Reconcile(_mainShard, oldSettings, newSettings, counts);
+            Reconciled(counts, report);
+            return;
+        }
+
+        List<CloseShard> shards = new ArrayList<>(_shards.values());
+        AtomicIntegerArray totals = new AtomicIntegerArray(RECONCILE_COUNTS);
+        AtomicInteger shardsLeft = new AtomicInteger(shards.size() + 1);
+
+        Runnable shardDone = () -> {
+            if (shardsLeft.decrementAndGet() == 0) {
+                int[] counts = new int[RECONCILE_COUNTS];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = totals.get(i);
+                }
+                Reconciled(counts, report);
+            }
+        };
+
+        for (CloseShard shard : shards) {
+            World world = _worldIndex.WorldAt(CloseShard.SectionWorld(shard.sectionKey));
+            if (world == null) {
+                shardDone.run();
+                continue;
+            }
+
+            _scheduling.RunAt(world, CloseShard.SectionX(shard.sectionKey) << CloseShard.SECTION_SHIFT,
+                CloseShard.SectionZ(shard.sectionKey) << CloseShard.SECTION_SHIFT, () -> {
+                    int[] counts = new int[RECONCILE_COUNTS];
+                    Reconcile(shard, oldSettings, newSettings, counts);
+                    for (int i = 0; i < counts.length; i++) {
+                        totals.addAndGet(i, counts[i]);
+                    }
+                    shardDone.run();
+                });
+        }
+
+        // our own count, so an empty map still reports
+        shardDone.run();
+    }
+
+    // One walk over a shard's closes, oldest first. Drops the ones whose
+    // material the new settings leave out of scope (or mob closes, if those
+    // were turned off) and moves the rest to the deadline their door's new
+    // Time gives, counted from when they were opened. Closes another plugin
+    // asked for, or restored from the journal, are left as they are.
+    private void Reconcile(CloseShard shard, Settings oldSettings, Settings newSettings, int[] counts) {
+        long started = System.nanoTime();
+        long now = shard.wheel.CurrentTick();
+
+        PendingClose next;
+        for (PendingClose pending = shard.pending.Oldest(); pending != null; pending = next) {
+            next = pending.ageNewer;
+            counts[RECONCILE_CHECKED]++;
+
+            if (pending.material == null) {
+                continue;
+            }
+
+            Settings settings = newSettings.At(pending.door1Block);
+            if (!Settings.IsInScope(settings.KindOf(pending.material)) || (pending.byEntity && !settings.closeEntityDoors)) {
+                CancelClose(pending, DebugTrace.Reason.RELOAD);
+                _metrics.closesCancelledByReload.increment();
+                counts[RECONCILE_CANCELLED]++;
+                continue;
+            }
+
+            // parked closes run when their chunk loads, and proximity closes
+            // go by who's near rather than by Time
+            if (pending.parked || pending.delayStart == PendingClose.NEVER || (!pending.byEntity && UsesProximity(settings))) {
+                continue;
+            }
+
+            Settings old = oldSettings.At(pending.door1Block);
+            if (old.secondsToRemainOpen == settings.secondsToRemainOpen && !pending.proximity) {
+                continue;
+            }
+
+            long deadline = Math.max(now, pending.delayStart + Stretched(settings, (long)settings.secondsToRemainOpen * TICKS_PER_SECOND));
+            pending.proximity = false;
+
+            // already due and waiting its turn in the ready queue
+            if (deadline == now && pending.queued) {
+                continue;
+            }
+            if (deadline != pending.deadline || pending.queued) {
+                MoveDeadline(pending, deadline);
+                _metrics.closesRetimedByReload.increment();
+                counts[RECONCILE_RETIMED]++;
+            }
+        }
+
+        counts[RECONCILE_MICROS] += (int)((System.nanoTime() - started) / 1000);
+    }
+
+    private void Reconciled(int[] counts, Consumer<String> report) {
+        String summary = "Pending closes: " + counts[RECONCILE_CHECKED] + " checked, " + counts[RECONCILE_CANCELLED]
+            + " cancelled as out of scope, " + counts[RECONCILE_RETIMED] + " re-timed in "
+            + String.format("%.1f", counts[RECONCILE_MICROS] / 1000.0) + " ms.";
+        _plugin.getLogger().info(summary);
+        report.accept(summary);
+    }
+
+    public void Start() {
+        Settings settings = Settings.Current();
+
+        if (settings.closeByProximity && _playerIndex == null) {
+            _plugin.getLogger().warning("CloseMode Proximity isn't supported on Folia, using Time instead.");
+        }
+
+        if (settings.persistPendingCloses) {
+            OpenJournal();
+        }
+
+        if (_globalTask == null) {
+            _globalTask = _scheduling.RunRepeating(this::GlobalTick);
+        }
+    }
+
+    // Stops the wheels and runs every close that is still pending. Used on
+    // shutdown. Only closes parked in unloaded chunks are left in the journal.
+    //
+    // On Folia the region threads are shutting down as well and blocks can't
+    // be touched from here, so the shard tasks are just stopped and whatever
+    // is pending stays in the journal for the next start.
+    public void CloseAllPending() {
+        // the scheduler won't take an async task now, so the recording is
+        // finished here
+        InteractionTrace trace;
+        synchronized (this) {
+            trace = _trace;
+            _trace = null;
+        }
+        if (trace != null) {
+            try {
+                trace.CloseNow();
+            } catch (IOException ex) {
+                _plugin.getLogger().warning("Couldn't finish interaction trace: " + ex.getMessage());
+            }
+        }
+
+        if (_globalTask != null) {
+            _globalTask.Cancel();
+            _globalTask = null;
+        }
+
+        if (_mainShard != null) {
+            _mainShard.wheel.Drain(_mainShard.ready::Add);
+
+            PendingClose pending;
+            while ((pending = _mainShard.ready.Poll()) != null) {
+                FireClose(pending, DebugTrace.Reason.SHUTDOWN);
+            }
+            _mainShard.sounds.Flush(Settings.Current().soundRadius);
+        } else {
+            for (CloseShard shard : _shards.values()) {
+                shard.task.Cancel();
+            }
+            _shards.clear();
+        }
+
+        CloseJournal journal = _journal;
+        if (journal != null) {
+            CompactJournal(journal);
+        }
+
+        journal = _journal;
+        if (journal != null) {
+            _journal = null;
+            journal.Close();
+        }
+    }
+
+    // runs every tick on the main thread (Folia: the global region thread)
+    private void GlobalTick() {
+        Settings settings = Settings.Current();
+
+        _load.Sample(settings);
+
+        if (_mainShard != null) {
+            TickShard(_mainShard);
+        }
+
+        long tick = ++_globalTick;
+
+        if (tick % TICKS_PER_SECOND == 0) {
+            _metrics.SampleSecond();
+        }
+
+        if (!settings.metricsFile.isEmpty()
+                && tick % ((long)settings.metricsFileSeconds * TICKS_PER_SECOND) == 0) {
+            WriteMetricsFile(settings.metricsFile);
+        }
+
+        // periodically drop records of closes that already happened, and
+        // right away once the file is filling up
+        CloseJournal journal = _journal;
+        if (journal != null && (journal.WantsCompaction()
+                || (tick % ((long)settings.journalCompactSeconds * TICKS_PER_SECOND) == 0 && journal.NeedsCompaction()))) {
+            CompactJournalAsync(journal);
+        }
+    }
+
+    // runs every tick on the thread that owns the shard
+    private void TickShard(CloseShard shard) {
+        Settings settings = Settings.Current();
+
+        shard.wheel.Advance(pending -> CloseDue(shard, pending));
+
+        // when shedding load, due closes wait and go out together every
+        // BatchCloseTicks ticks
+        if (_load.Level() < LoadMonitor.LEVEL_BATCH || shard.wheel.CurrentTick() % settings.batchCloseTicks == 0) {
+            RunReadyCloses(shard);
+        }
+        shard.sounds.Flush(settings.soundRadius);
+
+        // a Folia shard with nothing left to do stops its task; the next
+        // close in its section starts a new one
+        if (shard != _mainShard && shard.IsIdle()) {
+            shard.task.Cancel();
+            _shards.remove(shard.sectionKey, shard);
+        }
+    }
+
+    // A close came due. Proximity closes with a player still near the door
+    // go back in the wheel for another look; the rest are queued to run.
+    private void CloseDue(CloseShard shard, PendingClose pending) {
+        Settings settings = Settings.Current();
+
+        if (pending.proximity && IsPlayerNear(settings, pending.door1Block, pending.key)) {
+            shard.wheel.Schedule(pending, shard.wheel.CurrentTick() + Stretched(settings, PROXIMITY_CHECK_TICKS));
+            return;
+        }
+
+        shard.ready.Add(pending);
+    }
+
+    private boolean IsPlayerNear(Settings settings, Block doorBlock, long blockKey) {
+        return _playerIndex.AnyNear(BlockKey.WorldIndex(blockKey), doorBlock.getX(), doorBlock.getY(), doorBlock.getZ(), settings.proximityRadius);
+    }
+
+    // proximity needs the player index, which Folia doesn't have
+    private boolean UsesProximity(Settings settings) {
+        return settings.closeByProximity && _playerIndex != null;
+    }
+
+    // ticks until a close for a door that was just clicked is due
+    private long DelayTicks(Settings settings) {
+        return Stretched(settings, UsesProximity(settings) ? PROXIMITY_CHECK_TICKS : (long)settings.secondsToRemainOpen * TICKS_PER_SECOND);
+    }
+
+    // a delay, made longer while the server is behind
+    private long Stretched(Settings settings, long ticks) {
+        if (_load.Level() < LoadMonitor.LEVEL_STRETCH) {
+            return ticks;
+        }
+        return (long)(ticks * settings.stretchDelaysFactor);
+    }
+
+    // the shard a block's closes live in. null on Folia if its section has
+    // nothing pending
+    private CloseShard ShardOf(long blockKey) {
+        return _mainShard != null ? _mainShard : _shards.get(CloseShard.SectionKeyOf(blockKey));
+    }
+
+    private CloseShard ShardOfChunk(int worldIndex, int chunkX, int chunkZ) {
+        if (_mainShard != null) {
+            return _mainShard;
+        }
+        return _shards.get(CloseShard.SectionKey(worldIndex, chunkX >> CloseShard.SECTION_SHIFT, chunkZ >> CloseShard.SECTION_SHIFT));
+    }
+
+    // Same as ShardOf, but creates the shard and starts its task if needed.
+    // Must be called on the thread that owns the block.
+    private CloseShard ShardFor(World world, long blockKey) {
+        if (_mainShard != null) {
+            return _mainShard;
+        }
+
+        long sectionKey = CloseShard.SectionKeyOf(blockKey);
+        CloseShard shard = _shards.get(sectionKey);
+
+        if (shard == null) {
+            CloseShard created = new CloseShard(sectionKey, 16, new CloseSounds(_worldIndex, null));
+            _shards.put(sectionKey, created);
+            created.task = _scheduling.RunRepeatingAt(world, ChunkShards.ChunkX(blockKey), ChunkShards.ChunkZ(blockKey), () -> TickShard(created));
+            shard = created;
+        }
+
+        return shard;
+    }
+
+    // Applies due closes in deadline order until MaxBlockUpdatesPerTick is
+    // used up. The rest carry over to the next tick, except that anything
+    // already MaxBudgetDelaySeconds late goes through regardless. On Folia
+    // the budget is per shard.
+    private void RunReadyCloses(CloseShard shard) {
+        Settings settings = Settings.Current();
+        int budget = settings.maxBlockUpdatesPerTick;
+        long maxLateTicks = (long)(settings.maxBudgetDelaySeconds * TICKS_PER_SECOND);
+        long now = shard.wheel.CurrentTick();
+        int used = 0;
+
+        PendingClose pending;
+        while ((pending = shard.ready.Peek()) != null) {
+            // one update per door leaf
+            int cost = pending.pairedDoorBlock != null ? 2 : 1;
+
+            if (budget > 0 && used + cost > budget && now - pending.deadline < maxLateTicks) {
+                break;
+            }
+
+            shard.ready.Remove(pending);
+            used += cost;
+
+            if (FireClose(pending, DebugTrace.Reason.DUE)) {
+                _metrics.closesFired.increment();
+                _metrics.closeLateTicks.Record(now - pending.deadline);
+                _metrics.closeLateMillis.Record(Math.max(0, (System.nanoTime() - pending.dueNanos) / 1000000));
+            }
+        }
+    }
+
+    // Formats the metrics here, where it's safe to read them, and writes the
+    // file on an async thread
+    private void WriteMetricsFile(String path) {
+        if (_writingMetricsFile) {
+            return;
+        }
+
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(_plugin.getDataFolder(), path);
+        }
+
+        File target = file;
+        String text = _metrics.Prometheus();
+        _writingMetricsFile = true;
+
+        _scheduling.RunAsync(() -> {
+            try {
+                Metrics.WriteFile(target, text);
+            } catch (IOException ex) {
+                _plugin.getLogger().warning("Could not write metrics file " + target + ": " + ex.getMessage());
+            } finally {
+                _writingMetricsFile = false;
+            }
+        });
+    }
+
+    // drops a pending close without running it
+    void CancelClose(PendingClose pending) {
+        CancelClose(pending, DebugTrace.Reason.NONE);
+    }
+
+    private void CancelClose(PendingClose pending, DebugTrace.Reason reason) {
+        Traced(DebugTrace.Kind.CANCELLED, reason, pending, 0);
+        Unschedule(pending);
+        Forget(pending);
+    }
+
+    // takes a close out of the wheel or the ready queue, wherever it is
+    private void Unschedule(PendingClose pending) {
+        pending.shard.wheel.Cancel(pending);
+        pending.shard.ready.Remove(pending);
+    }
+
+    // moves a close that isn't parked to a new deadline, and journals it
+    private void MoveDeadline(PendingClose pending, long deadline) {
+        CloseShard shard = pending.shard;
+        shard.ready.Remove(pending);
+        shard.wheel.Schedule(pending, deadline);
+        pending.dueNanos = DueNanos(deadline - shard.wheel.CurrentTick());
+        JournalUpdate(pending);
+    }
+
+    // The pending close of the door at block, for DoorCloserService. Any half
+    // or leaf of a door finds the close keyed on its pair. null if nothing
+    // is pending there
+    PendingClose PendingAt(Block block) {
+        Block door = DoorOf(block);
+        if (door == null) {
+            return null;
+        }
+
+        long blockKey = _worldIndex.KeyOf(door);
+        if (blockKey == BlockKey.NONE) {
+            return null;
+        }
+
+        CloseShard shard = ShardOf(blockKey);
+        return shard != null ? shard.pending.Get(blockKey) : null;
+    }
+
+    long TicksUntil(PendingClose pending) {
+        return Math.max(0, pending.deadline - pending.shard.wheel.CurrentTick());
+    }
+
+    void CancelFromPlugin(PendingClose pending) {
+        CancelClose(pending, DebugTrace.Reason.PLUGIN);
+        _metrics.closesCancelledByPlugins.increment();
+    }
+
+    boolean Reschedule(PendingClose pending, long delayTicks) {
+        if (pending.parked) {
+            return false;
+        }
+
+        MoveDeadline(pending, pending.shard.wheel.CurrentTick() + Math.max(0, delayTicks));
+        pending.delayStart = PendingClose.NEVER;
+        return true;
+    }
+
+    // A close another plugin asked for. The door ends up closed whatever
+    // happens to it before then, like a close opened by a mob. A close
+    // already pending on the door is taken over: it now closes the door at
+    // the plugin's time, whatever it was going to do before
+    boolean ScheduleFromPlugin(Block block, long delayTicks) {
+        Block door = DoorOf(block);
+        if (door == null) {
+            return false;
+        }
+
+        long blockKey = _worldIndex.KeyOf(door);
+        if (blockKey == BlockKey.NONE) {
+            return false;
+        }
+
+        CloseShard shard = ShardFor(door.getWorld(), blockKey);
+        long deadline = shard.wheel.CurrentTick() + Math.max(0, delayTicks);
+
+        PendingClose pending = shard.pending.Get(blockKey);
+        if (pending != null) {
+            pending.targetOpen = false;
+            pending.restoreTarget = true;
+            pending.proximity = false;
+            pending.material = null;
+            pending.delayStart = PendingClose.NEVER;
+
+            // a parked close already runs as soon as its chunk loads
+            if (!pending.parked) {
+                MoveDeadline(pending, deadline);
+            } else {
+                JournalUpdate(pending);
+            }
+            return true;
+        }
+
+        Settings settings = Settings.Current();
+        Block pairedDoorBlock = null;
+        if (settings.synchronizeDoubleDoor && Settings.KindOnly(settings.KindOf(door.getType())) == Settings.KIND_DOOR) {
+            pairedDoorBlock = _doorPairs.PairOf(door, null);
+        }
+
+        pending = new PendingClose(door, pairedDoorBlock, blockKey);
+        pending.targetOpen = false;
+        pending.restoreTarget = true;
+        Track(shard, pending, deadline, true, DebugTrace.Reason.PLUGIN);
+        return true;
+    }
+
+    // the block pending closes are keyed on for a door, gate or trap door:
+    // itself, or for doors the lower half of the leaf the pair is keyed on.
+    // null if it's none of those
+    private Block DoorOf(Block block) {
+        byte materialKind = Settings.Current().KindOf(block.getType());
+        if (materialKind == Settings.KIND_NONE) {
+            return null;
+        }
+        if (Settings.KindOnly(materialKind) != Settings.KIND_DOOR) {
+            return block;
+        }
+
+        BlockData blockData = block.getBlockData();
+        if (blockData instanceof Door && ((Door)blockData).getHalf() == Half.TOP) {
+            block = block.getRelative(BlockFace.DOWN);
+            blockData = block.getBlockData();
+        }
+        if (!(blockData instanceof Door)) {
+            return null;
+        }
+
+        Door door = (Door)blockData;
+        return DoorPairs.CanonicalOf(block, door, _doorPairs.PairOf(block, door));
+    }
+
+    // Every pending close in an inclusive block area, for the bulk
+    // DoorCloserService calls. Each shard is searched by chunk or by walking
+    // its closes, whichever is less work. On Folia only shards whose section
+    // overlaps the area are looked at
+    Collection<PendingClose> PendingIn(World world, int x1, int y1, int z1, int x2, int y2, int z2) {
+        List<PendingClose> found = new ArrayList<>();
+
+        int worldIndex = _worldIndex.Find(world);
+        if (worldIndex == WorldIndex.NO_INDEX) {
+            return found;
+        }
+
+        int minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
+        int minY = Math.min(y1, y2), maxY = Math.max(y1, y2);
+        int minZ = Math.min(z1, z2), maxZ = Math.max(z1, z2);
+
+        if (_mainShard != null) {
+            CollectIn(_mainShard, worldIndex, minX, minY, minZ, maxX, maxY, maxZ, found);
+            return found;
+        }
+
+        int minSectionX = minX >> 4 >> CloseShard.SECTION_SHIFT, maxSectionX = maxX >> 4 >> CloseShard.SECTION_SHIFT;
+        int minSectionZ = minZ >> 4 >> CloseShard.SECTION_SHIFT, maxSectionZ = maxZ >> 4 >> CloseShard.SECTION_SHIFT;
+
+        for (CloseShard shard : _shards.values()) {
+            int sectionX = CloseShard.SectionX(shard.sectionKey);
+            int sectionZ = CloseShard.SectionZ(shard.sectionKey);
+
+            if (CloseShard.SectionWorld(shard.sectionKey) == worldIndex
+                    && sectionX >= minSectionX && sectionX <= maxSectionX
+                    && sectionZ >= minSectionZ && sectionZ <= maxSectionZ) {
+                CollectIn(shard, worldIndex, minX, minY, minZ, maxX, maxY, maxZ, found);
+            }
+        }
+        return found;
+    }
+
+    private static void CollectIn(CloseShard shard, int worldIndex, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, List<PendingClose> found) {
+        long chunks = ((long)(maxX >> 4) - (minX >> 4) + 1) * ((long)(maxZ >> 4) - (minZ >> 4) + 1);
+
+        if (chunks > shard.chunks.SizeOf(worldIndex)) {
+            shard.pending.ForEach(pending -> {
+                if (IsInside(pending.key, worldIndex, minX, minY, minZ, maxX, maxY, maxZ)) {
+                    found.add(pending);
+                }
+            });
+            return;
+        }
+
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                ChunkShards.ChunkShard chunk = shard.chunks.Get(worldIndex, chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+
+                for (PendingClose pending = chunk.head; pending != null; pending = pending.chunkNext) {
+                    if (IsInside(pending.key, worldIndex, minX, minY, minZ, maxX, maxY, maxZ)) {
+                        found.add(pending);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean IsInside(long blockKey, int worldIndex, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int x = BlockKey.X(blockKey);
+        int y = BlockKey.Y(blockKey);
+        int z = BlockKey.Z(blockKey);
+
+        return BlockKey.WorldIndex(blockKey) == worldIndex
+            && x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    // Opens the journal and re-schedules whatever was still pending when the
+    // server last stopped, each with the time it had left by the wall clock.
+    // Closes that came due while the server was down are spread over at most
+    // JournalReplayTicks ticks so a big backlog doesn't land on one tick. On
+    // Folia each close is handed to the region that owns its block.
+    private void OpenJournal() {
+        Settings settings = Settings.Current();
+        List<CloseJournal.Record> records;
+
+        try {
+            _journal = new CloseJournal(_plugin.getDataFolder(), settings.maxPendingCloses);
+            records = _journal.ReadLive();
+        } catch (IOException ex) {
+            _plugin.getLogger().warning("Could not open pending close journal, doors left open by a crash won't be closed: " + ex.getMessage());
+            _journal = null;
+            return;
+        }
+
+        int perTick = Math.max(1, (records.size() + settings.journalReplayTicks - 1) / settings.journalReplayTicks);
+        long nowMillis = System.currentTimeMillis();
+        int restored = 0;
+        int overdue = 0;
+        int dropped = 0;
+
+        for (CloseJournal.Record record : records) {
+            World world = Bukkit.getWorld(record.WorldId());
+            int worldIndex = world == null ? WorldIndex.NO_INDEX : _worldIndex.IndexOf(world);
+
+            if (worldIndex == WorldIndex.NO_INDEX || !BlockKey.IsPackable(record.x, record.y, record.z)) {
+                DropRecord(record);
+                dropped++;
+                continue;
+            }
+
+            long blockKey = BlockKey.Pack(worldIndex, record.x, record.y, record.z);
+            long remaining = (record.deadlineMillis - nowMillis) / (1000L / TICKS_PER_SECOND);
+            long delay = remaining >= 1 ? remaining : 1 + overdue++ / perTick;
+            restored++;
+
+            if (_scheduling.IsRegionized()) {
+                _scheduling.RunAt(world, record.x >> 4, record.z >> 4, () -> Restore(world, record, blockKey, delay));
+            } else {
+                Restore(world, record, blockKey, delay);
+            }
+        }
+
+        if (restored > 0 || dropped > 0) {
+            _plugin.getLogger().info("Restored " + restored + " pending door closes from the journal (" + dropped + " in missing worlds dropped).");
+        }
+
+        CloseJournal journal = _journal;
+        if (journal != null) {
+            CompactJournalAsync(journal);
+        }
+    }
+
+    // Re-schedules one journaled close, on the thread that owns its block.
+    // It's still live in the journal, so nothing is written for it.
+    private void Restore(World world, CloseJournal.Record record, long blockKey, long delay) {
+        CloseShard shard = ShardFor(world, blockKey);
+        if (shard.pending.Get(blockKey) != null) {
+            return;
+        }
+
+        // getBlockAt only creates a handle, it doesn't load the chunk
+        Block door1Block = world.getBlockAt(record.x, record.y, record.z);
+        Block pairedDoorBlock = record.HasPair() ? world.getBlockAt(record.pairX, record.y, record.pairZ) : null;
+
+        PendingClose pending = new PendingClose(door1Block, pairedDoorBlock, blockKey);
+        pending.targetOpen = record.TargetOpen();
+        pending.restoreTarget = true;
+        pending.byEntity = record.ByEntity();
+
+        // without Proximity any more, it just closes when due
+        pending.proximity = record.Proximity() && UsesProximity(Settings.Current());
+        Track(shard, pending, shard.wheel.CurrentTick() + delay, false, DebugTrace.Reason.JOURNAL);
+    }
+
+    // marks a journaled close that can't be restored as done
+    private void DropRecord(CloseJournal.Record record) {
+        CloseJournal journal = _journal;
+        if (journal != null) {
+            try {
+                journal.AppendRemove(record);
+            } catch (IOException ex) {
+                DisableJournal(journal, ex);
+            }
+        }
+    }
+
+    // writes a pending close again once its deadline or what it does has
+    // changed. A proximity close going back for another look isn't a change
+    private void JournalUpdate(PendingClose pending) {
+        CloseJournal journal = _journal;
+        if (journal != null) {
+            try {
+                journal.AppendUpdate(pending, DeadlineMillis(pending));
+            } catch (IOException ex) {
+                DisableJournal(journal, ex);
+            }
+        }
+    }
+
+    private void CompactJournal(CloseJournal journal) {
+        try {
+            journal.Compact();
+        } catch (IOException ex) {
+            DisableJournal(journal, ex);
+        }
+    }
+
+    // Compaction reads the whole log and forces the new file to disk, so
+    // outside of shutdown it runs on an async thread, one at a time. Appends
+    // carry on while it does
+    private void CompactJournalAsync(CloseJournal journal) {
+        if (_compactingJournal) {
+            return;
+        }
+
+        _compactingJournal = true;
+        _scheduling.RunAsync(() -> {
+            try {
+                CompactJournal(journal);
+            } finally {
+                _compactingJournal = false;
+            }
+        });
+    }
+
+    // Gives up on the journal after a write failed. Closes keep running, they
+    // just won't survive a crash any more. Any thread may get here, so only
+    // the first one to notice reports it
+    private void DisableJournal(CloseJournal journal, IOException ex) {
+        synchronized (this) {
+            if (_journal != journal) {
+                return;
+            }
+            _journal = null;
+        }
+
+        _plugin.getLogger().warning("Could not write pending close journal, disabling it: " + ex.getMessage());
+        journal.Close();
+    }
+
+
+    // This is going to fire for every interaction, so need to exit it quickly if it's not what we want to handle
+    @EventHandler(priority=EventPriority.LOWEST)
+    public void blockInteract(PlayerInteractEvent e) {
+        if (e == _autoOpenCheck) {
+            return;
+        }
+
+        Settings settings = Settings.Current();
+
+        // if the event has been canceled, and we're not ignoring canceled events, quit
+        // the only reason we check here instead of in the @EventHandler directive is
+        // so this can be changed in the config file
+        if (e.isCancelled() && settings.ignoreCanceledEvents) {
+            Clicked(Metrics.Interaction.IGNORED, DebugTrace.Reason.EVENT_CANCELLED, e.getClickedBlock(), e.getPlayer());
+            return;
+        }
+
+        Action action = e.getAction();
+
+        // right clicks only
+        if (action == Action.RIGHT_CLICK_BLOCK) {
+            Block clickedBlock = e.getClickedBlock();
+            Material material = clickedBlock.getType();
+
+            // check to see if we care about this type of block. In our case, we want
+            // something that implements Openable (gate, trap door, door). This only
+            // looks at the material, so most clicks never materialise any BlockData
+            // or look up a region. What is a door is the same in every snapshot
+            if (settings.KindOf(material) == Settings.KIND_NONE) {
+                Clicked(Metrics.Interaction.NOT_DOOR, DebugTrace.Reason.NOT_DOOR, clickedBlock, e.getPlayer());
+                return;
+            }
+
+            // from here on, the world or region overrides for where the click
+            // was, which may put it in or out of scope
+            settings = settings.At(clickedBlock);
+            byte materialKind = settings.KindOf(material);
+
+            BlockData blockData = clickedBlock.getBlockData();
+            Block door2Block = null;
+            Block pairedDoorBlock = null;
+
+            // the other leaf of a double door, whichever one was clicked
+            Block otherLeaf = null;
+
+            if (blockData instanceof Openable) {
+                Player player = e.getPlayer();
+
+                // Get persistent lower left half of the double door or just lower half of a single door
+                if (blockData instanceof Door) {
+                    if (((Door)blockData).getHalf() == Half.TOP) {
+                        clickedBlock = clickedBlock.getRelative(BlockFace.DOWN);
+                        blockData = clickedBlock.getBlockData();
+
+                        if (!(blockData instanceof Door)) {
+                            Clicked(Metrics.Interaction.NOT_DOOR, DebugTrace.Reason.NOT_DOOR, clickedBlock, player);
+                            return;
+                        }
+                    }
+
+                    Door door = (Door)blockData;
+                    door2Block = _doorPairs.PairOf(clickedBlock, door);
+
+                    // At this point door(s) finished open/close cycle, lets check task
+                    Block doorLocation = DoorPairs.CanonicalOf(clickedBlock, door, door2Block);
+                    if (settings.synchronizeDoubleDoor) {
+                        pairedDoorBlock = doorLocation == clickedBlock ? door2Block : _doorPairs.PairOf(doorLocation, null);
+                    }
+                    otherLeaf = doorLocation == clickedBlock ? door2Block : clickedBlock;
+                    clickedBlock = doorLocation;
+
+                    if (_debugTrace.IsOn()) {
+                        _debugTrace.Record(DebugTrace.Kind.PAIR, DebugTrace.Reason.NONE, _globalTick, _worldIndex.KeyOf(clickedBlock),
+                            otherLeaf != null ? _worldIndex.KeyOf(otherLeaf) : BlockKey.NONE, player.getUniqueId());
+                    }
+                }
+
+                long blockKey = _worldIndex.KeyOf(clickedBlock);
+
+                if (blockKey == BlockKey.NONE) {
+                    // outside the range we can track (or too many worlds)
+                    Clicked(Metrics.Interaction.IGNORED, DebugTrace.Reason.OUT_OF_RANGE, clickedBlock, player);
+                    return;
+                }
+
+                boolean wasOpen = ((Openable)blockData).isOpen();
+
+                InteractionTrace trace = _trace;
+                if (trace != null && !trace.Click(_globalTick, clickedBlock, blockData.getMaterial(), player, wasOpen)) {
+                    RecordingFull(trace);
+                }
+
+                CloseShard shard = ShardOf(blockKey);
+                PendingClose pending = shard != null ? shard.pending.Get(blockKey) : null;
+                long now = shard != null ? shard.wheel.CurrentTick() : 0;
+
+                if (pending != null && !AllowToggle(settings, pending, now)) {
+                    // clicking faster than the rate limit; drop it before it
+                    // costs a block update or a sound
+                    e.setCancelled(true);
+                    Clicked(Metrics.Interaction.RATE_LIMITED, DebugTrace.Reason.RATE_LIMITED, clickedBlock, player);
+                    return;
+                }
+
+                // Sync double door
+                if (settings.synchronizeDoubleDoor && door2Block != null) {
+                    if (wasOpen) {
+                        CloseDoor(door2Block);
+                    } else {
+                        OpenDoor(door2Block);
+                    }
+                    if (settings.playSound) {
+                        // queued on the clicked door's shard, which is ticked on this thread
+                        PlayCloseNoise(settings, ShardFor(clickedBlock.getWorld(), blockKey), door2Block);
+                    }
+                }
+
+                if (pending != null) {
+                    if (_debugTrace.IsOn()) {
+                        _debugTrace.Record(DebugTrace.Kind.CLICK, DebugTrace.Reason.TOGGLED, _globalTick, blockKey, 0, player.getUniqueId());
+                    }
+                    ToggleWhilePending(settings, pending, wasOpen, now);
+                    return;
+                }
+
+                // check to see if player has bypass permission
+                if (_bypassCache.HasBypass(player, settings)) {
+                    Clicked(Metrics.Interaction.IGNORED, DebugTrace.Reason.BYPASS, clickedBlock, player);
+                    return;
+                }
+
+                // check to see if we're ignoring creative mode
+                if ((settings.ignoreIfInCreative) && (player.getGameMode() == GameMode.CREATIVE)) {
+                    Clicked(Metrics.Interaction.IGNORED, DebugTrace.Reason.CREATIVE, clickedBlock, player);
+                    return;
+                }
+
+                // check to see if we're ignoring sneaking
+                if ((settings.ignoreIfSneaking) && (player.isSneaking())) {
+                    Clicked(Metrics.Interaction.IGNORED, DebugTrace.Reason.SNEAKING, clickedBlock, player);
+                    return;
+                }
+
+                // check to see if it is a type of block we want to close. Note that
+                // we're not doing any type checking on these. I don't want to have to
+                // maintain a finite list of doors/gates that has to be updated with
+                // each version of Minecraft.
+
+                if (Settings.IsInScope(materialKind)) {
+                    // redstone will move it again; closing it would just fight the circuit
+                    if (settings.leavePoweredDoors && IsPowered(clickedBlock, otherLeaf, blockKey)) {
+                        Clicked(Metrics.Interaction.POWERED, DebugTrace.Reason.POWERED, clickedBlock, player);
+                        return;
+                    }
+
+                    if (Settings.KindOnly(materialKind) != Settings.KIND_DOOR) {
+                        pairedDoorBlock = null;
+                    }
+                    Clicked(Metrics.Interaction.SCHEDULED, DebugTrace.Reason.SCHEDULED, clickedBlock, player);
+                    Schedule(clickedBlock, pairedDoorBlock, blockKey, blockData.getMaterial(), DelayTicks(settings), wasOpen, UsesProximity(settings), player.getUniqueId());
+                } else {
+                    Clicked(Metrics.Interaction.OUT_OF_SCOPE, DebugTrace.Reason.OUT_OF_SCOPE, clickedBlock, player);
+                }
+            } else {
+                Clicked(Metrics.Interaction.NOT_DOOR, DebugTrace.Reason.NOT_DOOR, clickedBlock, e.getPlayer());
+            }
+        } else {
+            // left clicks and clicks on air are most of what comes through
+            // here, so they're counted but never traced
+            _metrics.Count(Metrics.Interaction.NOT_DOOR);
+        }
+    }
+
+    // a click that's been dealt with: counted, and traced with why when
+    // tracing is on
+    private void Clicked(Metrics.Interaction outcome, DebugTrace.Reason reason, Block block, Player player) {
+        _metrics.Count(outcome);
+
+        if (_debugTrace.IsOn()) {
+            long blockKey = block != null ? _worldIndex.KeyOf(block) : BlockKey.NONE;
+            _debugTrace.Record(DebugTrace.Kind.CLICK, reason, _globalTick, blockKey, 0, player.getUniqueId());
+        }
+    }
+
+    // traces something that happened to a pending close, with its owner if it
+    // has one. Call before Forget, which drops the owner
+    private void Traced(DebugTrace.Kind kind, DebugTrace.Reason reason, PendingClose pending, long aux) {
+        if (_debugTrace.IsOn()) {
+            _debugTrace.Record(kind, reason, _globalTick, pending.key, aux, pending.owner != null ? pending.owner.id : null);
+        }
+    }
+
+    // Villagers and other mobs opening doors, with CloseEntityDoors on. Runs
+    // after other plugins have had their say, since only opens that really
+    // happen need closing. A door that already has a pending close just gets
+    // its deadline pushed back, and that at most once every
+    // ENTITY_COALESCE_TICKS, so mobs walking through a door all day cost one
+    // wheel entry and one block update when they finally leave it.
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void entityInteract(EntityInteractEvent e) {
+        Settings settings = Settings.Current();
+
+        if (!settings.closeEntityDoors || e.isCancelled() || e.getEntity() instanceof Player) {
+            return;
+        }
+
+        Block block = e.getBlock();
+        Material material = block.getType();
+        if (settings.KindOf(material) == Settings.KIND_NONE) {
+            return;
+        }
+
+        settings = settings.At(block);
+        byte materialKind = settings.KindOf(material);
+        if (!Settings.IsInScope(materialKind)) {
+            return;
+        }
+
+        BlockData blockData = block.getBlockData();
+        Block pairedDoorBlock = null;
+
+        if (blockData instanceof Door && ((Door)blockData).getHalf() == Half.TOP) {
+            block = block.getRelative(BlockFace.DOWN);
+            blockData = block.getBlockData();
+        }
+
+        // only opens; a mob closing a door is doing our job for us
+        if (!(blockData instanceof Openable) || ((Openable)blockData).isOpen()) {
+            return;
+        }
+
+        if (blockData instanceof Door) {
+            Door door = (Door)blockData;
+            Block door2Block = _doorPairs.PairOf(block, door);
+            Block doorLocation = DoorPairs.CanonicalOf(block, door, door2Block);
+
+            if (settings.synchronizeDoubleDoor) {
+                pairedDoorBlock = doorLocation == block ? door2Block : _doorPairs.PairOf(doorLocation, null);
+            }
+            block = doorLocation;
+        }
+
+        long blockKey = _worldIndex.KeyOf(block);
+        if (blockKey == BlockKey.NONE) {
+            return;
+        }
+
+        CloseShard shard = ShardFor(block.getWorld(), blockKey);
+        long now = shard.wheel.CurrentTick();
+        long deadline = now + Stretched(settings, (long)settings.secondsToRemainOpen * TICKS_PER_SECOND);
+
+        PendingClose pending = shard.pending.Get(blockKey);
+        if (pending != null) {
+            if (!pending.parked && deadline - pending.deadline >= ENTITY_COALESCE_TICKS) {
+                MoveDeadline(pending, deadline);
+                pending.delayStart = now;
+            }
+            _metrics.entityOpensCoalesced.increment();
+            return;
+        }
+
+        ChunkShards.ChunkShard chunk = shard.chunks.Get(BlockKey.WorldIndex(blockKey), ChunkShards.ChunkX(blockKey), ChunkShards.ChunkZ(blockKey));
+        if (chunk != null && chunk.entitySize >= settings.maxEntityClosesPerChunk) {
+            _metrics.entityOpensOverCap.increment();
+            return;
+        }
+
+        MakeRoomForPendingClose(shard);
+
+        // closed whatever state it's in by then, so a mob shutting it in the
+        // meantime makes the close a no-op rather than re-opening it
+        pending = new PendingClose(block, pairedDoorBlock, blockKey);
+        pending.targetOpen = false;
+        pending.restoreTarget = true;
+        pending.byEntity = true;
+        pending.material = blockData.getMaterial();
+        pending.delayStart = now;
+        Track(shard, pending, deadline, true, DebugTrace.Reason.MOB);
+        _metrics.entityOpensScheduled.increment();
+    }
+
+    // Keeps the powered set up to date, and drops any close pending on a door
+    // as redstone takes it over. This fires for every redstone change on the
+    // server, so anything that isn't a door, gate or trap door is turned away
+    // on its material alone.
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void blockRedstone(BlockRedstoneEvent e) {
+        Settings settings = Settings.Current();
+        if (!settings.leavePoweredDoors) {
+            return;
+        }
+
+        Block block = e.getBlock();
+        byte materialKind = settings.KindOf(block.getType());
+        if (materialKind == Settings.KIND_NONE) {
+            return;
+        }
+
+        Door door = null;
+        if (Settings.KindOnly(materialKind) == Settings.KIND_DOOR) {
+            BlockData blockData = block.getBlockData();
+            if (blockData instanceof Door && ((Door)blockData).getHalf() == Half.TOP) {
+                block = block.getRelative(BlockFace.DOWN);
+                blockData = block.getBlockData();
+            }
+            if (!(blockData instanceof Door)) {
+                return;
+            }
+            door = (Door)blockData;
+        }
+
+        long blockKey = _worldIndex.KeyOf(block);
+        if (blockKey == BlockKey.NONE) {
+            return;
+        }
 
-public final class InteractListener implements Listener {
-    // this is a bukkit / minecraft constant. Put here only for clarity
-    private static final int TICKS_PER_SECOND = 20;
+        if (e.getNewCurrent() <= 0) {
+            _poweredBlocks.Remove(blockKey);
+            return;
+        }
 
-    private final DoorCloserPlugin _plugin;
+        _poweredBlocks.Add(blockKey);
 
-    public InteractListener(DoorCloserPlugin plugin) {
-        _plugin = plugin;
+        // closes are keyed on one leaf of a double door, which may be the other one
+        long pendingKey = blockKey;
+        if (door != null) {
+            Block doorLocation = DoorPairs.CanonicalOf(block, door, _doorPairs.PairOf(block, door));
+            if (doorLocation != block) {
+                pendingKey = _worldIndex.KeyOf(doorLocation);
+            }
+        }
+
+        CloseShard shard = ShardOf(pendingKey);
+        PendingClose pending = shard != null ? shard.pending.Get(pendingKey) : null;
+        if (pending != null) {
+            CancelClose(pending, DebugTrace.Reason.REDSTONE);
+            _metrics.closesCancelledPowered.increment();
+        }
     }
 
-    public Map<Vector, BukkitTask> activeScheduledTats = new WeakHashMap<>();
+    // whether redstone is holding a door, or the other leaf of its double door
+    private boolean IsPowered(Block doorBlock, Block otherLeaf, long blockKey) {
+        if (_poweredBlocks.IsEmpty()) {
+            return false;
+        }
 
+        if (_poweredBlocks.IsPowered(doorBlock, blockKey)) {
+            return true;
+        }
 
-    // This is going to fire for every interaction, so need to exit it quickly if it's not what we want to handle
-    @EventHandler(priority=EventPriority.LOWEST)
-    public void blockInteract(PlayerInteractEvent e) {
-        // if the event has been canceled, and we're not ignoring canceled events, quit
-        // the only reason we check here instead of in the @EventHandler directive is
-        // so this can be changed in the config file
-        if (e.isCancelled() && Settings.ignoreCanceledEvents) {
+        // never load a chunk just to look at the other leaf
+        return otherLeaf != null && IsChunkLoaded(otherLeaf) && _poweredBlocks.IsPowered(otherLeaf, _worldIndex.KeyOf(otherLeaf));
+    }
+
+    // Per-block toggle rate limit. Counts clicks in a fixed one second window
+    // on the pending close, so it costs nothing for doors nobody is spamming
+    private boolean AllowToggle(Settings settings, PendingClose pending, long now) {
+        if (settings.maxTogglesPerSecond <= 0) {
+            return true;
+        }
+
+        if (now - pending.rateWindowStart >= TICKS_PER_SECOND) {
+            pending.rateWindowStart = now;
+            pending.rateCount = 0;
+        }
+
+        return ++pending.rateCount <= settings.maxTogglesPerSecond;
+    }
+
+    // A player toggled a door that already has a pending close. Inside the
+    // debounce window, or if the door is being moved away from the state it
+    // was in before the close was scheduled, the existing close is kept and
+    // only its deadline moves: it's switched to restore the original state, so
+    // it doesn't matter how many times the door was flipped in between. Only
+    // a click outside the window that puts the door back cancels the close.
+    private void ToggleWhilePending(Settings settings, PendingClose pending, boolean wasOpen, long now) {
+        boolean debounced = now - pending.lastToggleTick < settings.debounceTicks;
+        pending.lastToggleTick = now;
+
+        if (!debounced && !wasOpen == pending.targetOpen) {
+            CancelClose(pending, DebugTrace.Reason.TOGGLED_BACK);
+            _metrics.Count(Metrics.Interaction.CANCELLED);
             return;
         }
 
-        Action action = e.getAction();
+        pending.restoreTarget = true;
 
-        // right clicks only
-        if (action == Action.RIGHT_CLICK_BLOCK) {
-            Block clickedBlock = e.getClickedBlock();
-            BlockData blockData = clickedBlock.getBlockData();
-            Block pairedDoorBlock = null;
+        // a parked close is replayed when its chunk loads, so leave it be
+        if (!pending.parked) {
+            MoveDeadline(pending, now + DelayTicks(settings));
+            pending.delayStart = now;
+        }
+        _metrics.Count(Metrics.Interaction.DEBOUNCED);
+    }
 
-            // check to see if we care about this type of block. In our case, we want
-            // something that implements Openable (gate, trap door, door).
-            if (blockData instanceof Openable) {
-                Player player = e.getPlayer();
+    // Called by the player index when a player moves into another block. With
+    // AutoOpen on, opens the remembered doors they've walked up to.
+    private void PlayerMovedBlock(Player player, int worldIndex, int x, int y, int z) {
+        if (_autoOpenDoors.IsEmpty()) {
+            return;
+        }
 
-                // Get persistent lower left half of the double door or just lower half of a single door
-                if (blockData instanceof Door) {
-                    if (((Door)blockData).getHalf() == Half.TOP) {
-                        clickedBlock = clickedBlock.getRelative(BlockFace.DOWN);
-                        blockData = clickedBlock.getBlockData();
-                    }
-                    // Sync double door
-                    if (Settings.synchronizeDoubleDoor) {
-                        Block door2Block = GetPairedDoorBlockIfDoubleDoor(clickedBlock);
-                        Door pairedDoor = DoorFromBlock(door2Block);
-
-                        if (door2Block != null && pairedDoor != null) {
-                            if (((Door)blockData).isOpen()) {
-                                CloseDoor(door2Block);
-                            } else {
-                                OpenDoor(door2Block);
-                            }
-                            PlayCloseNoise(door2Block);
-                        }
-                    }
+        Settings settings = Settings.Current();
+        if (!settings.autoOpen || !settings.closeByProximity) {
+            return;
+        }
 
-                    // At this point door(s) finished open/close cycle, lets check task
-                    clickedBlock = GetDoubleDoorLocation(clickedBlock);
-                    if (Settings.synchronizeDoubleDoor) {
-                        pairedDoorBlock = GetPairedDoorBlockIfDoubleDoor(clickedBlock);
-                    }
-                }
+        _autoOpenDoors.ForEachNear(worldIndex, x, y, z, settings.autoOpenRadius, door -> AutoOpen(settings, player, door));
+    }
 
-                Vector blockLocation = clickedBlock.getLocation().toVector();
+    private void AutoOpen(Settings settings, Player player, AutoOpenDoors.Door door) {
+        // already open and waiting to close, or not somewhere we can look
+        if (ShardOf(door.key).pending.Get(door.key) != null || !IsChunkLoaded(door.block)) {
+            return;
+        }
 
-                if (activeScheduledTats.containsKey(blockLocation)) {
-                    activeScheduledTats.get(blockLocation).cancel();
-                    activeScheduledTats.remove(blockLocation);
-                    return;
-                }
+        // the door's own world or region settings from here on
+        Settings doorSettings = settings.At(door.block);
+        if (!MayAutoOpen(doorSettings, player)) {
+            return;
+        }
 
-                // check to see if player has bypass permission
-                if (player.hasPermission(Settings.bypassPermission)) {
-                    return;
-                }
+        // iron doors are meant to need redstone, so never open those
+        Material material = door.block.getType();
+        if (!Settings.IsInScope(doorSettings.KindOf(material)) || material == Material.IRON_DOOR || material == Material.IRON_TRAPDOOR) {
+            // it's been changed since we closed it
+            _autoOpenDoors.Remove(door.key);
+            return;
+        }
 
-                // check to see if we're ignoring creative mode
-                if ((Settings.ignoreIfInCreative) && (player.getGameMode() == GameMode.CREATIVE)) {
-                    return;
-                }
+        Openable data = OpenableFromBlock(door.block);
+        if (data == null || data.isOpen()) {
+            return;
+        }
 
-                // check to see if we're ignoring sneaking
-                if ((Settings.ignoreIfSneaking) && (player.isSneaking())) {
-                    return;
-                }
+        // a player standing by a door they may not use would otherwise ask
+        // the protection plugins again with every step
+        long now = _mainShard.wheel.CurrentTick();
+        if (door.IsDenied(player.getUniqueId(), now)) {
+            return;
+        }
+        if (!ProtectionAllows(player, door.block)) {
+            door.Deny(player.getUniqueId(), now + AUTO_OPEN_DENIED_TICKS);
+            return;
+        }
 
-                Material blockDoorType = blockData.getMaterial();
+        OpenDoor(door.block);
+        if (door.pairedBlock != null && IsChunkLoaded(door.pairedBlock)) {
+            OpenDoor(door.pairedBlock);
+        }
 
-                // check to see if it is a type of block we want to close. Note that
-                // we're not doing any type checking on these. I don't want to have to
-                // maintain a finite list of doors/gates that has to be updated with
-                // each version of Minecraft.
+        // closing it again puts it back
+        _autoOpenDoors.Remove(door.key);
 
-                if (blockData instanceof TrapDoor && Settings.trapDoorsInScope.contains(blockDoorType)) {
-                    activeScheduledTats.put(blockLocation, ScheduleClose(clickedBlock, null, blockLocation, Settings.secondsToRemainOpen));
-                } else if (blockData instanceof Gate && Settings.gatesInScope.contains(blockDoorType)) {
-                    activeScheduledTats.put(blockLocation, ScheduleClose(clickedBlock, null, blockLocation, Settings.secondsToRemainOpen));
-                } else if (blockData instanceof Door && Settings.doorsInScope.contains(blockDoorType)) {
-                    activeScheduledTats.put(blockLocation, ScheduleClose(clickedBlock, pairedDoorBlock, blockLocation, Settings.secondsToRemainOpen));
-                }
-            }
+        Schedule(door.block, door.pairedBlock, door.key, material, DelayTicks(doorSettings), false, true, null);
+        _metrics.doorsAutoOpened.increment();
+    }
+
+    // the same players the click handler ignores don't open doors either,
+    // and nor do spectators
+    private boolean MayAutoOpen(Settings settings, Player player) {
+        GameMode gameMode = player.getGameMode();
+
+        if (gameMode == GameMode.SPECTATOR) {
+            return false;
+        }
+        if (settings.ignoreIfInCreative && gameMode == GameMode.CREATIVE) {
+            return false;
         }
+        if (settings.ignoreIfSneaking && player.isSneaking()) {
+            return false;
+        }
+
+        return !_bypassCache.HasBypass(player, settings);
+    }
+
+    // Asks protection plugins whether the player may use the door, by sending
+    // them the right click the player would have made
+    private boolean ProtectionAllows(Player player, Block block) {
+        PlayerInteractEvent check = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, block, BlockFace.SELF);
+
+        _autoOpenCheck = check;
+        try {
+            Bukkit.getPluginManager().callEvent(check);
+        } finally {
+            _autoOpenCheck = null;
+        }
+
+        return check.useInteractedBlock() != Event.Result.DENY;
     }
 
     // handles getting the Openable from a specific block
@@ -147,315 +1508,546 @@ public final class InteractListener implements Listener {
         }
     }
 
-    // handles getting the door from a specific block
-    // returns null if not a door
-    private Door DoorFromBlock(Block block) {
-        if (block != null) {
-            BlockData data = block.getBlockData();
-
-            if (data != null && data instanceof Door) {
-                return (Door)data;
-            } else {
-                return null;
+    // Queues the close sound for a door. Sounds are played once per door group
+    // at the end of the tick, and only to players in range
+    private void PlayCloseNoise(Settings settings, CloseShard shard, Block doorBlock) {
+        if (doorBlock != null && settings.playSound) {
+            // the first thing to go when the server is behind
+            if (_load.Level() >= LoadMonitor.LEVEL_NO_SOUNDS) {
+                _metrics.soundsShed.increment();
+                return;
             }
-        } else {
+
+            shard.sounds.Add(doorBlock, settings);
+        }
+    }
+
+    // Schedules a close directly, for the benchmarks. A close already pending
+    // for the key is dropped first, so it can't be left behind in the wheel
+    // and chunk list once the index points at the new one
+    PendingClose ScheduleClose(Block door1Block, Block pairedDoorBlock, long blockKey, float seconds, boolean wasOpen) {
+        CloseShard shard = ShardOf(blockKey);
+        PendingClose existing = shard != null ? shard.pending.Get(blockKey) : null;
+        if (existing != null) {
+            CancelClose(existing);
+        }
+
+        // Schedule the closing to happen at apx "seconds" seconds from now.
+        return Schedule(door1Block, pairedDoorBlock, blockKey, door1Block.getType(), (long)seconds * TICKS_PER_SECOND, wasOpen, false, null);
+    }
+
+    // player is who opened the door, or null. null if the player is over
+    // MaxPendingClosesPerPlayer and nothing could be closed to make room
+    private PendingClose Schedule(Block door1Block, Block pairedDoorBlock, long blockKey, Material material, long delayTicks, boolean wasOpen, boolean proximity, UUID player) {
+        CloseShard shard = ShardFor(door1Block.getWorld(), blockKey);
+        long now = shard.wheel.CurrentTick();
+
+        PendingClose pending = new PendingClose(door1Block, pairedDoorBlock, blockKey);
+        pending.targetOpen = wasOpen;
+        pending.proximity = proximity;
+        pending.material = material;
+        pending.delayStart = now;
+        pending.lastToggleTick = now;
+        pending.rateWindowStart = now;
+        pending.rateCount = 1;
+
+        if (player != null && !Own(shard, pending, player)) {
             return null;
         }
+        Track(shard, pending, now + delayTicks, true, player != null ? DebugTrace.Reason.PLAYER : proximity ? DebugTrace.Reason.AUTO_OPEN : DebugTrace.Reason.PLUGIN);
+        return pending;
+    }
+
+    // adds a new pending close to its shard's index, chunk list and wheel, and
+    // to the journal unless it's already there
+    private void Track(CloseShard shard, PendingClose pending, long deadline, boolean journalIt, DebugTrace.Reason origin) {
+        MakeRoomForPendingClose(shard);
+        Traced(DebugTrace.Kind.SCHEDULED, origin, pending, deadline - shard.wheel.CurrentTick());
+
+        pending.shard = shard;
+        pending.dueNanos = DueNanos(deadline - shard.wheel.CurrentTick());
+
+        shard.pending.Put(pending);
+        shard.chunks.Add(pending);
+        shard.wheel.Schedule(pending, deadline);
+        _pendingTotal.incrementAndGet();
+
+        CloseJournal journal = _journal;
+        if (journalIt && journal != null) {
+            try {
+                journal.AppendSchedule(pending, DeadlineMillis(pending));
+            } catch (IOException ex) {
+                DisableJournal(journal, ex);
+            }
+        }
     }
 
-    private void PlayCloseNoise(Block doorBlock) {
-        if (doorBlock != null) {
-            BlockData data = doorBlock.getBlockData();
+    // Links a new close to the player who opened the door. The limit is on
+    // the player's closes in every shard. Past MaxPendingClosesPerPlayer,
+    // their oldest close in this shard runs now to make room, the same as for
+    // MaxPendingCloses. On Folia their other closes may all be in region
+    // sections other threads own; then the new close is refused and the door
+    // is left to the player. Called before the close is tracked, so it can't
+    // be the one that goes. False if refused
+    private boolean Own(CloseShard shard, PendingClose pending, UUID player) {
+        int maxPerPlayer = Settings.Current().maxPendingClosesPerPlayer;
+
+        while (!CountOwned(player, maxPerPlayer)) {
+            PendingClose oldest = shard.owners.OldestOf(player);
+            if (oldest == null) {
+                _metrics.closesRefusedOverQuota.increment();
+                return false;
+            }
 
-            if (Settings.playSound) {
-                if (data instanceof TrapDoor) {
-                    doorBlock.getWorld().playSound(doorBlock.getLocation(), Sound.BLOCK_WOODEN_TRAPDOOR_CLOSE, 1, 1);
-                } else if (data instanceof Gate) {
-                    doorBlock.getWorld().playSound(doorBlock.getLocation(), Sound.BLOCK_FENCE_GATE_CLOSE, 1, 1);
-                } else if (data instanceof Door) {
-                    doorBlock.getWorld().playSound(doorBlock.getLocation(), Sound.BLOCK_WOODEN_DOOR_CLOSE, 1, 1);
-                }
+            Unschedule(oldest);
+
+            if (IsChunkLoaded(oldest.door1Block)) {
+                ApplyClose(oldest, DebugTrace.Reason.OVER_QUOTA);
             }
+            Forget(oldest);
+            _metrics.closesOverQuota.increment();
         }
+
+        shard.owners.Add(pending, player);
+        return true;
     }
 
-    public BukkitTask ScheduleClose(Block door1Block, Block pairedDoorBlock, Vector blockLocation, float seconds) {
-        // Schedule the closing to happen at apx "seconds" seconds from now.
-        //_plugin.getLogger().info("DEBUG: Scheduled door close.");
-        return new BukkitRunnable() {
-            @Override
-            public void run() {
-                boolean closedFirstDoor = true;
-                if (door1Block != null) {
-                    Openable door1Data = OpenableFromBlock(door1Block);
-
-                    if (door1Data != null) {
-                        if (door1Data.isOpen()) {
-                            CloseDoor(door1Block);
-                            closedFirstDoor = true;
-                        } else {
-                            OpenDoor(door1Block);
-                            closedFirstDoor = false;
-                        }
-                        PlayCloseNoise(door1Block);
-                    } else {
-                        _plugin.getLogger().warning("Tried to close door block, but block data was null or not correct type.");
-                    }
-                } else {
-                    _plugin.getLogger().warning("Null main door block sent to ScheduleClose.");
-                }
+    // Counts one more close for the player, unless they already have
+    // maxPerPlayer (0 is no limit). The count is updated inside the map, so
+    // region threads can't both take the last place, or count into an entry
+    // that's just been dropped
+    private boolean CountOwned(UUID player, int maxPerPlayer) {
+        boolean[] counted = new boolean[1];
+        _ownedByPlayer.compute(player, (id, count) -> {
+            if (maxPerPlayer > 0 && count != null && count >= maxPerPlayer) {
+                return count;
+            }
+            counted[0] = true;
+            return count == null ? 1 : count + 1;
+        });
+        return counted[0];
+    }
 
-                if (pairedDoorBlock != null) {
-                    Openable pairedDoorData = OpenableFromBlock(pairedDoorBlock);
+    // the player has one close fewer, in whichever shard
+    private void Disown(UUID player) {
+        _ownedByPlayer.computeIfPresent(player, (id, count) -> count > 1 ? count - 1 : null);
+    }
 
-                    if (pairedDoorData != null) {
-                        if (closedFirstDoor) {
-                            CloseDoor(pairedDoorBlock);
-                        } else {
-                            OpenDoor(pairedDoorBlock);
-                        }
-                        PlayCloseNoise(pairedDoorBlock);
-                    } else {
-                        _plugin.getLogger().warning("Tried to close paired door block, but block data was null or not correct type.");
-                    }
-                } else {
-                    // this would typically be null for single doors, trap doors, etc.
-                    // do nothing
-                }
+    // wall-clock time a close that many ticks from now should run at
+    private static long DueNanos(long ticks) {
+        return System.nanoTime() + ticks * (1000000000L / TICKS_PER_SECOND);
+    }
+
+    // when a close is due by the wall clock, for the journal. Parked closes
+    // are overdue, so due now
+    private static long DeadlineMillis(PendingClose pending) {
+        long ticks = Math.max(0, pending.deadline - pending.shard.wheel.CurrentTick());
+        return System.currentTimeMillis() + ticks * (1000L / TICKS_PER_SECOND);
+    }
+
+    // Keeps the number of pending closes under MaxPendingCloses. When full, the
+    // oldest pending door in the shard is closed early to make room. On a
+    // normal server that's the oldest one overall. On Folia the other shards
+    // belong to other threads, so a shard with nothing of its own to evict
+    // goes over the cap rather than wait.
+    private void MakeRoomForPendingClose(CloseShard shard) {
+        int maxPendingCloses = Settings.Current().maxPendingCloses;
+
+        while (_pendingTotal.get() >= maxPendingCloses) {
+            PendingClose oldest = shard.pending.Oldest();
+            if (oldest == null) {
+                break;
+            }
+
+            Unschedule(oldest);
 
-                activeScheduledTats.remove(blockLocation);
+            // a close parked in an unloaded chunk is dropped rather than
+            // forcing the chunk to load
+            if (IsChunkLoaded(oldest.door1Block)) {
+                ApplyClose(oldest, DebugTrace.Reason.EVICTED);
             }
-        }.runTaskLater(_plugin, (long)seconds * TICKS_PER_SECOND);
+            Forget(oldest);
+            _metrics.closesEvicted.increment();
+        }
     }
 
+    // called for every close that has come due. Returns false if the close
+    // had to be parked instead
+    private boolean FireClose(PendingClose pending, DebugTrace.Reason reason) {
+        // never touch block data in an unloaded chunk, that would make the
+        // server load it synchronously. Park it until the chunk comes back
+        if (!IsChunkLoaded(pending.door1Block)) {
+            pending.parked = true;
+            _metrics.closesParked.increment();
+            return false;
+        }
+
+        ApplyClose(pending, reason);
+        Forget(pending);
+        return true;
+    }
 
-    // Get persistent location from a double/single door to use as a key for scheduled task Map.
-    // We assume that doorBlock is bottom half of an actual door.
-    private Block GetDoubleDoorLocation(Block doorBlock){
-        if (doorBlock.getBlockData() instanceof Door) {
-            Door doorData = (Door)(doorBlock.getBlockData());
-            Hinge hinge = doorData.getHinge();
+    // closes (or re-opens) the door(s) of a pending close. Caller must have
+    // checked that the main door's chunk is loaded
+    private void ApplyClose(PendingClose pending, DebugTrace.Reason reason) {
+        Block door1Block = pending.door1Block;
+        Block pairedDoorBlock = pending.pairedDoorBlock;
+
+        // powered since it was scheduled and we missed it, or the circuit
+        // changed while its chunk was unloaded
+        if (door1Block != null && Settings.Current().leavePoweredDoors && IsPowered(door1Block, pairedDoorBlock, pending.key)) {
+            Traced(DebugTrace.Kind.CANCELLED, DebugTrace.Reason.REDSTONE, pending, 0);
+            _metrics.closesSkippedPowered.increment();
+            return;
+        }
 
-            Block pairedDoor = null;
+        // built only when some plugin listens for it
+        if (door1Block != null && DoorAutoCloseEvent.HasListeners()) {
+            DoorAutoCloseEvent event = new DoorAutoCloseEvent(door1Block, pairedDoorBlock, pending.byEntity);
+            Bukkit.getPluginManager().callEvent(event);
 
-            BlockFace face = doorData.getFacing();
+            if (event.isCancelled()) {
+                Traced(DebugTrace.Kind.CANCELLED, DebugTrace.Reason.VETOED, pending, 0);
+                _metrics.closesVetoed.increment();
+                return;
+            }
+        }
 
-            //_plugin.getLogger().info("[L] DEBUG: door face=" + face.toString());
-            //_plugin.getLogger().info("[L] DEBUG: door isOpen()=" + doorData.isOpen());
-            //_plugin.getLogger().info("[L] DEBUG: door hinge=" + hinge.toString());
+        Traced(DebugTrace.Kind.FIRED, reason, pending, pending.shard.wheel.CurrentTick() - pending.deadline);
 
-            switch (face) {
-                case NORTH:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.EAST);
-                    } else {
-                        return doorBlock;
-                    }
-                    break;
+        boolean closedFirstDoor = true;
+        if (door1Block != null) {
+            Openable door1Data = OpenableFromBlock(door1Block);
 
-                case SOUTH:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.WEST);
+            if (door1Data != null) {
+                if (pending.restoreTarget) {
+                    // put it back the way it was, whatever happened since
+                    if (pending.targetOpen) {
+                        OpenDoor(door1Block);
                     } else {
-                        return doorBlock;
+                        CloseDoor(door1Block);
                     }
-                    break;
+                    closedFirstDoor = !pending.targetOpen;
+                } else if (door1Data.isOpen()) {
+                    CloseDoor(door1Block);
+                    closedFirstDoor = true;
+                } else {
+                    OpenDoor(door1Block);
+                    closedFirstDoor = false;
+                }
 
-                case EAST:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.SOUTH);
-                    } else {
-                        return doorBlock;
-                    }
-                    break;
+                // one sound for the whole door group, paired leaf included. A
+                // debounced door can already be back where it started, in which
+                // case there's nothing to hear
+                if (!pending.restoreTarget || door1Data.isOpen() != pending.targetOpen) {
+                    PlayCloseNoise(Settings.Current().At(door1Block), pending.shard, door1Block);
+                }
+            } else {
+                _plugin.getLogger().warning("Tried to close door block, but block data was null or not correct type.");
+            }
+        } else {
+            _plugin.getLogger().warning("Null main door block sent to ScheduleClose.");
+        }
 
-                case WEST:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.NORTH);
-                    } else {
-                        return doorBlock;
-                    }
-                    break;
+        // the other half of a double door can sit across a chunk border. If that
+        // chunk is already gone, leave it alone rather than loading it
+        if (pairedDoorBlock != null && IsChunkLoaded(pairedDoorBlock)) {
+            Openable pairedDoorData = OpenableFromBlock(pairedDoorBlock);
 
-                default:
-                    return doorBlock;
+            if (pairedDoorData != null) {
+                if (closedFirstDoor) {
+                    CloseDoor(pairedDoorBlock);
+                } else {
+                    OpenDoor(pairedDoorBlock);
+                }
+            } else {
+                _plugin.getLogger().warning("Tried to close paired door block, but block data was null or not correct type.");
             }
+        } else {
+            // this would typically be null for single doors, trap doors, etc.
+            // do nothing
+        }
 
-            if (pairedDoor != null) {
-                // check the block we found that is opposite the hinge. If it
-                // is a door and has a hinge that is opposite this one, then
-                // it is our pair
+        // remember doors closed by proximity, so AutoOpen can find them again
+        if (pending.proximity && closedFirstDoor && door1Block != null && Settings.Current().autoOpen
+            && !_autoOpenDoors.Add(door1Block, pairedDoorBlock, pending.key)) {
+            _metrics.autoOpenDoorsOverLimit.increment();
 
-                BlockData data = pairedDoor.getBlockData();
+            if (!_autoOpenFullLogged) {
+                _autoOpenFullLogged = true;
+                _plugin.getLogger().warning("AutoOpen already remembers " + AutoOpenDoors.LIMIT
+                    + " doors; doors closed from now on won't open by themselves until there's room again.");
+            }
+        }
+    }
 
-                // check to see if that block is actually a door
-                if (data instanceof Door) {
-                    Door door2 = (Door)data;
+    // drops a pending close from its shard's index and chunk list, and from
+    // the journal
+    private void Forget(PendingClose pending) {
+        CloseShard shard = pending.shard;
+        if (!shard.pending.Remove(pending)) {
+            return;
+        }
 
-                    //_plugin.getLogger().info("[L] DEBUG: Door neighbor is a door.");
-                    //_plugin.getLogger().info("[L] DEBUG: paired door face=" + door2.getFacing().toString());
-                    //_plugin.getLogger().info("[L] DEBUG: paired door isOpen()=" + door2.isOpen());
-                    //_plugin.getLogger().info("[L] DEBUG: paired door hinge=" + door2.getHinge().toString());
+        shard.chunks.Remove(pending);
+        if (pending.owner != null) {
+            Disown(pending.owner.id);
+            shard.owners.Remove(pending);
+        }
+        _pendingTotal.decrementAndGet();
+
+        CloseJournal journal = _journal;
+        if (journal != null) {
+            try {
+                journal.AppendRemove(pending);
+            } catch (IOException ex) {
+                DisableJournal(journal, ex);
+            }
+        }
+    }
 
+    private boolean IsChunkLoaded(Block block) {
+        return block.getWorld().isChunkLoaded(block.getX() >> 4, block.getZ() >> 4);
+    }
 
-                    if ((hinge == Hinge.LEFT && door2.getHinge() == Hinge.RIGHT) ||
-                            (hinge == Hinge.RIGHT && door2.getHinge() == Hinge.LEFT)) {
-                        //_plugin.getLogger().info("DEBUG: Found paired / double door");
+    // A kick ends in a quit as well, so this covers both
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerQuit(PlayerQuitEvent e) {
+        CloseOwnedBy(e.getPlayer().getUniqueId());
+    }
 
-                        // we're good!
-                        return pairedDoor;
-                    } else {
-                        //_plugin.getLogger().info("DEBUG: Neighbor has hinge on same side. Not a double door");
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerChangedWorld(PlayerChangedWorldEvent e) {
+        CloseOwnedBy(e.getPlayer().getUniqueId());
+    }
 
-                        // neighbor block has hinge on same side
-                        // not the pair for this door
-                        return doorBlock;
-                    }
-                } else {
-                    //_plugin.getLogger().info("DEBUG: Neighbor block is not a door. Not a double door.");
+    // With CloseWhenPlayerLeaves, makes all of a player's pending closes due
+    // now. They go through the ready queue together, so the block update
+    // budget still applies. On Folia each shard is done on its own thread
+    private void CloseOwnedBy(UUID player) {
+        if (!Settings.Current().closeWhenPlayerLeaves) {
+            return;
+        }
 
-                    // neighbor block is not a door.
-                    // door is a single door, not a double door
-                    return doorBlock;
-                }
-            } else {
-                // no block next door. That would be ... odd
-                // door is a single door, not double
-                return doorBlock;
+        if (_mainShard != null) {
+            CloseOwnedBy(_mainShard, player);
+            return;
+        }
+
+        for (CloseShard shard : _shards.values()) {
+            World world = _worldIndex.WorldAt(CloseShard.SectionWorld(shard.sectionKey));
+            if (world != null) {
+                _scheduling.RunAt(world, CloseShard.SectionX(shard.sectionKey) << CloseShard.SECTION_SHIFT,
+                    CloseShard.SectionZ(shard.sectionKey) << CloseShard.SECTION_SHIFT, () -> CloseOwnedBy(shard, player));
             }
-        } else {
-            _plugin.getLogger().warning("Bogus block type passed into GetPairedDoorBlockIfDoubleDoor.");
-            return doorBlock;
         }
     }
 
-    private Block GetPairedDoorBlockIfDoubleDoor(Block doorBlock) {
-        if (doorBlock.getBlockData() instanceof Door) {
-            Door doorData = (Door)(doorBlock.getBlockData());
-            Hinge hinge = doorData.getHinge();
+    private void CloseOwnedBy(CloseShard shard, UUID player) {
+        long now = shard.wheel.CurrentTick();
 
-            Block pairedDoor = null;
+        shard.owners.RemovePlayer(player, pending -> {
+            Disown(player);
 
-            BlockFace face = doorData.getFacing();
+            // parked ones close when their chunk loads, queued ones are
+            // already on their way
+            if (pending.parked || pending.queued) {
+                return;
+            }
 
-            //_plugin.getLogger().info("DEBUG: door face=" + face.toString());
-            //_plugin.getLogger().info("DEBUG: door isOpen()=" + doorData.isOpen());
-            //_plugin.getLogger().info("DEBUG: door hinge=" + hinge.toString());
+            shard.wheel.Cancel(pending);
+            pending.deadline = now;
+            shard.ready.Add(pending);
+            _metrics.closesOnPlayerLeave.increment();
+        });
+    }
 
-            switch (face) {
-                case NORTH:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.EAST);
-                    } else {
-                        pairedDoor = doorBlock.getRelative(BlockFace.WEST);
-                    }
-                    break;
+    // The chunk is still loaded while this event runs, so this is our last
+    // chance to close its doors without loading it again later.
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void chunkUnload(ChunkUnloadEvent e) {
+        Chunk chunk = e.getChunk();
+        int worldIndex = _worldIndex.Find(chunk.getWorld());
+        if (worldIndex == WorldIndex.NO_INDEX) {
+            return;
+        }
 
-                case SOUTH:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.WEST);
-                    } else {
-                        pairedDoor = doorBlock.getRelative(BlockFace.EAST);
-                    }
-                    break;
+        // nobody can walk up to these doors, and they're not worth keeping
+        // until someone loads the chunk again. Only Bukkit has AutoOpen
+        if (_playerIndex != null) {
+            _autoOpenDoors.RemoveChunk(worldIndex, chunk.getX(), chunk.getZ());
+        }
 
-                case EAST:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.SOUTH);
-                    } else {
-                        pairedDoor = doorBlock.getRelative(BlockFace.NORTH);
-                    }
-                    break;
+        if (!Settings.Current().closeOnChunkUnload) {
+            // closes stay in the wheel and park themselves when they come due
+            return;
+        }
 
-                case WEST:
-                    if (hinge == Hinge.LEFT) {
-                        pairedDoor = doorBlock.getRelative(BlockFace.NORTH);
-                    } else {
-                        pairedDoor = doorBlock.getRelative(BlockFace.SOUTH);
-                    }
-                    break;
+        CloseShard closeShard = ShardOfChunk(worldIndex, chunk.getX(), chunk.getZ());
+        ChunkShards.ChunkShard shard = closeShard != null ? closeShard.chunks.Get(worldIndex, chunk.getX(), chunk.getZ()) : null;
+        if (shard == null) {
+            return;
+        }
 
-                default:
-                    pairedDoor = null;
-                    break;
+        PendingClose pending = shard.head;
+        while (pending != null) {
+            PendingClose next = pending.chunkNext;
+
+            if (!pending.parked) {
+                Unschedule(pending);
+                ApplyClose(pending, DebugTrace.Reason.CHUNK_UNLOAD);
+                Forget(pending);
+                _metrics.closesOnChunkUnload.increment();
             }
 
-            if (pairedDoor != null) {
-                // check the block we found that is opposite the hinge. If it
-                // is a door and has a hinge that is opposite this one, then
-                // it is our pair
+            pending = next;
+        }
+    }
+
+    // replay closes that came due while their chunk was unloaded
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void chunkLoad(ChunkLoadEvent e) {
+        Chunk chunk = e.getChunk();
+        int worldIndex = _worldIndex.Find(chunk.getWorld());
+        if (worldIndex == WorldIndex.NO_INDEX) {
+            return;
+        }
 
-                BlockData data = pairedDoor.getBlockData();
+        CloseShard closeShard = ShardOfChunk(worldIndex, chunk.getX(), chunk.getZ());
+        ChunkShards.ChunkShard shard = closeShard != null ? closeShard.chunks.Get(worldIndex, chunk.getX(), chunk.getZ()) : null;
+        if (shard == null) {
+            return;
+        }
 
-                // check to see if that block is actually a door
-                if (data instanceof Door) {
-                    Door door2 = (Door)data;
+        for (PendingClose pending = shard.head; pending != null; pending = pending.chunkNext) {
+            if (pending.parked) {
+                // they're overdue already, so run them on the next tick
+                pending.parked = false;
+                closeShard.wheel.Schedule(pending, closeShard.wheel.CurrentTick());
+            }
+        }
+    }
 
-                    //_plugin.getLogger().info("DEBUG: Door neighbor is a door.");
-                    //_plugin.getLogger().info("DEBUG: paired door face=" + door2.getFacing().toString());
-                    //_plugin.getLogger().info("DEBUG: paired door isOpen()=" + door2.isOpen());
-                    //_plugin.getLogger().info("DEBUG: paired door hinge=" + door2.getHinge().toString());
+    // Closes everything pending in a world that's going away and frees its
+    // index. Parked closes in unloaded chunks are dropped. Folia doesn't
+    // unload worlds, so this only ever sees the main shard.
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void worldUnload(WorldUnloadEvent e) {
+        if (e.isCancelled()) {
+            return;
+        }
 
+        World world = e.getWorld();
+        int worldIndex = _worldIndex.Find(world);
+        if (worldIndex == WorldIndex.NO_INDEX) {
+            return;
+        }
 
-                    if ((hinge == Hinge.LEFT && door2.getHinge() == Hinge.RIGHT) ||
-                        (hinge == Hinge.RIGHT && door2.getHinge() == Hinge.LEFT)) {
-                        //_plugin.getLogger().info("DEBUG: Found paired / double door");
+        for (CloseShard closeShard : _allShards) {
+            LongObjectMap<ChunkShards.ChunkShard> shards = closeShard.chunks.RemoveWorld(worldIndex);
+            if (shards == null) {
+                continue;
+            }
 
-                        // we're good!
-                        return pairedDoor;
-                    } else {
-                        //_plugin.getLogger().info("DEBUG: Neighbor has hinge on same side. Not a double door");
+            shards.ForEach((chunkKey, shard) -> {
+                PendingClose pending = shard.head;
+                while (pending != null) {
+                    PendingClose next = pending.chunkNext;
+                    Unschedule(pending);
 
-                        // neighbor block has hinge on same side
-                        // not the pair for this door
-                        return null;
+                    if (!pending.parked && IsChunkLoaded(pending.door1Block)) {
+                        ApplyClose(pending, DebugTrace.Reason.WORLD_UNLOAD);
                     }
-                } else {
-                    //_plugin.getLogger().info("DEBUG: Neighbor block is not a door. Not a double door.");
 
-                    // neighbor block is not a door.
-                    // door is a single door, not a double door
-                    return null;
+                    Forget(pending);
+                    pending = next;
                 }
-            } else {
-                // no block next door. That would be ... odd
-                // door is a single door, not double
-                return null;
-            }
-        } else {
-            _plugin.getLogger().warning("Bogus block type passed into GetPairedDoorBlockIfDoubleDoor.");
-            return null;
+            });
         }
+
+        _autoOpenDoors.RemoveWorld(worldIndex);
+        _poweredBlocks.RemoveWorld(worldIndex);
+        _worldIndex.Release(world);
     }
 
 
     private void OpenDoor(Block doorBlock) {
+        SetOpen(doorBlock, true);
+    }
+
+    private void CloseDoor(Block doorBlock) {
+        SetOpen(doorBlock, false);
+    }
 
+    // With SkipBlockPhysics, a door's halves are both written directly and
+    // nothing around them gets a neighbour update, which is all opening or
+    // closing one needs. Only an observer watching the door has to see the
+    // change, so next to one the normal update with physics is used.
+    private void SetOpen(Block doorBlock, boolean open) {
         BlockData data = doorBlock.getBlockData();
 
-        if (data instanceof Openable) {
-            if (!((Openable)data).isOpen()) {
-                ((Openable)data).setOpen(true);
+        if (!(data instanceof Openable)) {
+            // someone passed in a bogus block
+            return;
+        }
+
+        Openable openable = (Openable)data;
+        if (openable.isOpen() == open) {
+            return;
+        }
+        openable.setOpen(open);
+
+        if (!Settings.Current().skipBlockPhysics) {
+            doorBlock.setBlockData(data);
+            return;
+        }
 
-                doorBlock.setBlockData(data);
+        // without physics the other half won't follow by itself
+        Block otherHalf = null;
+        BlockData otherData = null;
+        BlockFace toOtherHalf = null;
+        if (data instanceof Door) {
+            toOtherHalf = ((Door)data).getHalf() == Half.BOTTOM ? BlockFace.UP : BlockFace.DOWN;
+            otherHalf = doorBlock.getRelative(toOtherHalf);
+            otherData = otherHalf.getBlockData();
+
+            if (otherData instanceof Door) {
+                ((Door)otherData).setOpen(open);
+            } else {
+                otherHalf = null;
             }
-        } else {
-            // someone passed in a bogus block
         }
-    }
 
-    private void CloseDoor(Block doorBlock) {
+        if (IsObserved(doorBlock, toOtherHalf) || (otherHalf != null && IsObserved(otherHalf, toOtherHalf.getOppositeFace()))) {
+            _metrics.physicsFallbacks.increment();
+            doorBlock.setBlockData(data);
+            return;
+        }
 
-        BlockData data = doorBlock.getBlockData();
+        doorBlock.setBlockData(data, false);
+        if (otherHalf != null) {
+            otherHalf.setBlockData(otherData, false);
+        }
+    }
+
+    // whether an observer next to the block is facing it, not counting the
+    // side given (a door's other half). Only observers are looked at
+    // closely; any other neighbour costs one material check
+    private static boolean IsObserved(Block block, BlockFace except) {
+        for (BlockFace face : NEIGHBOUR_FACES) {
+            if (face == except) {
+                continue;
+            }
 
-        if (data instanceof Openable) {
-            if (((Openable)data).isOpen()) {
-                ((Openable)data).setOpen(false);
+            Block neighbour = block.getRelative(face);
 
-                doorBlock.setBlockData(data);
+            if (neighbour.getType() == Material.OBSERVER) {
+                BlockData data = neighbour.getBlockData();
+                if (data instanceof Observer && ((Observer)data).getFacing() == face.getOppositeFace()) {
+                    return true;
+                }
             }
-        } else {
-            // someone passed in a bogus block
         }
+        return false;
     }
 }
@@ -0,0 +1,327 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.GameMode;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// Records the door clicks the interact handler accepts to a compact binary
+// file, so a busy hour on a real server can be replayed offline (see
+// ReplayTrace in the benchmarks). Players are numbered in the order they
+// first click; names and ids are never written.
+//
+// The file is a header (MAGIC, VERSION) followed by records, each starting
+// with its type byte:
+//   RECORD_WORLD     world number (byte), name (UTF)
+//   RECORD_MATERIAL  material number (short), name (UTF)
+//   RECORD_CLICK     world (byte), flags (byte), material (short),
+//                    player (short), tick (int), x (int), y (short), z (int)
+// A world or material is always defined before the first click that uses it.
+//
+// Clicks are collected in memory and written out in big blocks off the tick
+// thread, so recording costs a synchronized buffer write per click. The last
+// block is written and the file closed off the tick thread as well.
+final class InteractionTrace {
+    static final int MAGIC = 0x44435452; // "DCTR"
+    static final int VERSION = 1;
+
+    static final byte RECORD_WORLD = 1;
+    static final byte RECORD_MATERIAL = 2;
+    static final byte RECORD_CLICK = 3;
+
+    static final int FLAG_WAS_OPEN = 1;
+    static final int FLAG_SNEAKING = 2;
+    static final int FLAG_CREATIVE = 4;
+
+    private static final int CLICK_BYTES = 21;
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    // recording stops by itself once the file gets this big
+    private static final long MAX_BYTES = 256L * 1024 * 1024;
+
+    // what a trace file holds, one call per click in file order
+    interface Visitor {
+        void Click(int tick, String world, int x, int y, int z, String material, int player, int flags);
+    }
+
+    private final File _file;
+    private final Scheduling _scheduling;
+    private final long _startTick;
+
+    // filled buffers waiting for the writer, in order
+    private final ConcurrentLinkedQueue<ByteBuffer> _full = new ConcurrentLinkedQueue<>();
+    private final OutputStream _out;
+    private IOException _writeError;
+
+    // everything below is guarded by this
+    private ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final Map<String, Integer> _worlds = new HashMap<>();
+    private final Map<Material, Integer> _materials = new HashMap<>();
+    private final Map<UUID, Integer> _players = new HashMap<>();
+    private long _bytes;
+    private long _clicks;
+    private boolean _closed;
+
+    InteractionTrace(File file, Scheduling scheduling, long startTick) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Can't create " + folder);
+        }
+
+        _file = file;
+        _scheduling = scheduling;
+        _startTick = startTick;
+        _out = new FileOutputStream(file);
+
+        _buffer.putInt(MAGIC);
+        _buffer.putInt(VERSION);
+    }
+
+    File GetFile() {
+        return _file;
+    }
+
+    synchronized long Clicks() {
+        return _clicks;
+    }
+
+    // false once recording has stopped, by Close() or because the file is full
+    synchronized boolean Click(long tick, Block block, Material material, Player player, boolean wasOpen) {
+        if (_closed) {
+            return false;
+        }
+
+        World world = block.getWorld();
+        int worldNumber = NumberOf(world);
+        int materialNumber = NumberOf(material);
+        int playerNumber = _players.computeIfAbsent(player.getUniqueId(), id -> _players.size());
+
+        // past this, a player number no longer fits; treat it like a full file
+        if (worldNumber < 0 || playerNumber > 0xFFFF || _bytes + _buffer.position() > MAX_BYTES) {
+            CloseLocked();
+            return false;
+        }
+
+        int flags = (wasOpen ? FLAG_WAS_OPEN : 0)
+            | (player.isSneaking() ? FLAG_SNEAKING : 0)
+            | (player.getGameMode() == GameMode.CREATIVE ? FLAG_CREATIVE : 0);
+
+        Room(CLICK_BYTES);
+        _buffer.put(RECORD_CLICK);
+        _buffer.put((byte)worldNumber);
+        _buffer.put((byte)flags);
+        _buffer.putShort((short)materialNumber);
+        _buffer.putShort((short)playerNumber);
+        _buffer.putInt((int)(tick - _startTick));
+        _buffer.putInt(block.getX());
+        _buffer.putShort((short)block.getY());
+        _buffer.putInt(block.getZ());
+
+        _clicks++;
+        return true;
+    }
+
+    // Stops recording. What's left is written out and the file closed on an
+    // async thread, which then calls finished with the first write error, or
+    // null if there was none
+    void Close(Consumer<IOException> finished) {
+        synchronized (this) {
+            CloseLocked();
+        }
+
+        _scheduling.RunAsync(() -> finished.accept(Finish()));
+    }
+
+    // Close on the calling thread, for shutdown, when the scheduler takes no
+    // more tasks from the plugin
+    void CloseNow() throws IOException {
+        synchronized (this) {
+            CloseLocked();
+        }
+
+        IOException error = Finish();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // no more clicks; the last buffer goes to the writer
+    private void CloseLocked() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+
+        _full.add(_buffer);
+        _buffer = null;
+    }
+
+    private IOException Finish() {
+        synchronized (_out) {
+            WriteFull();
+            try {
+                _out.close();
+            } catch (IOException ex) {
+                if (_writeError == null) {
+                    _writeError = ex;
+                }
+            }
+            return _writeError;
+        }
+    }
+
+    private int NumberOf(World world) {
+        String name = world.getName();
+        Integer number = _worlds.get(name);
+        if (number != null) {
+            return number;
+        }
+
+        if (_worlds.size() > 0xFF) {
+            return -1;
+        }
+
+        number = _worlds.size();
+        _worlds.put(name, number);
+
+        byte[] utf = NameBytes(name);
+        Room(1 + 1 + utf.length);
+        _buffer.put(RECORD_WORLD);
+        _buffer.put((byte)(int)number);
+        _buffer.put(utf);
+        return number;
+    }
+
+    private int NumberOf(Material material) {
+        Integer number = _materials.get(material);
+        if (number != null) {
+            return number;
+        }
+
+        number = _materials.size();
+        _materials.put(material, number);
+
+        byte[] utf = NameBytes(material.name());
+        Room(1 + 2 + utf.length);
+        _buffer.put(RECORD_MATERIAL);
+        _buffer.putShort((short)(int)number);
+        _buffer.put(utf);
+        return number;
+    }
+
+    // a name the way DataInputStream.readUTF() wants it, assuming ASCII-ish
+    // names under 64k, which world and material names are
+    private static byte[] NameBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer utf = ByteBuffer.allocate(2 + bytes.length);
+        utf.putShort((short)bytes.length);
+        utf.put(bytes);
+        return utf.array();
+    }
+
+    // makes sure the buffer has space, handing it to the writer if not
+    private void Room(int bytes) {
+        if (_buffer.remaining() >= bytes) {
+            return;
+        }
+
+        _bytes += _buffer.position();
+        _full.add(_buffer);
+        _buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+        _scheduling.RunAsync(() -> {
+            synchronized (_out) {
+                WriteFull();
+            }
+        });
+    }
+
+    // whoever gets here first writes every queued buffer, in order
+    private void WriteFull() {
+        ByteBuffer full;
+        while ((full = _full.poll()) != null) {
+            if (_writeError != null) {
+                continue;
+            }
+
+            try {
+                _out.write(full.array(), 0, full.position());
+            } catch (IOException ex) {
+                _writeError = ex;
+            }
+        }
+    }
+
+    // Reads a trace file written by the recorder, calling the visitor for
+    // every click in it
+    static void Read(File file, Visitor visitor) throws IOException {
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES)) {
+            DataInputStream in = new DataInputStream(stream);
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a DoorCloser interaction trace.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is trace version " + version + ", this reads version " + VERSION + ".");
+            }
+
+            Map<Integer, String> worlds = new HashMap<>();
+            Map<Integer, String> materials = new HashMap<>();
+
+            // a server that was killed can leave half a record at the end,
+            // which is dropped like the end of the file
+            try {
+                while (true) {
+                    ReadRecord(file, in, worlds, materials, visitor);
+                }
+            } catch (EOFException ex) {
+                return;
+            }
+        }
+    }
+
+    private static void ReadRecord(File file, DataInputStream in, Map<Integer, String> worlds, Map<Integer, String> materials, Visitor visitor) throws IOException {
+        int type = in.readByte();
+
+        switch (type) {
+            case RECORD_WORLD:
+                worlds.put(in.readUnsignedByte(), in.readUTF());
+                break;
+            case RECORD_MATERIAL:
+                materials.put(in.readUnsignedShort(), in.readUTF());
+                break;
+            case RECORD_CLICK:
+                String world = worlds.get(in.readUnsignedByte());
+                int flags = in.readUnsignedByte();
+                String material = materials.get(in.readUnsignedShort());
+                int player = in.readUnsignedShort();
+                int tick = in.readInt();
+                int x = in.readInt();
+                int y = in.readShort();
+                int z = in.readInt();
+                visitor.Click(tick, world, x, y, z, material, player, flags);
+                break;
+            default:
+                throw new IOException(file + " has an unknown record type " + type + ".");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.tenrem.doorcloser;
+
+// Watches how long recent server ticks took and turns that into a load
+// shedding level. Spigot doesn't expose tick times, so this measures the time
+// between calls to Sample(), which runs once a tick. That equals the tick
+// time whenever the server can't keep up with 20 ticks a second, and a steady
+// 50ms otherwise, so thresholds only mean anything above 50.
+//
+// Levels go up as soon as the average passes a threshold, but only come down
+// once it's comfortably below it again, so the level doesn't flap around a
+// threshold.
+final class LoadMonitor {
+    static final int LEVEL_NONE = 0;
+    static final int LEVEL_NO_SOUNDS = 1;
+    static final int LEVEL_STRETCH = 2;
+    static final int LEVEL_BATCH = 3;
+
+    private static final String[] LEVEL_NAMES = { "none", "no sounds", "stretched delays", "batched closes" };
+
+    // weight of the newest sample in the moving average, about the last 20 ticks
+    private static final double ALPHA = 0.1;
+
+    // a single sample can't count for more than this, so one long pause
+    // (a GC, a world save) doesn't hold the level up for seconds afterwards
+    private static final double MAX_SAMPLE_MILLIS = 1000;
+
+    // a level is left once the average drops below this share of its threshold
+    private static final double RECOVER_FACTOR = 0.9;
+
+    private long _lastNanos;
+    private volatile double _averageMillis = 50;
+    private volatile int _level = LEVEL_NONE;
+
+    // called once a tick on the main thread (Folia: the global region thread)
+    void Sample(Settings settings) {
+        long now = System.nanoTime();
+
+        if (_lastNanos != 0) {
+            double millis = Math.min((now - _lastNanos) / 1000000.0, MAX_SAMPLE_MILLIS);
+            _averageMillis += ALPHA * (millis - _averageMillis);
+        }
+        _lastNanos = now;
+
+        _level = settings.loadShedding ? LevelFor(settings, _averageMillis, _level) : LEVEL_NONE;
+    }
+
+    int Level() {
+        return _level;
+    }
+
+    double AverageMillis() {
+        return _averageMillis;
+    }
+
+    static String NameOf(int level) {
+        return LEVEL_NAMES[level];
+    }
+
+    private static int LevelFor(Settings settings, double averageMillis, int current) {
+        int level = LEVEL_NONE;
+        if (averageMillis >= settings.batchClosesMspt) {
+            level = LEVEL_BATCH;
+        } else if (averageMillis >= settings.stretchDelaysMspt) {
+            level = LEVEL_STRETCH;
+        } else if (averageMillis >= settings.shedSoundsMspt) {
+            level = LEVEL_NO_SOUNDS;
+        }
+
+        // step down one level at a time, and only with some room to spare
+        if (level < current && averageMillis >= ThresholdOf(settings, current) * RECOVER_FACTOR) {
+            return current;
+        }
+        return level < current ? current - 1 : level;
+    }
+
+    private static double ThresholdOf(Settings settings, int level) {
+        switch (level) {
+            case LEVEL_BATCH:
+                return settings.batchClosesMspt;
+            case LEVEL_STRETCH:
+                return settings.stretchDelaysMspt;
+            case LEVEL_NO_SOUNDS:
+                return settings.shedSoundsMspt;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package net.tenrem.doorcloser;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from primitive long keys to objects. Uses linear
+// probing with backward-shift deletion, so there are no tombstones and lookups
+// never allocate. Null values are not allowed; a null slot means empty.
+final class LongObjectMap<V> {
+    private static final float MAX_LOAD = 0.5f;
+
+    private long[] _keys;
+    private Object[] _values;
+    private int _mask;
+    private int _size;
+    private int _resizeAt;
+
+    LongObjectMap(int expectedSize) {
+        Allocate(TableSizeFor(expectedSize));
+    }
+
+    int Size() {
+        return _size;
+    }
+
+    boolean IsEmpty() {
+        return _size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V Get(long key) {
+        int i = Slot(key);
+
+        while (_values[i] != null) {
+            if (_keys[i] == key) {
+                return (V)_values[i];
+            }
+            i = (i + 1) & _mask;
+        }
+
+        return null;
+    }
+
+    boolean ContainsKey(long key) {
+        return Get(key) != null;
+    }
+
+    // returns the previous value for the key, if any
+    @SuppressWarnings("unchecked")
+    V Put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+
+        int i = Slot(key);
+
+        while (_values[i] != null) {
+            if (_keys[i] == key) {
+                V old = (V)_values[i];
+                _values[i] = value;
+                return old;
+            }
+            i = (i + 1) & _mask;
+        }
+
+        _keys[i] = key;
+        _values[i] = value;
+
+        if (++_size > _resizeAt) {
+            Rehash(_keys.length << 1);
+        }
+
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V Remove(long key) {
+        int i = Slot(key);
+
+        while (_values[i] != null) {
+            if (_keys[i] == key) {
+                V old = (V)_values[i];
+                DeleteAt(i);
+                return old;
+            }
+            i = (i + 1) & _mask;
+        }
+
+        return null;
+    }
+
+    void Clear() {
+        Arrays.fill(_values, null);
+        _size = 0;
+    }
+
+    // makes sure the table can hold expectedSize entries without rehashing
+    void EnsureCapacity(int expectedSize) {
+        int tableSize = TableSizeFor(expectedSize);
+        if (tableSize > _keys.length) {
+            Rehash(tableSize);
+        }
+    }
+
+    // Walks every entry. The visitor must not modify the map.
+    @SuppressWarnings("unchecked")
+    void ForEach(Visitor<V> visitor) {
+        for (int i = 0; i < _values.length; i++) {
+            if (_values[i] != null) {
+                visitor.Visit(_keys[i], (V)_values[i]);
+            }
+        }
+    }
+
+    interface Visitor<V> {
+        void Visit(long key, V value);
+    }
+
+    private void DeleteAt(int slot) {
+        // shift following entries of the same cluster back, so probing
+        // never stops early at the hole we're leaving
+        int hole = slot;
+        int i = (slot + 1) & _mask;
+
+        while (_values[i] != null) {
+            int home = Slot(_keys[i]);
+
+            // can the entry at i move into the hole? only if its home slot is
+            // not between the hole and i (cyclically)
+            if (((i - home) & _mask) >= ((i - hole) & _mask)) {
+                _keys[hole] = _keys[i];
+                _values[hole] = _values[i];
+                hole = i;
+            }
+
+            i = (i + 1) & _mask;
+        }
+
+        _values[hole] = null;
+        _size--;
+    }
+
+    private int Slot(long key) {
+        // murmur3 finalizer, so packed coordinates spread over the table
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int)h & _mask;
+    }
+
+    private void Allocate(int tableSize) {
+        _keys = new long[tableSize];
+        _values = new Object[tableSize];
+        _mask = tableSize - 1;
+        _resizeAt = (int)(tableSize * MAX_LOAD);
+    }
+
+    private void Rehash(int tableSize) {
+        long[] oldKeys = _keys;
+        Object[] oldValues = _values;
+
+        Allocate(tableSize);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = Slot(oldKeys[i]);
+                while (_values[j] != null) {
+                    j = (j + 1) & _mask;
+                }
+                _keys[j] = oldKeys[i];
+                _values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static int TableSizeFor(int expectedSize) {
+        long needed = (long)Math.ceil(Math.max(expectedSize, 4) / MAX_LOAD);
+        int size = 1;
+        while (size < needed && size < (1 << 30)) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
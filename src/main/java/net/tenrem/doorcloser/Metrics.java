@@ -0,0 +1,357 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Counters and histograms for /dcstats and the optional Prometheus file.
+// Recording is a LongAdder increment. The gauges (pending counts) are read
+// from the close shards when a report is made, so on a normal server reports
+// must be made on the main thread. On Folia they're read racily from the
+// global region thread, which is close enough for a stats page.
+final class Metrics {
+    // how a click handled by blockInteract ended
+    enum Interaction {
+        NOT_DOOR("not_door"),
+        OUT_OF_SCOPE("out_of_scope"),
+        IGNORED("ignored"),
+        SCHEDULED("scheduled"),
+        CANCELLED("cancelled"),
+        DEBOUNCED("debounced"),
+        RATE_LIMITED("rate_limited"),
+        POWERED("powered");
+
+        final String label;
+
+        Interaction(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Interaction[] INTERACTIONS = Interaction.values();
+
+    // interaction totals are sampled once a second, for the rate over the last minute
+    private static final int RATE_SECONDS = 60;
+
+    private final LongAdder[] _interactions = new LongAdder[INTERACTIONS.length];
+
+    final LongAdder closesFired = new LongAdder();
+    final LongAdder closesParked = new LongAdder();
+    final LongAdder closesEvicted = new LongAdder();
+    final LongAdder closesOnChunkUnload = new LongAdder();
+
+    // closes dropped because redstone took over the door, when it became
+    // powered or when the close came due
+    final LongAdder closesCancelledPowered = new LongAdder();
+    final LongAdder closesSkippedPowered = new LongAdder();
+
+    // closes dropped by other plugins, through DoorCloserService or by
+    // cancelling DoorAutoCloseEvent
+    final LongAdder closesCancelledByPlugins = new LongAdder();
+    final LongAdder closesVetoed = new LongAdder();
+
+    // closes dropped because a reload took their material out of scope, and
+    // closes moved to a reloaded Time
+    final LongAdder closesCancelledByReload = new LongAdder();
+    final LongAdder closesRetimedByReload = new LongAdder();
+
+    // closes run early because their player went over
+    // MaxPendingClosesPerPlayer, or left (CloseWhenPlayerLeaves)
+    final LongAdder closesOverQuota = new LongAdder();
+    final LongAdder closesOnPlayerLeave = new LongAdder();
+
+    // Folia: doors not scheduled because their player was at
+    // MaxPendingClosesPerPlayer with every close in another region section
+    final LongAdder closesRefusedOverQuota = new LongAdder();
+
+    // doors opened by AutoOpen as a player walked up to them
+    final LongAdder doorsAutoOpened = new LongAdder();
+
+    // proximity closes whose door AutoOpen couldn't remember, because it
+    // already had AutoOpenDoors.LIMIT of them
+    final LongAdder autoOpenDoorsOverLimit = new LongAdder();
+
+    // doors opened by mobs (CloseEntityDoors): new closes, re-opens folded
+    // into an existing close, and opens past MaxEntityClosesPerChunk
+    final LongAdder entityOpensScheduled = new LongAdder();
+    final LongAdder entityOpensCoalesced = new LongAdder();
+    final LongAdder entityOpensOverCap = new LongAdder();
+
+    // door writes that kept block physics (SkipBlockPhysics) because an
+    // observer was watching
+    final LongAdder physicsFallbacks = new LongAdder();
+
+    // close sounds skipped because the server was behind
+    final LongAdder soundsShed = new LongAdder();
+
+    // how many ticks after its deadline a close ran, i.e. the delay added by
+    // the block update budget
+    final Histogram closeLateTicks = new Histogram(0, 1, 2, 5, 10, 20, 40, 100, 200);
+
+    // how much later than intended a close ran in wall-clock time. Includes
+    // the above plus server lag and time spent parked in an unloaded chunk
+    final Histogram closeLateMillis = new Histogram(0, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000);
+
+    private final long[] _interactionSamples = new long[RATE_SECONDS + 1];
+    private int _samples;
+
+    private final WorldIndex _worldIndex;
+
+    // the close shards to read the gauges from. On Folia these belong to
+    // other threads, so the gauges are only approximate there
+    private final Supplier<Collection<CloseShard>> _shards;
+    private final LoadMonitor _load;
+
+    Metrics(WorldIndex worldIndex, Supplier<Collection<CloseShard>> shards, LoadMonitor load) {
+        _worldIndex = worldIndex;
+        _shards = shards;
+        _load = load;
+
+        for (int i = 0; i < _interactions.length; i++) {
+            _interactions[i] = new LongAdder();
+        }
+    }
+
+    void Count(Interaction interaction) {
+        _interactions[interaction.ordinal()].increment();
+    }
+
+    long Interactions() {
+        long total = 0;
+        for (LongAdder adder : _interactions) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    // called once a second from the global tick
+    void SampleSecond() {
+        _interactionSamples[_samples % _interactionSamples.length] = Interactions();
+        _samples++;
+    }
+
+    // interactions per second over the last minute (or since startup)
+    double InteractionRate() {
+        if (_samples < 2) {
+            return 0;
+        }
+
+        int span = Math.min(_samples - 1, RATE_SECONDS);
+        long newest = _interactionSamples[(_samples - 1) % _interactionSamples.length];
+        long oldest = _interactionSamples[(_samples - 1 - span) % _interactionSamples.length];
+        return (newest - oldest) / (double)span;
+    }
+
+    long PendingCloses() {
+        long total = 0;
+        for (CloseShard shard : _shards.get()) {
+            total += shard.pending.Size();
+        }
+        return total;
+    }
+
+    long ReadyCloses() {
+        long total = 0;
+        for (CloseShard shard : _shards.get()) {
+            total += shard.ready.Size();
+        }
+        return total;
+    }
+
+    long PendingClosesIn(int worldIndex) {
+        long total = 0;
+        for (CloseShard shard : _shards.get()) {
+            total += shard.chunks.SizeOf(worldIndex);
+        }
+        return total;
+    }
+
+    // the /dcstats output
+    List<String> Report() {
+        List<String> lines = new ArrayList<>();
+
+        lines.add("DoorCloser stats");
+        lines.add("Pending closes: " + PendingCloses() + " (" + ReadyCloses() + " due, waiting for block update budget)");
+        for (int worldIndex = 0; worldIndex < BlockKey.MAX_WORLDS; worldIndex++) {
+            World world = _worldIndex.WorldAt(worldIndex);
+            if (world != null) {
+                lines.add("  " + world.getName() + ": " + PendingClosesIn(worldIndex));
+            }
+        }
+
+        lines.add(String.format("Interactions: %d total, %.1f/s over the last minute", Interactions(), InteractionRate()));
+        StringBuilder breakdown = new StringBuilder("  ");
+        for (Interaction interaction : INTERACTIONS) {
+            if (breakdown.length() > 2) {
+                breakdown.append(", ");
+            }
+            breakdown.append(interaction.label).append(' ').append(_interactions[interaction.ordinal()].sum());
+        }
+        lines.add(breakdown.toString());
+
+        lines.add("Closes: " + closesFired.sum() + " fired, " + closesParked.sum() + " parked, "
+            + closesEvicted.sum() + " evicted, " + closesOnChunkUnload.sum() + " closed on chunk unload");
+        if (closesOverQuota.sum() + closesOnPlayerLeave.sum() > 0) {
+            lines.add("Closed early: " + closesOverQuota.sum() + " over the per-player limit, "
+                + closesOnPlayerLeave.sum() + " when their player left");
+        }
+        if (closesRefusedOverQuota.sum() > 0) {
+            lines.add("Not scheduled over the per-player limit: " + closesRefusedOverQuota.sum());
+        }
+        if (closesCancelledPowered.sum() + closesSkippedPowered.sum() > 0) {
+            lines.add("Left to redstone: " + closesCancelledPowered.sum() + " cancelled on power, "
+                + closesSkippedPowered.sum() + " skipped when due");
+        }
+        if (closesCancelledByPlugins.sum() + closesVetoed.sum() > 0) {
+            lines.add("Dropped by other plugins: " + closesCancelledByPlugins.sum() + " cancelled, "
+                + closesVetoed.sum() + " vetoed when due");
+        }
+        if (closesCancelledByReload.sum() + closesRetimedByReload.sum() > 0) {
+            lines.add("Reloads: " + closesCancelledByReload.sum() + " closes cancelled as out of scope, "
+                + closesRetimedByReload.sum() + " re-timed");
+        }
+        if (entityOpensScheduled.sum() + entityOpensCoalesced.sum() + entityOpensOverCap.sum() > 0) {
+            lines.add("Mob opens: " + entityOpensScheduled.sum() + " scheduled, " + entityOpensCoalesced.sum() + " coalesced, "
+                + entityOpensOverCap.sum() + " over the chunk cap");
+        }
+        if (doorsAutoOpened.sum() > 0 || autoOpenDoorsOverLimit.sum() > 0) {
+            lines.add("Doors auto-opened: " + doorsAutoOpened.sum() + ", " + autoOpenDoorsOverLimit.sum() + " not remembered over the limit");
+        }
+        lines.add("Close lateness (ticks): " + Percentiles(closeLateTicks));
+        lines.add("Close lateness (ms): " + Percentiles(closeLateMillis));
+        lines.add(String.format("Tick time: %.1f ms average, shedding: %s (%d sounds skipped)",
+            _load.AverageMillis(), LoadMonitor.NameOf(_load.Level()), soundsShed.sum()));
+
+        return lines;
+    }
+
+    private static String Percentiles(Histogram histogram) {
+        if (histogram.Count() == 0) {
+            return "no closes yet";
+        }
+
+        return "p50 " + Bound(histogram.Percentile(0.5))
+            + ", p90 " + Bound(histogram.Percentile(0.9))
+            + ", p99 " + Bound(histogram.Percentile(0.99))
+            + " (" + histogram.Count() + " closes)";
+    }
+
+    private static String Bound(long bound) {
+        return bound == Long.MAX_VALUE ? "over max" : "<= " + bound;
+    }
+
+    // the same numbers in the Prometheus text exposition format
+    String Prometheus() {
+        StringBuilder out = new StringBuilder(2048);
+
+        Header(out, "doorcloser_interactions_total", "counter", "Clicks handled by the interact listener, by outcome.");
+        for (Interaction interaction : INTERACTIONS) {
+            out.append("doorcloser_interactions_total{result=\"").append(interaction.label).append("\"} ")
+                .append(_interactions[interaction.ordinal()].sum()).append('\n');
+        }
+
+        Header(out, "doorcloser_pending_closes", "gauge", "Closes waiting to happen, by world.");
+        for (int worldIndex = 0; worldIndex < BlockKey.MAX_WORLDS; worldIndex++) {
+            World world = _worldIndex.WorldAt(worldIndex);
+            if (world != null) {
+                out.append("doorcloser_pending_closes{world=\"").append(Escape(world.getName())).append("\"} ")
+                    .append(PendingClosesIn(worldIndex)).append('\n');
+            }
+        }
+
+        Header(out, "doorcloser_ready_closes", "gauge", "Closes that are due but waiting for block update budget.");
+        out.append("doorcloser_ready_closes ").append(ReadyCloses()).append('\n');
+
+        Header(out, "doorcloser_closes_total", "counter", "Pending closes that ended, by how.");
+        out.append("doorcloser_closes_total{result=\"fired\"} ").append(closesFired.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"parked\"} ").append(closesParked.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"evicted\"} ").append(closesEvicted.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"chunk_unload\"} ").append(closesOnChunkUnload.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"over_player_limit\"} ").append(closesOverQuota.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"player_left\"} ").append(closesOnPlayerLeave.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"refused_over_player_limit\"} ").append(closesRefusedOverQuota.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"powered_cancelled\"} ").append(closesCancelledPowered.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"powered_skipped\"} ").append(closesSkippedPowered.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"plugin_cancelled\"} ").append(closesCancelledByPlugins.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"plugin_vetoed\"} ").append(closesVetoed.sum()).append('\n');
+        out.append("doorcloser_closes_total{result=\"reload_cancelled\"} ").append(closesCancelledByReload.sum()).append('\n');
+
+        Header(out, "doorcloser_reload_retimed_total", "counter", "Pending closes moved to a new Time by a reload.");
+        out.append("doorcloser_reload_retimed_total ").append(closesRetimedByReload.sum()).append('\n');
+
+        Header(out, "doorcloser_auto_opened_total", "counter", "Doors opened by AutoOpen as a player came near.");
+        out.append("doorcloser_auto_opened_total ").append(doorsAutoOpened.sum()).append('\n');
+
+        Header(out, "doorcloser_auto_open_over_limit_total", "counter", "Doors closed by proximity that AutoOpen couldn't remember, being full.");
+        out.append("doorcloser_auto_open_over_limit_total ").append(autoOpenDoorsOverLimit.sum()).append('\n');
+
+        Header(out, "doorcloser_entity_opens_total", "counter", "Doors opened by mobs, by outcome.");
+        out.append("doorcloser_entity_opens_total{outcome=\"scheduled\"} ").append(entityOpensScheduled.sum()).append('\n');
+        out.append("doorcloser_entity_opens_total{outcome=\"coalesced\"} ").append(entityOpensCoalesced.sum()).append('\n');
+        out.append("doorcloser_entity_opens_total{outcome=\"over_cap\"} ").append(entityOpensOverCap.sum()).append('\n');
+
+        Header(out, "doorcloser_physics_fallbacks_total", "counter", "Door updates sent with block physics because an observer was watching.");
+        out.append("doorcloser_physics_fallbacks_total ").append(physicsFallbacks.sum()).append('\n');
+
+        Header(out, "doorcloser_sounds_shed_total", "counter", "Close sounds skipped because the server was behind.");
+        out.append("doorcloser_sounds_shed_total ").append(soundsShed.sum()).append('\n');
+
+        Header(out, "doorcloser_tick_milliseconds", "gauge", "Moving average of recent server tick times.");
+        out.append("doorcloser_tick_milliseconds ").append(String.format(Locale.ROOT, "%.2f", _load.AverageMillis())).append('\n');
+
+        Header(out, "doorcloser_shedding_level", "gauge", "Load shedding level: 0 none, 1 no sounds, 2 stretched delays, 3 batched closes.");
+        out.append("doorcloser_shedding_level ").append(_load.Level()).append('\n');
+
+        WriteHistogram(out, "doorcloser_close_late_ticks", "Ticks between a close's deadline and when it ran.", closeLateTicks);
+        WriteHistogram(out, "doorcloser_close_late_milliseconds", "Wall-clock time a close ran later than intended.", closeLateMillis);
+
+        return out.toString();
+    }
+
+    // Writes the text to a temporary file next to the target and moves it into
+    // place, so a collector never reads half a file. Safe off the main thread.
+    static void WriteFile(File file, String text) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        File temp = new File(parent, file.getName() + ".tmp");
+        Files.write(temp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void Header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void WriteHistogram(StringBuilder out, String name, String help, Histogram histogram) {
+        Header(out, name, "histogram", help);
+
+        long cumulative = 0;
+        for (int bucket = 0; bucket < histogram.Buckets(); bucket++) {
+            cumulative += histogram.CountIn(bucket);
+            long bound = histogram.UpperBound(bucket);
+            out.append(name).append("_bucket{le=\"").append(bound == Long.MAX_VALUE ? "+Inf" : Long.toString(bound)).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+
+        out.append(name).append("_sum ").append(histogram.Sum()).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+
+    private static String Escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
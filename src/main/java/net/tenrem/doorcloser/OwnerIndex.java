@@ -0,0 +1,109 @@
+package net.tenrem.doorcloser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// The pending closes of one shard grouped by the player who opened the door,
+// oldest first, for MaxPendingClosesPerPlayer and for flushing a player's
+// doors when they leave. Closes opened by mobs, other plugins or restored
+// from the journal have no owner and aren't in here.
+//
+// Entries are linked into their owner's list, so adding, removing and
+// finding a player's oldest close don't search. A player's entry goes away
+// with their last close, so this only holds players with doors open.
+final class OwnerIndex {
+    // one player's closes, as an intrusive list
+    static final class Owner {
+        final UUID id;
+        PendingClose oldest;
+        PendingClose newest;
+        int size;
+
+        Owner(UUID id) {
+            this.id = id;
+        }
+    }
+
+    private final Map<UUID, Owner> _byPlayer = new HashMap<>();
+
+    // how many closes the player has pending in this shard
+    int SizeOf(UUID player) {
+        Owner owner = _byPlayer.get(player);
+        return owner != null ? owner.size : 0;
+    }
+
+    PendingClose OldestOf(UUID player) {
+        Owner owner = _byPlayer.get(player);
+        return owner != null ? owner.oldest : null;
+    }
+
+    void Add(PendingClose close, UUID player) {
+        Owner owner = _byPlayer.get(player);
+        if (owner == null) {
+            owner = new Owner(player);
+            _byPlayer.put(player, owner);
+        }
+
+        close.owner = owner;
+        close.ownerOlder = owner.newest;
+        close.ownerNewer = null;
+        if (owner.newest != null) {
+            owner.newest.ownerNewer = close;
+        } else {
+            owner.oldest = close;
+        }
+        owner.newest = close;
+        owner.size++;
+    }
+
+    void Remove(PendingClose close) {
+        Owner owner = close.owner;
+        if (owner == null) {
+            return;
+        }
+
+        if (close.ownerOlder != null) {
+            close.ownerOlder.ownerNewer = close.ownerNewer;
+        } else {
+            owner.oldest = close.ownerNewer;
+        }
+
+        if (close.ownerNewer != null) {
+            close.ownerNewer.ownerOlder = close.ownerOlder;
+        } else {
+            owner.newest = close.ownerOlder;
+        }
+
+        close.owner = null;
+        close.ownerOlder = null;
+        close.ownerNewer = null;
+
+        if (--owner.size == 0) {
+            _byPlayer.remove(owner.id);
+        }
+    }
+
+    // Takes all of a player's closes out of the index and hands them to the
+    // visitor, oldest first. The visitor may do anything with them, including
+    // forgetting them
+    void RemovePlayer(UUID player, Consumer<PendingClose> visitor) {
+        Owner owner = _byPlayer.remove(player);
+        if (owner == null) {
+            return;
+        }
+
+        PendingClose close = owner.oldest;
+        while (close != null) {
+            PendingClose next = close.ownerNewer;
+
+            close.owner = null;
+            close.ownerOlder = null;
+            close.ownerNewer = null;
+            visitor.accept(close);
+
+            close = next;
+        }
+    }
+}
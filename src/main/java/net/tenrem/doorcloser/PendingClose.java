@@ -0,0 +1,103 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+
+// A door (or gate / trap door) that is waiting to be closed. Instances are
+// linked directly into the CloseWheel slot lists, their chunk's shard list and
+// the PendingIndex age list so they can be removed without searching.
+final class PendingClose {
+    // far enough in the past that "now - NEVER" can't overflow
+    static final long NEVER = Long.MIN_VALUE / 2;
+
+    final Block door1Block;
+    final Block pairedDoorBlock;
+
+    // packed world + position of door1Block, see BlockKey
+    final long key;
+
+    // the shard this close lives in, set when it's tracked
+    CloseShard shard;
+
+    // tick (in CloseWheel time) at which the close should happen
+    long deadline;
+
+    // System.nanoTime() at which the close should happen, if the server kept
+    // up 20 ticks a second. Only used to measure lateness
+    long dueNanos;
+
+    // whether the door was open before the player clicked it, i.e. the state
+    // the close puts it back into
+    boolean targetOpen;
+
+    // if true the close sets the door to targetOpen instead of toggling it.
+    // Used for closes restored from the journal, where the door may have been
+    // changed since
+    boolean restoreTarget;
+
+    // CloseMode Proximity: when due, the close only happens if no player is
+    // near, otherwise it's checked again a little later
+    boolean proximity;
+
+    // opened by a mob rather than a player; counts against
+    // MaxEntityClosesPerChunk
+    boolean byEntity;
+
+    // what the door was when it was opened, so a reload can drop closes for
+    // materials that left scope. null for closes another plugin asked for or
+    // restored from the journal, which a reload leaves alone
+    Material material;
+
+    // wheel tick the current delay was counted from, so a reload can re-time
+    // the close to a new Time. NEVER if the delay didn't come from the
+    // settings
+    long delayStart = NEVER;
+
+    // wheel tick of the last player toggle, for the click debounce window
+    long lastToggleTick = NEVER;
+
+    // fixed one second window for the per-block toggle rate limit
+    long rateWindowStart = NEVER;
+    int rateCount;
+
+    // intrusive links for the wheel slot this entry currently sits in
+    PendingClose wheelPrev;
+    PendingClose wheelNext;
+    int wheelLevel = -1;
+    int wheelSlot = -1;
+
+    // intrusive links for the CloseQueue, while due but waiting for budget
+    PendingClose queuePrev;
+    PendingClose queueNext;
+    boolean queued;
+
+    // intrusive links for the ChunkShards list of the chunk door1Block is in
+    PendingClose chunkPrev;
+    PendingClose chunkNext;
+    ChunkShards.ChunkShard chunkShard;
+
+    // true while the close is due but its chunk is unloaded. Parked closes
+    // are not in the wheel; they're replayed when the chunk loads again
+    boolean parked;
+
+    // intrusive links for PendingIndex insertion order
+    PendingClose ageOlder;
+    PendingClose ageNewer;
+
+    // the player who opened the door and the links in their OwnerIndex
+    // list. null for closes nobody owns
+    OwnerIndex.Owner owner;
+    PendingClose ownerOlder;
+    PendingClose ownerNewer;
+
+    PendingClose(Block door1Block, Block pairedDoorBlock, long key) {
+        this.door1Block = door1Block;
+        this.pairedDoorBlock = pairedDoorBlock;
+        this.key = key;
+    }
+
+    // true while the close sits in a wheel slot
+    boolean IsScheduled() {
+        return wheelLevel >= 0;
+    }
+}
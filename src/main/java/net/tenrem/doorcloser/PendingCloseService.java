@@ -0,0 +1,93 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Collection;
+
+// The DoorCloserService the plugin registers, on top of the listener's
+// pending closes.
+final class PendingCloseService implements DoorCloserService {
+    // whole chunks, top to bottom
+    private static final int MIN_Y = -(1 << 9);
+    private static final int MAX_Y = (1 << 9) - 1;
+
+    private final InteractListener _listener;
+
+    PendingCloseService(InteractListener listener) {
+        _listener = listener;
+    }
+
+    @Override
+    public boolean IsPending(Block door) {
+        return _listener.PendingAt(door) != null;
+    }
+
+    @Override
+    public long TicksUntilClose(Block door) {
+        PendingClose pending = _listener.PendingAt(door);
+        return pending != null ? _listener.TicksUntil(pending) : -1;
+    }
+
+    @Override
+    public boolean Cancel(Block door) {
+        PendingClose pending = _listener.PendingAt(door);
+        if (pending == null) {
+            return false;
+        }
+
+        _listener.CancelFromPlugin(pending);
+        return true;
+    }
+
+    @Override
+    public boolean Schedule(Block door, long delayTicks) {
+        return _listener.ScheduleFromPlugin(door, delayTicks);
+    }
+
+    @Override
+    public int Schedule(Collection<Block> doors, long delayTicks) {
+        int scheduled = 0;
+        for (Block door : doors) {
+            if (_listener.ScheduleFromPlugin(door, delayTicks)) {
+                scheduled++;
+            }
+        }
+        return scheduled;
+    }
+
+    @Override
+    public int CancelInChunk(Chunk chunk) {
+        int x = chunk.getX() << 4;
+        int z = chunk.getZ() << 4;
+        return CancelInArea(chunk.getWorld(), x, MIN_Y, z, x + 15, MAX_Y, z + 15);
+    }
+
+    @Override
+    public int CancelInArea(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        Collection<PendingClose> found = _listener.PendingIn(world, minX, minY, minZ, maxX, maxY, maxZ);
+        for (PendingClose pending : found) {
+            _listener.CancelFromPlugin(pending);
+        }
+        return found.size();
+    }
+
+    @Override
+    public int RescheduleInChunk(Chunk chunk, long delayTicks) {
+        int x = chunk.getX() << 4;
+        int z = chunk.getZ() << 4;
+        return RescheduleInArea(chunk.getWorld(), x, MIN_Y, z, x + 15, MAX_Y, z + 15, delayTicks);
+    }
+
+    @Override
+    public int RescheduleInArea(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, long delayTicks) {
+        int moved = 0;
+        for (PendingClose pending : _listener.PendingIn(world, minX, minY, minZ, maxX, maxY, maxZ)) {
+            if (_listener.Reschedule(pending, delayTicks)) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,91 @@
+package net.tenrem.doorcloser;
+
+import java.util.function.Consumer;
+
+// Index of pending closes by packed block key (see BlockKey). Entries are
+// also kept in insertion order, so when MaxPendingCloses is reached the
+// caller can evict the oldest one.
+final class PendingIndex {
+    private final LongObjectMap<PendingClose> _byKey;
+
+    // insertion order, oldest first
+    private PendingClose _oldest;
+    private PendingClose _newest;
+
+    // expectedSize only pre-sizes the table; the index grows as needed
+    PendingIndex(int expectedSize) {
+        _byKey = new LongObjectMap<>(Math.max(expectedSize, 1));
+    }
+
+    int Size() {
+        return _byKey.Size();
+    }
+
+    PendingClose Get(long key) {
+        return _byKey.Get(key);
+    }
+
+    PendingClose Oldest() {
+        return _oldest;
+    }
+
+    // walks all entries, oldest first. The visitor must not modify the index
+    void ForEach(Consumer<PendingClose> visitor) {
+        for (PendingClose close = _oldest; close != null; close = close.ageNewer) {
+            visitor.accept(close);
+        }
+    }
+
+    // Adds a close. The caller is responsible for keeping under MaxPendingCloses.
+    void Put(PendingClose close) {
+        PendingClose previous = _byKey.Put(close.key, close);
+        if (previous != null) {
+            UnlinkAge(previous);
+        }
+
+        close.ageOlder = _newest;
+        close.ageNewer = null;
+        if (_newest != null) {
+            _newest.ageNewer = close;
+        } else {
+            _oldest = close;
+        }
+        _newest = close;
+    }
+
+    PendingClose Remove(long key) {
+        PendingClose close = _byKey.Remove(key);
+        if (close != null) {
+            UnlinkAge(close);
+        }
+        return close;
+    }
+
+    // removes the entry only if it is still the one indexed under its key
+    boolean Remove(PendingClose close) {
+        if (_byKey.Get(close.key) != close) {
+            return false;
+        }
+
+        _byKey.Remove(close.key);
+        UnlinkAge(close);
+        return true;
+    }
+
+    private void UnlinkAge(PendingClose close) {
+        if (close.ageOlder != null) {
+            close.ageOlder.ageNewer = close.ageNewer;
+        } else if (_oldest == close) {
+            _oldest = close.ageNewer;
+        }
+
+        if (close.ageNewer != null) {
+            close.ageNewer.ageOlder = close.ageOlder;
+        } else if (_newest == close) {
+            _newest = close.ageOlder;
+        }
+
+        close.ageOlder = null;
+        close.ageNewer = null;
+    }
+}
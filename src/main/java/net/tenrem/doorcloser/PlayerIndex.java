@@ -0,0 +1,268 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Where every online player is, bucketed by chunk. Positions are only updated
+// when a player crosses a block boundary, so finding the players near a door
+// looks at a handful of chunk buckets instead of every player online.
+final class PlayerIndex implements Listener {
+    static final class Tracked {
+        final Player player;
+        int worldIndex = WorldIndex.NO_INDEX;
+        int x;
+        int y;
+        int z;
+
+        // intrusive links for the chunk bucket the player is in
+        Tracked prev;
+        Tracked next;
+        Bucket bucket;
+        int bucketWorld;
+        long bucketKey;
+
+        Tracked(Player player) {
+            this.player = player;
+        }
+    }
+
+    static final class Bucket {
+        Tracked head;
+        int size;
+    }
+
+    // told whenever a tracked player moves into a different block
+    interface BlockChangeListener {
+        void PlayerMovedBlock(Player player, int worldIndex, int x, int y, int z);
+    }
+
+    private final WorldIndex _worldIndex;
+    private BlockChangeListener _blockChangeListener;
+    private final Map<UUID, Tracked> _byPlayer = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private final LongObjectMap<Bucket>[] _bucketsByWorld = new LongObjectMap[BlockKey.MAX_WORLDS];
+
+    PlayerIndex(WorldIndex worldIndex) {
+        _worldIndex = worldIndex;
+    }
+
+    // picks up players that were already online, e.g. after /reload
+    void AddOnlinePlayers(Iterable<? extends Player> players) {
+        for (Player player : players) {
+            Update(player, player.getLocation());
+        }
+    }
+
+    int Size() {
+        return _byPlayer.size();
+    }
+
+    void SetBlockChangeListener(BlockChangeListener listener) {
+        _blockChangeListener = listener;
+    }
+
+    // true if any player is within radius blocks of the given block position.
+    // Stops at the first one found
+    boolean AnyNear(int worldIndex, int x, int y, int z, int radius) {
+        LongObjectMap<Bucket> buckets = _bucketsByWorld[worldIndex];
+        if (buckets == null) {
+            return false;
+        }
+
+        long radiusSquared = (long)radius * radius;
+
+        for (int chunkX = (x - radius) >> 4; chunkX <= (x + radius) >> 4; chunkX++) {
+            for (int chunkZ = (z - radius) >> 4; chunkZ <= (z + radius) >> 4; chunkZ++) {
+                Bucket bucket = buckets.Get(ChunkShards.ChunkKey(chunkX, chunkZ));
+                if (bucket == null) {
+                    continue;
+                }
+
+                for (Tracked tracked = bucket.head; tracked != null; tracked = tracked.next) {
+                    long dx = tracked.x - x;
+                    long dy = tracked.y - y;
+                    long dz = tracked.z - z;
+
+                    if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    // Calls the visitor for every player within radius blocks of the given
+    // block position, using their last known block position.
+    void ForEachNear(int worldIndex, int x, int y, int z, int radius, Consumer<Player> visitor) {
+        LongObjectMap<Bucket> buckets = _bucketsByWorld[worldIndex];
+        if (buckets == null) {
+            return;
+        }
+
+        long radiusSquared = (long)radius * radius;
+
+        for (int chunkX = (x - radius) >> 4; chunkX <= (x + radius) >> 4; chunkX++) {
+            for (int chunkZ = (z - radius) >> 4; chunkZ <= (z + radius) >> 4; chunkZ++) {
+                Bucket bucket = buckets.Get(ChunkShards.ChunkKey(chunkX, chunkZ));
+                if (bucket == null) {
+                    continue;
+                }
+
+                for (Tracked tracked = bucket.head; tracked != null; tracked = tracked.next) {
+                    long dx = tracked.x - x;
+                    long dy = tracked.y - y;
+                    long dz = tracked.z - z;
+
+                    if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                        visitor.accept(tracked.player);
+                    }
+                }
+            }
+        }
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerJoin(PlayerJoinEvent e) {
+        Update(e.getPlayer(), e.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerQuit(PlayerQuitEvent e) {
+        Tracked tracked = _byPlayer.remove(e.getPlayer().getUniqueId());
+        if (tracked != null) {
+            Unlink(tracked);
+        }
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void playerMove(PlayerMoveEvent e) {
+        Update(e.getPlayer(), e.getTo());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void playerTeleport(PlayerTeleportEvent e) {
+        Update(e.getPlayer(), e.getTo());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerChangedWorld(PlayerChangedWorldEvent e) {
+        Update(e.getPlayer(), e.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void playerRespawn(PlayerRespawnEvent e) {
+        Update(e.getPlayer(), e.getRespawnLocation());
+    }
+
+    private void Update(Player player, Location to) {
+        if (to == null || to.getWorld() == null) {
+            return;
+        }
+
+        Tracked tracked = _byPlayer.get(player.getUniqueId());
+        if (tracked == null) {
+            tracked = new Tracked(player);
+            _byPlayer.put(player.getUniqueId(), tracked);
+        }
+
+        int x = to.getBlockX();
+        int y = to.getBlockY();
+        int z = to.getBlockZ();
+        int worldIndex = _worldIndex.IndexOf(to.getWorld());
+
+        // most move events stay inside the same block
+        if (tracked.bucket != null && worldIndex == tracked.worldIndex && x == tracked.x && y == tracked.y && z == tracked.z) {
+            return;
+        }
+
+        boolean sameChunk = tracked.bucket != null && worldIndex == tracked.worldIndex
+            && (x >> 4) == (tracked.x >> 4) && (z >> 4) == (tracked.z >> 4);
+
+        tracked.x = x;
+        tracked.y = y;
+        tracked.z = z;
+
+        if (!sameChunk) {
+            Unlink(tracked);
+            tracked.worldIndex = worldIndex;
+
+            if (worldIndex != WorldIndex.NO_INDEX) {
+                Link(tracked);
+            }
+        }
+
+        if (_blockChangeListener != null && worldIndex != WorldIndex.NO_INDEX) {
+            _blockChangeListener.PlayerMovedBlock(player, worldIndex, x, y, z);
+        }
+    }
+
+    private void Link(Tracked tracked) {
+        LongObjectMap<Bucket> buckets = _bucketsByWorld[tracked.worldIndex];
+        if (buckets == null) {
+            buckets = new LongObjectMap<>(64);
+            _bucketsByWorld[tracked.worldIndex] = buckets;
+        }
+
+        long chunkKey = ChunkShards.ChunkKey(tracked.x >> 4, tracked.z >> 4);
+        Bucket bucket = buckets.Get(chunkKey);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.Put(chunkKey, bucket);
+        }
+
+        tracked.prev = null;
+        tracked.next = bucket.head;
+        if (bucket.head != null) {
+            bucket.head.prev = tracked;
+        }
+        bucket.head = tracked;
+        bucket.size++;
+        tracked.bucket = bucket;
+        tracked.bucketWorld = tracked.worldIndex;
+        tracked.bucketKey = chunkKey;
+    }
+
+    private void Unlink(Tracked tracked) {
+        Bucket bucket = tracked.bucket;
+        if (bucket == null) {
+            return;
+        }
+
+        if (tracked.prev != null) {
+            tracked.prev.next = tracked.next;
+        } else {
+            bucket.head = tracked.next;
+        }
+        if (tracked.next != null) {
+            tracked.next.prev = tracked.prev;
+        }
+
+        tracked.prev = null;
+        tracked.next = null;
+        tracked.bucket = null;
+
+        if (--bucket.size == 0) {
+            LongObjectMap<Bucket> buckets = _bucketsByWorld[tracked.bucketWorld];
+            if (buckets != null && buckets.Get(tracked.bucketKey) == bucket) {
+                buckets.Remove(tracked.bucketKey);
+            }
+        }
+    }
+}
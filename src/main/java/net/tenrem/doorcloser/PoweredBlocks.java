@@ -0,0 +1,125 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Powerable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The doors, gates and trap doors that redstone is currently holding, by
+// packed block key (doors by their lower half). Filled from
+// BlockRedstoneEvent, so asking whether a door is powered is a set lookup
+// instead of a scan of its neighbours with isBlockPowered().
+//
+// An entry can go stale if the block is broken or moved without a redstone
+// event, so a hit is checked against the block's own powered state and
+// dropped if that disagrees. Misses are never checked.
+//
+// Split into lock stripes by region section like DoorPairs, so Folia region
+// threads rarely wait on each other.
+final class PoweredBlocks {
+    private static final int STRIPES = 64;
+
+    // a stripe is simply cleared if it grows past this. Only stale entries
+    // get it anywhere near that
+    private static final int STRIPE_LIMIT = 4096;
+
+    private static final Object POWERED = new Object();
+
+    @SuppressWarnings("unchecked")
+    private final LongObjectMap<Object>[] _stripes = new LongObjectMap[STRIPES];
+
+    // set once anything has been powered, so servers without redstone on
+    // their doors never take a lock
+    private volatile boolean _anyPowered;
+
+    PoweredBlocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            _stripes[i] = new LongObjectMap<>(16);
+        }
+    }
+
+    boolean IsEmpty() {
+        return !_anyPowered;
+    }
+
+    void Add(long key) {
+        LongObjectMap<Object> stripe = StripeOf(key);
+
+        synchronized (stripe) {
+            if (stripe.Size() >= STRIPE_LIMIT) {
+                stripe.Clear();
+            }
+            stripe.Put(key, POWERED);
+        }
+        _anyPowered = true;
+    }
+
+    void Remove(long key) {
+        if (!_anyPowered) {
+            return;
+        }
+
+        LongObjectMap<Object> stripe = StripeOf(key);
+
+        synchronized (stripe) {
+            stripe.Remove(key);
+        }
+    }
+
+    // True if redstone is holding the block at key. block is only read when
+    // the key is in the set, to confirm the entry is still good
+    boolean IsPowered(Block block, long key) {
+        if (!_anyPowered || key == BlockKey.NONE) {
+            return false;
+        }
+
+        LongObjectMap<Object> stripe = StripeOf(key);
+
+        synchronized (stripe) {
+            if (!stripe.ContainsKey(key)) {
+                return false;
+            }
+        }
+
+        BlockData data = block.getBlockData();
+        if (data instanceof Powerable && ((Powerable)data).isPowered()) {
+            return true;
+        }
+
+        Remove(key);
+        return false;
+    }
+
+    // forgets a world that's going away, so its index can be reused
+    void RemoveWorld(int worldIndex) {
+        if (!_anyPowered) {
+            return;
+        }
+
+        List<Long> keys = new ArrayList<>();
+
+        for (LongObjectMap<Object> stripe : _stripes) {
+            synchronized (stripe) {
+                stripe.ForEach((key, value) -> {
+                    if (BlockKey.WorldIndex(key) == worldIndex) {
+                        keys.add(key);
+                    }
+                });
+
+                for (long key : keys) {
+                    stripe.Remove(key);
+                }
+            }
+            keys.clear();
+        }
+    }
+
+    // neighbouring blocks mostly share a stripe, since it's picked by region section
+    private LongObjectMap<Object> StripeOf(long key) {
+        int sectionX = ChunkShards.ChunkX(key) >> CloseShard.SECTION_SHIFT;
+        int sectionZ = ChunkShards.ChunkZ(key) >> CloseShard.SECTION_SHIFT;
+        return _stripes[(sectionX * 31 + sectionZ) & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,147 @@
+package net.tenrem.doorcloser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The cuboid regions from the Regions section of the config, bucketed into a
+// grid of CELL_BLOCKS wide columns per world. Every cell a region touches
+// holds it, sorted best first, so finding the region for a block is one map
+// lookup and a check of the few regions in that cell, however many regions
+// there are. Built once per config read and never changed after, so it can be
+// read from any thread.
+final class RegionIndex {
+    // cells are 4x4 chunks
+    private static final int CELL_SHIFT = 6;
+
+    // regions touching more cells than this (a whole world, say) aren't put
+    // in the grid one cell at a time; they're merged into the cells that
+    // exist and checked on their own everywhere else
+    private static final int MAX_CELLS_PER_REGION = 4096;
+
+    static final class Region {
+        final String name;
+        final String world;
+        final int minX, minY, minZ;
+        final int maxX, maxY, maxZ;
+        final int priority;
+
+        // position in the config, so equal priorities go to the first listed
+        final int order;
+
+        final Settings settings;
+
+        Region(String name, String world, int[] min, int[] max, int priority, int order, Settings settings) {
+            this.name = name;
+            this.world = world;
+            this.minX = Math.min(min[0], max[0]);
+            this.minY = Math.min(min[1], max[1]);
+            this.minZ = Math.min(min[2], max[2]);
+            this.maxX = Math.max(min[0], max[0]);
+            this.maxY = Math.max(min[1], max[1]);
+            this.maxZ = Math.max(min[2], max[2]);
+            this.priority = priority;
+            this.order = order;
+            this.settings = settings;
+        }
+
+        boolean Contains(int x, int y, int z) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+        }
+
+        long CellCount() {
+            return ((long)(maxX >> CELL_SHIFT) - (minX >> CELL_SHIFT) + 1) * ((long)(maxZ >> CELL_SHIFT) - (minZ >> CELL_SHIFT) + 1);
+        }
+    }
+
+    private static final Comparator<Region> BEST_FIRST =
+        Comparator.comparingInt((Region region) -> -region.priority).thenComparingInt(region -> region.order);
+
+    private static final Region[] NO_REGIONS = new Region[0];
+
+    // one world's regions
+    private static final class WorldGrid {
+        final LongObjectMap<Region[]> cells = new LongObjectMap<>(64);
+
+        // the regions too big for the grid, for cells the grid doesn't have
+        Region[] large = NO_REGIONS;
+    }
+
+    private final Map<String, WorldGrid> _byWorld = new HashMap<>();
+    private int _size;
+
+    RegionIndex(List<Region> regions) {
+        Map<String, List<Region>> largeByWorld = new HashMap<>();
+        Map<String, LongObjectMap<List<Region>>> cellsByWorld = new HashMap<>();
+
+        for (Region region : regions) {
+            _size++;
+
+            if (region.CellCount() > MAX_CELLS_PER_REGION) {
+                largeByWorld.computeIfAbsent(region.world, name -> new ArrayList<>()).add(region);
+                continue;
+            }
+
+            LongObjectMap<List<Region>> cells = cellsByWorld.computeIfAbsent(region.world, name -> new LongObjectMap<>(64));
+            for (int cellX = region.minX >> CELL_SHIFT; cellX <= region.maxX >> CELL_SHIFT; cellX++) {
+                for (int cellZ = region.minZ >> CELL_SHIFT; cellZ <= region.maxZ >> CELL_SHIFT; cellZ++) {
+                    long cellKey = ChunkShards.ChunkKey(cellX, cellZ);
+                    List<Region> inCell = cells.Get(cellKey);
+                    if (inCell == null) {
+                        inCell = new ArrayList<>(2);
+                        cells.Put(cellKey, inCell);
+                    }
+                    inCell.add(region);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Region>> entry : largeByWorld.entrySet()) {
+            Region[] large = entry.getValue().toArray(NO_REGIONS);
+            Arrays.sort(large, BEST_FIRST);
+            Grid(entry.getKey()).large = large;
+        }
+
+        for (Map.Entry<String, LongObjectMap<List<Region>>> entry : cellsByWorld.entrySet()) {
+            WorldGrid grid = Grid(entry.getKey());
+
+            entry.getValue().ForEach((cellKey, inCell) -> {
+                inCell.addAll(Arrays.asList(grid.large));
+                Region[] sorted = inCell.toArray(NO_REGIONS);
+                Arrays.sort(sorted, BEST_FIRST);
+                grid.cells.Put(cellKey, sorted);
+            });
+        }
+    }
+
+    int Size() {
+        return _size;
+    }
+
+    // the best region containing the block, or null if it's in none
+    Region Find(String world, int x, int y, int z) {
+        WorldGrid grid = _byWorld.get(world);
+        if (grid == null) {
+            return null;
+        }
+
+        Region[] candidates = grid.cells.Get(ChunkShards.ChunkKey(x >> CELL_SHIFT, z >> CELL_SHIFT));
+        if (candidates == null) {
+            candidates = grid.large;
+        }
+
+        for (Region region : candidates) {
+            if (region.Contains(x, y, z)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    private WorldGrid Grid(String world) {
+        return _byWorld.computeIfAbsent(world, name -> new WorldGrid());
+    }
+}
@@ -0,0 +1,41 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+// Where and when the plugin runs its work. On a normal server everything runs
+// on the main thread through the Bukkit scheduler. On a region-threaded
+// (Folia) server, work on blocks has to run on the thread of the region that
+// owns them, and there is no main thread at all.
+abstract class Scheduling {
+    // a repeating task that can be stopped
+    interface Task {
+        void Cancel();
+    }
+
+    static Scheduling For(Plugin plugin) {
+        if (FoliaScheduling.IsAvailable()) {
+            return new FoliaScheduling(plugin);
+        }
+        return new BukkitScheduling(plugin);
+    }
+
+    // true if block work must go through RunAt / RunRepeatingAt, i.e. there
+    // is more than one thread ticking the world
+    abstract boolean IsRegionized();
+
+    // every tick, on the main thread (Folia: the global region thread)
+    abstract Task RunRepeating(Runnable task);
+
+    // every tick, on whichever thread owns the given chunk
+    abstract Task RunRepeatingAt(World world, int chunkX, int chunkZ, Runnable task);
+
+    // once, as soon as possible, on whichever thread owns the given chunk
+    abstract void RunAt(World world, int chunkX, int chunkZ, Runnable task);
+
+    // once, on the main thread (Folia: the global region thread)
+    abstract void RunGlobal(Runnable task);
+
+    // once, off any tick thread
+    abstract void RunAsync(Runnable task);
+}
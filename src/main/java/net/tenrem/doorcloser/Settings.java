@@ -2,116 +2,485 @@ package net.tenrem.doorcloser;
 
 import java.util.ArrayList;
 import org.bukkit.Material;
-import org.bukkit.configuration.file.FileConfiguration;
-
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Door;
+import org.bukkit.block.data.type.Gate;
+import org.bukkit.block.data.type.TrapDoor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
-public class Settings {
+// An immutable snapshot of the configuration. Readers grab Settings.Current()
+// once and use that; a reload parses a whole new snapshot off the main thread
+// and swaps it in with a single volatile write, so nobody ever sees a half
+// updated scope list.
+//
+// Some values can be overridden per world (Worlds) and per cuboid region
+// (Regions). Each of those gets its own snapshot, built along with the global
+// one; At() picks the one for a block.
+public final class Settings {
     final static String configFileGeneratedByVersion_Key = "GeneratedByVersion";
     final static String configFileGeneratedByVersion_Default = "unknown (pre 1.0.12)";
-    public static String configFileGeneratedByVersion = configFileGeneratedByVersion_Default;
+    public final String configFileGeneratedByVersion;
 
     final static String ignoreCanceledEvents_Key = "IgnoreCanceledEvents";
     final static boolean ignoreCanceledEvents_Default = true;
-    public static boolean ignoreCanceledEvents = ignoreCanceledEvents_Default;
+    public final boolean ignoreCanceledEvents;
 
     final static String secondsToRemainOpen_Key = "Time";
     final static float secondsToRemainOpen_Default = 3.0f;
-    public static float secondsToRemainOpen = secondsToRemainOpen_Default;
+    public final float secondsToRemainOpen;
+
+    // CloseMode is "Time" or "Proximity"; only the latter is kept
+    final static String closeMode_Key = "CloseMode";
+    final static String closeMode_Default = "Time";
+    public final boolean closeByProximity;
+
+    final static String proximityRadius_Key = "ProximityRadius";
+    final static int proximityRadius_Default = 3;
+    public final int proximityRadius;
+
+    final static String autoOpen_Key = "AutoOpen";
+    final static boolean autoOpen_Default = false;
+    public final boolean autoOpen;
 
+    final static String autoOpenRadius_Key = "AutoOpenRadius";
+    final static int autoOpenRadius_Default = 2;
+    public final int autoOpenRadius;
 
     final static String synchronizeDoubleDoor_Key = "SynchronizeDoubleDoor";
     final static boolean synchronizeDoubleDoor_Default = true;
-    public static boolean synchronizeDoubleDoor = synchronizeDoubleDoor_Default;
+    public final boolean synchronizeDoubleDoor;
 
     final static String playSound_Key = "PlaySound";
     final static boolean playSound_Default = true;
-    public static boolean playSound = playSound_Default;
+    public final boolean playSound;
+
+    final static String soundRadius_Key = "SoundRadius";
+    final static int soundRadius_Default = 16;
+    public final int soundRadius;
+
+
+    final static String closeEntityDoors_Key = "CloseEntityDoors";
+    final static boolean closeEntityDoors_Default = false;
+    public final boolean closeEntityDoors;
+
+    final static String maxEntityClosesPerChunk_Key = "MaxEntityClosesPerChunk";
+    final static int maxEntityClosesPerChunk_Default = 16;
+    public final int maxEntityClosesPerChunk;
 
+    final static String leavePoweredDoors_Key = "LeavePoweredDoors";
+    final static boolean leavePoweredDoors_Default = true;
+    public final boolean leavePoweredDoors;
 
     final static String ignoreIfInCreative_Key = "IgnoreIfInCreative";
     final static boolean ignoreIfInCreative_Default = true;
-    public static boolean ignoreIfInCreative = ignoreIfInCreative_Default;
+    public final boolean ignoreIfInCreative;
 
     final static String ignoreIfSneaking_Key = "IgnoreIfSneaking";
     final static boolean ignoreIfSneaking_Default = false;
-    public static boolean ignoreIfSneaking = ignoreIfSneaking_Default;
+    public final boolean ignoreIfSneaking;
 
     final static String bypassPermission_Key = "BypassPermission";
     final static String bypassPermission_Default = "doorcloser.bypass";
-    public static String bypassPermission = bypassPermission_Default;
+    public final String bypassPermission;
+
+    final static String bypassCacheSeconds_Key = "BypassCacheSeconds";
+    final static int bypassCacheSeconds_Default = 30;
+    public final int bypassCacheSeconds;
+
+    final static String maxPendingCloses_Key = "MaxPendingCloses";
+    final static int maxPendingCloses_Default = 100000;
+    public final int maxPendingCloses;
+
+    final static String maxPendingClosesPerPlayer_Key = "MaxPendingClosesPerPlayer";
+    final static int maxPendingClosesPerPlayer_Default = 64;
+    public final int maxPendingClosesPerPlayer;
+
+    final static String closeWhenPlayerLeaves_Key = "CloseWhenPlayerLeaves";
+    final static boolean closeWhenPlayerLeaves_Default = true;
+    public final boolean closeWhenPlayerLeaves;
+
+    final static String closeOnChunkUnload_Key = "CloseOnChunkUnload";
+    final static boolean closeOnChunkUnload_Default = true;
+    public final boolean closeOnChunkUnload;
+
+    final static String maxBlockUpdatesPerTick_Key = "MaxBlockUpdatesPerTick";
+    final static int maxBlockUpdatesPerTick_Default = 0;
+    public final int maxBlockUpdatesPerTick;
+
+    final static String maxBudgetDelaySeconds_Key = "MaxBudgetDelaySeconds";
+    final static float maxBudgetDelaySeconds_Default = 2.0f;
+    public final float maxBudgetDelaySeconds;
+
+    final static String skipBlockPhysics_Key = "SkipBlockPhysics";
+    final static boolean skipBlockPhysics_Default = false;
+    public final boolean skipBlockPhysics;
+
+    final static String loadShedding_Key = "LoadShedding";
+    final static boolean loadShedding_Default = true;
+    public final boolean loadShedding;
+
+    final static String shedSoundsMspt_Key = "ShedSoundsMspt";
+    final static int shedSoundsMspt_Default = 55;
+    public final int shedSoundsMspt;
+
+    final static String stretchDelaysMspt_Key = "StretchDelaysMspt";
+    final static int stretchDelaysMspt_Default = 70;
+    public final int stretchDelaysMspt;
+
+    final static String stretchDelaysFactor_Key = "StretchDelaysFactor";
+    final static float stretchDelaysFactor_Default = 2.0f;
+    public final float stretchDelaysFactor;
+
+    final static String batchClosesMspt_Key = "BatchClosesMspt";
+    final static int batchClosesMspt_Default = 100;
+    public final int batchClosesMspt;
+
+    final static String batchCloseTicks_Key = "BatchCloseTicks";
+    final static int batchCloseTicks_Default = 10;
+    public final int batchCloseTicks;
+
+    final static String persistPendingCloses_Key = "PersistPendingCloses";
+    final static boolean persistPendingCloses_Default = true;
+    public final boolean persistPendingCloses;
+
+    final static String journalReplayTicks_Key = "JournalReplayTicks";
+    final static int journalReplayTicks_Default = 100;
+    public final int journalReplayTicks;
+
+    final static String journalCompactSeconds_Key = "JournalCompactSeconds";
+    final static int journalCompactSeconds_Default = 60;
+    public final int journalCompactSeconds;
+
+    final static String debounceTicks_Key = "DebounceTicks";
+    final static int debounceTicks_Default = 10;
+    public final int debounceTicks;
+
+    final static String maxTogglesPerSecond_Key = "MaxTogglesPerSecond";
+    final static int maxTogglesPerSecond_Default = 4;
+    public final int maxTogglesPerSecond;
+
+    final static String metricsFile_Key = "MetricsFile";
+    final static String metricsFile_Default = "";
+    public final String metricsFile;
+
+    final static String metricsFileSeconds_Key = "MetricsFileSeconds";
+    final static int metricsFileSeconds_Default = 15;
+    public final int metricsFileSeconds;
+
+    final static String debugTrace_Key = "DebugTrace";
+    final static boolean debugTrace_Default = true;
+    public final boolean debugTrace;
 
     final static String trapDoorsInScope_Key = "TrapDoorBlocks";
-    public static List<Material> trapDoorsInScope = new ArrayList<Material>();
+    public final List<Material> trapDoorsInScope;
 
     final static String gatesInScope_Key = "GateBlocks";
-    public static List<Material> gatesInScope = new ArrayList<Material>();
+    public final List<Material> gatesInScope;
 
     final static String doorsInScope_Key = "DoorBlocks";
-    public static List<Material> doorsInScope = new ArrayList<Material>();
+    public final List<Material> doorsInScope;
+
+    // Worlds: world name -> overrides. Regions: region name -> World, Min and
+    // Max corners as [x, y, z], optional Priority, and overrides
+    final static String worlds_Key = "Worlds";
+    final static String regions_Key = "Regions";
+    final static String regionWorld_Key = "World";
+    final static String regionMin_Key = "Min";
+    final static String regionMax_Key = "Max";
+    final static String regionPriority_Key = "Priority";
+
+    // the world or region this snapshot is for, empty for the global one
+    public final String scopeName;
+
+    // only set on the global snapshot
+    private final Map<String, Settings> worldSettings;
+    private final RegionIndex regions;
+    private final boolean hasOverrides;
+
+    // What kind of openable block each Material is, indexed by ordinal, with
+    // KIND_IN_SCOPE set for the ones listed in the config. Built once per
+    // config read so the interact handler can classify a click with a single
+    // array lookup instead of scanning the lists above.
+    public static final byte KIND_NONE = 0;
+    public static final byte KIND_DOOR = 1;
+    public static final byte KIND_GATE = 2;
+    public static final byte KIND_TRAPDOOR = 3;
+    public static final byte KIND_IN_SCOPE = 4;
+    private static final byte KIND_MASK = 3;
+
+    private static final Material[] allMaterials = Material.values();
+    private final byte[] materialKinds;
+
+    // the kind of every material before scope is applied. Worked out once,
+    // since it never changes and every world and region needs it
+    private static byte[] naturalKinds;
 
 
     public static DoorCloserPlugin ThisPlugin;
 
+    private static volatile Settings current;
 
-    public static void Reload() {
-        if (ThisPlugin != null) {
-            ThisPlugin.reloadConfig();
-            ReadConfigValues();
-            ThisPlugin.getLogger().info("Settings reloaded from configuration file.");
+
+    // the snapshot currently in effect. Read it once per event and hold on
+    // to it, rather than calling this for every value
+    public static Settings Current() {
+        return current;
+    }
+
+    public byte KindOf(Material material) {
+        return materialKinds[material.ordinal()];
+    }
+
+    public static byte KindOnly(byte kind) {
+        return (byte)(kind & KIND_MASK);
+    }
+
+    public static boolean IsInScope(byte kind) {
+        return (kind & KIND_IN_SCOPE) != 0;
+    }
+
+    // Whether closes scheduled under other would be in scope and timed the
+    // same under these, so a reload can leave them be. Never true when
+    // either has world or region overrides; those need a door by door look
+    boolean SchedulesLike(Settings other) {
+        return !hasOverrides && !other.hasOverrides
+            && secondsToRemainOpen == other.secondsToRemainOpen
+            && closeByProximity == other.closeByProximity
+            && closeEntityDoors == other.closeEntityDoors
+            && Arrays.equals(materialKinds, other.materialKinds);
+    }
+
+    // The settings for a block: those of the highest priority region it's in,
+    // else its world's, else these. Costs one field read when there are no
+    // overrides, and a grid cell lookup when there are regions.
+    public Settings At(Block block) {
+        if (!hasOverrides) {
+            return this;
+        }
+
+        String world = block.getWorld().getName();
+
+        if (regions != null) {
+            RegionIndex.Region region = regions.Find(world, block.getX(), block.getY(), block.getZ());
+            if (region != null) {
+                return region.settings;
+            }
         }
+
+        Settings forWorld = worldSettings.get(world);
+        return forWorld != null ? forWorld : this;
     }
 
+
+    // Re-reads config.yml on an async thread and swaps the new snapshot in.
+    // onSwapped gets (old, new) back on the main thread (Folia: the global
+    // region thread) afterwards, for anything that has to react to the change.
+    public static void ReloadAsync(BiConsumer<Settings, Settings> onSwapped) {
+        if (ThisPlugin == null) {
+            return;
+        }
+
+        DoorCloserPlugin plugin = ThisPlugin;
+        Scheduling scheduling = plugin.GetScheduling();
+
+        scheduling.RunAsync(() -> {
+            Settings loaded = new Settings(LoadConfigFile(plugin), plugin.getLogger());
+            Settings old = current;
+            current = loaded;
+
+            plugin.getLogger().info("Settings reloaded from configuration file.");
+
+            if (onSwapped != null && plugin.isEnabled()) {
+                scheduling.RunGlobal(() -> onSwapped.accept(old, loaded));
+            }
+        });
+    }
+
+    // initial, synchronous read at startup
     public static void ReadConfigValues() {
         if (ThisPlugin == null)
             return;
+
+        current = new Settings(LoadConfigFile(ThisPlugin), ThisPlugin.getLogger());
+    }
+
+    // same, from a configuration that's already loaded. Used by the
+    // benchmarks, which have no plugin or data folder
+    static void ReadConfigValues(ConfigurationSection config, Logger logger) {
+        current = new Settings(config, logger);
+    }
+
+    // Loads config.yml into a private configuration object, with the copy
+    // bundled in the jar as defaults, the same as JavaPlugin.reloadConfig()
+    // but without touching the plugin's shared config.
+    private static YamlConfiguration LoadConfigFile(DoorCloserPlugin plugin) {
         // save the default config, if it's not already present
-        ThisPlugin.saveDefaultConfig();
+        plugin.saveDefaultConfig();
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(new File(plugin.getDataFolder(), "config.yml"));
 
-        FileConfiguration config = ThisPlugin.getConfig();
-        Logger logger = ThisPlugin.getLogger();
+        InputStream defaults = plugin.getResource("config.yml");
+        if (defaults != null) {
+            config.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8)));
+        }
+
+        return config;
+    }
+
+    private Settings(ConfigurationSection config, Logger logger) {
+        this(config, new ConfigurationSection[0], "", logger);
+    }
+
+    // overrides are the world and region sections that apply, most specific
+    // first. Only the values config.yml lists as overridable are read from
+    // them; everything else always comes from the global config
+    private Settings(ConfigurationSection config, ConfigurationSection[] overrides, String scopeName, Logger logger) {
+        boolean global = overrides.length == 0;
+        this.scopeName = scopeName;
 
         config.addDefault(configFileGeneratedByVersion_Key, configFileGeneratedByVersion_Default);
         config.addDefault(secondsToRemainOpen_Key, secondsToRemainOpen_Default);
+        config.addDefault(closeMode_Key, closeMode_Default);
+        config.addDefault(proximityRadius_Key, proximityRadius_Default);
+        config.addDefault(autoOpen_Key, autoOpen_Default);
+        config.addDefault(autoOpenRadius_Key, autoOpenRadius_Default);
         config.addDefault(synchronizeDoubleDoor_Key, synchronizeDoubleDoor_Default);
         config.addDefault(playSound_Key, playSound_Default);
+        config.addDefault(soundRadius_Key, soundRadius_Default);
+        config.addDefault(closeEntityDoors_Key, closeEntityDoors_Default);
+        config.addDefault(maxEntityClosesPerChunk_Key, maxEntityClosesPerChunk_Default);
+        config.addDefault(leavePoweredDoors_Key, leavePoweredDoors_Default);
         config.addDefault(ignoreIfInCreative_Key, ignoreIfInCreative_Default);
         config.addDefault(ignoreIfSneaking_Key, ignoreIfSneaking_Default);
         config.addDefault(bypassPermission_Key, bypassPermission_Default);
+        config.addDefault(bypassCacheSeconds_Key, bypassCacheSeconds_Default);
+        config.addDefault(maxPendingCloses_Key, maxPendingCloses_Default);
+        config.addDefault(maxPendingClosesPerPlayer_Key, maxPendingClosesPerPlayer_Default);
+        config.addDefault(closeWhenPlayerLeaves_Key, closeWhenPlayerLeaves_Default);
+        config.addDefault(closeOnChunkUnload_Key, closeOnChunkUnload_Default);
+        config.addDefault(maxBlockUpdatesPerTick_Key, maxBlockUpdatesPerTick_Default);
+        config.addDefault(maxBudgetDelaySeconds_Key, maxBudgetDelaySeconds_Default);
+        config.addDefault(skipBlockPhysics_Key, skipBlockPhysics_Default);
+        config.addDefault(loadShedding_Key, loadShedding_Default);
+        config.addDefault(shedSoundsMspt_Key, shedSoundsMspt_Default);
+        config.addDefault(stretchDelaysMspt_Key, stretchDelaysMspt_Default);
+        config.addDefault(stretchDelaysFactor_Key, stretchDelaysFactor_Default);
+        config.addDefault(batchClosesMspt_Key, batchClosesMspt_Default);
+        config.addDefault(batchCloseTicks_Key, batchCloseTicks_Default);
+        config.addDefault(persistPendingCloses_Key, persistPendingCloses_Default);
+        config.addDefault(journalReplayTicks_Key, journalReplayTicks_Default);
+        config.addDefault(journalCompactSeconds_Key, journalCompactSeconds_Default);
+        config.addDefault(debounceTicks_Key, debounceTicks_Default);
+        config.addDefault(maxTogglesPerSecond_Key, maxTogglesPerSecond_Default);
+        config.addDefault(metricsFile_Key, metricsFile_Default);
+        config.addDefault(metricsFileSeconds_Key, metricsFileSeconds_Default);
+        config.addDefault(debugTrace_Key, debugTrace_Default);
 
         // read settings
 
-        Settings.configFileGeneratedByVersion = config.getString(configFileGeneratedByVersion_Key);
-        Settings.ignoreCanceledEvents = config.getBoolean(ignoreCanceledEvents_Key);
+        this.configFileGeneratedByVersion = config.getString(configFileGeneratedByVersion_Key);
+        this.ignoreCanceledEvents = config.getBoolean(ignoreCanceledEvents_Key);
 
-        Settings.secondsToRemainOpen = config.getInt(secondsToRemainOpen_Key);
+        this.secondsToRemainOpen = From(config, overrides, secondsToRemainOpen_Key).getInt(secondsToRemainOpen_Key);
 
-        Settings.synchronizeDoubleDoor = config.getBoolean(synchronizeDoubleDoor_Key);
+        String closeMode = config.getString(closeMode_Key, closeMode_Default);
+        if (!closeMode.equalsIgnoreCase("Time") && !closeMode.equalsIgnoreCase("Proximity")) {
+            if (global) {
+                logger.warning("CloseMode must be Time or Proximity. Using " + closeMode_Default + ".");
+            }
+            closeMode = closeMode_Default;
+        }
+        this.closeByProximity = closeMode.equalsIgnoreCase("Proximity");
+        this.proximityRadius = Math.max(1, config.getInt(proximityRadius_Key));
+        this.autoOpen = config.getBoolean(autoOpen_Key);
+        this.autoOpenRadius = Math.max(1, config.getInt(autoOpenRadius_Key));
 
-        Settings.playSound = config.getBoolean(playSound_Key);
+        this.synchronizeDoubleDoor = From(config, overrides, synchronizeDoubleDoor_Key).getBoolean(synchronizeDoubleDoor_Key);
 
-        Settings.ignoreIfInCreative = config.getBoolean(ignoreIfInCreative_Key);
-        Settings.ignoreIfSneaking = config.getBoolean(ignoreIfSneaking_Key);
-        Settings.bypassPermission = config.getString(bypassPermission_Key);
+        this.playSound = From(config, overrides, playSound_Key).getBoolean(playSound_Key);
+        this.soundRadius = Math.max(0, config.getInt(soundRadius_Key));
 
-        // the actual blocks to interact with
-        List<String> trapDoorsInScopeStrings = (List<String>) config.getStringList(trapDoorsInScope_Key);
-        List<String> gatesInScopeStrings = (List<String>) config.getStringList(gatesInScope_Key);
-        List<String> doorsInScopeStrings = (List<String>) config.getStringList(doorsInScope_Key);
+        this.closeEntityDoors = config.getBoolean(closeEntityDoors_Key);
+        this.maxEntityClosesPerChunk = Math.max(1, config.getInt(maxEntityClosesPerChunk_Key));
+        this.leavePoweredDoors = config.getBoolean(leavePoweredDoors_Key);
 
+        this.ignoreIfInCreative = From(config, overrides, ignoreIfInCreative_Key).getBoolean(ignoreIfInCreative_Key);
+        this.ignoreIfSneaking = From(config, overrides, ignoreIfSneaking_Key).getBoolean(ignoreIfSneaking_Key);
+        this.bypassPermission = config.getString(bypassPermission_Key);
+        this.bypassCacheSeconds = Math.max(0, config.getInt(bypassCacheSeconds_Key));
 
-        trapDoorsInScope.clear();
-        gatesInScope.clear();
-        doorsInScope.clear();
+        int maxPendingCloses = config.getInt(maxPendingCloses_Key);
+        if (maxPendingCloses < 1) {
+            if (global) {
+                logger.warning("MaxPendingCloses must be at least 1. Using default of " + maxPendingCloses_Default + ".");
+            }
+            maxPendingCloses = maxPendingCloses_Default;
+        }
+        this.maxPendingCloses = maxPendingCloses;
+        this.maxPendingClosesPerPlayer = Math.max(0, config.getInt(maxPendingClosesPerPlayer_Key));
+        this.closeWhenPlayerLeaves = config.getBoolean(closeWhenPlayerLeaves_Key);
+
+        this.closeOnChunkUnload = config.getBoolean(closeOnChunkUnload_Key);
+
+        this.maxBlockUpdatesPerTick = Math.max(0, config.getInt(maxBlockUpdatesPerTick_Key));
+        this.maxBudgetDelaySeconds = (float)Math.max(0, config.getDouble(maxBudgetDelaySeconds_Key));
+        this.skipBlockPhysics = config.getBoolean(skipBlockPhysics_Key);
+
+        // each shedding step needs at least the load of the one before it
+        this.loadShedding = config.getBoolean(loadShedding_Key);
+        this.shedSoundsMspt = Math.max(1, config.getInt(shedSoundsMspt_Key));
+        this.stretchDelaysMspt = Math.max(this.shedSoundsMspt, config.getInt(stretchDelaysMspt_Key));
+        this.stretchDelaysFactor = (float)Math.max(1, config.getDouble(stretchDelaysFactor_Key));
+        this.batchClosesMspt = Math.max(this.stretchDelaysMspt, config.getInt(batchClosesMspt_Key));
+        this.batchCloseTicks = Math.max(1, config.getInt(batchCloseTicks_Key));
+
+        this.persistPendingCloses = config.getBoolean(persistPendingCloses_Key);
+        this.journalReplayTicks = Math.max(1, config.getInt(journalReplayTicks_Key));
+        this.journalCompactSeconds = Math.max(1, config.getInt(journalCompactSeconds_Key));
+        this.debounceTicks = Math.max(0, From(config, overrides, debounceTicks_Key).getInt(debounceTicks_Key));
+        this.maxTogglesPerSecond = Math.max(0, From(config, overrides, maxTogglesPerSecond_Key).getInt(maxTogglesPerSecond_Key));
+        this.metricsFile = config.getString(metricsFile_Key, metricsFile_Default);
+        this.metricsFileSeconds = Math.max(1, config.getInt(metricsFileSeconds_Key));
+        this.debugTrace = config.getBoolean(debugTrace_Key);
+
+        // the actual blocks to interact with. A list is only checked where
+        // it's set, so an unknown name isn't reported again for every region
+        ConfigurationSection trapDoorsFrom = From(config, overrides, trapDoorsInScope_Key);
+        ConfigurationSection gatesFrom = From(config, overrides, gatesInScope_Key);
+        ConfigurationSection doorsFrom = From(config, overrides, doorsInScope_Key);
+
+        List<String> trapDoorsInScopeStrings = (List<String>) trapDoorsFrom.getStringList(trapDoorsInScope_Key);
+        List<String> gatesInScopeStrings = (List<String>) gatesFrom.getStringList(gatesInScope_Key);
+        List<String> doorsInScopeStrings = (List<String>) doorsFrom.getStringList(doorsInScope_Key);
+
+        String where = global ? "" : " for " + scopeName;
+
+
+        List<Material> trapDoorsInScope = new ArrayList<Material>();
+        List<Material> gatesInScope = new ArrayList<Material>();
+        List<Material> doorsInScope = new ArrayList<Material>();
 
         for (String val : trapDoorsInScopeStrings) {
             Material m = Material.matchMaterial(val);
 
             if (m != null) {
-                Settings.trapDoorsInScope.add(m);
-            } else {
-                ThisPlugin.getLogger().warning("Unexpected value '" + val + "' in config trap door list.");
+                trapDoorsInScope.add(m);
+            } else if (global || trapDoorsFrom == overrides[0]) {
+                logger.warning("Unexpected value '" + val + "' in config trap door list" + where + ".");
             }
         }
 
@@ -119,9 +488,9 @@ public class Settings {
             Material m = Material.matchMaterial(val);
 
             if (m != null) {
-                Settings.gatesInScope.add(m);
-            } else {
-                ThisPlugin.getLogger().warning("Unexpected value '" + val + "' in config gate list.");
+                gatesInScope.add(m);
+            } else if (global || gatesFrom == overrides[0]) {
+                logger.warning("Unexpected value '" + val + "' in config gate list" + where + ".");
             }
         }
 
@@ -129,29 +498,164 @@ public class Settings {
             Material m = Material.matchMaterial(val);
 
             if (m != null) {
-                Settings.doorsInScope.add(m);
-            } else {
-                ThisPlugin.getLogger().warning("Unexpected value '" + val + "' in config door list.");
+                doorsInScope.add(m);
+            } else if (global || doorsFrom == overrides[0]) {
+                logger.warning("Unexpected value '" + val + "' in config door list" + where + ".");
             }
         }
 
 
-        // log the read settings out to the server log
+        this.trapDoorsInScope = Collections.unmodifiableList(trapDoorsInScope);
+        this.gatesInScope = Collections.unmodifiableList(gatesInScope);
+        this.doorsInScope = Collections.unmodifiableList(doorsInScope);
+        this.materialKinds = BuildMaterialKinds(trapDoorsInScope, gatesInScope, doorsInScope);
 
-        if (Settings.trapDoorsInScope.isEmpty() && Settings.gatesInScope.isEmpty() && Settings.doorsInScope.isEmpty()) {
-            ThisPlugin.getLogger().warning("No doors, gates, or trap doors configured to auto-close. Is the config file up to date?" );
-            ThisPlugin.getLogger().warning("The DoorCloser plugin will still run and consume resources.");
-            ThisPlugin.getLogger().warning("Update the configuration file and then use the /dcreload command to reload it.");
+        // the world and region snapshots, built from the global one's config
+        if (global) {
+            this.worldSettings = ReadWorlds(config, logger);
+            this.regions = ReadRegions(config, logger);
+            this.hasOverrides = !worldSettings.isEmpty() || regions != null;
         } else {
-            //ThisPlugin.getLogger().info("Count of trap doors in scope: " + Settings.trapDoorsInScope.size());
-            //ThisPlugin.getLogger().info("Count of gate types in scope: " + Settings.gatesInScope.size());
-            //ThisPlugin.getLogger().info("Count of door types in scope: " + Settings.doorsInScope.size());
+            this.worldSettings = Collections.emptyMap();
+            this.regions = null;
+            this.hasOverrides = false;
+            return;
+        }
+
+        // log the read settings out to the server log
+
+        if (hasOverrides) {
+            logger.info("Using overrides for " + worldSettings.size() + " world(s) and " + (regions != null ? regions.Size() : 0) + " region(s).");
+        }
+
+        if (trapDoorsInScope.isEmpty() && gatesInScope.isEmpty() && doorsInScope.isEmpty()) {
+            logger.warning("No doors, gates, or trap doors configured to auto-close. Is the config file up to date?" );
+            logger.warning("The DoorCloser plugin will still run and consume resources.");
+            logger.warning("Update the configuration file and then use the /dcreload command to reload it.");
+        }
+    }
+
+    // the most specific of the override sections that sets key, else the
+    // global config
+    private static ConfigurationSection From(ConfigurationSection config, ConfigurationSection[] overrides, String key) {
+        for (ConfigurationSection override : overrides) {
+            if (override != null && override.isSet(key)) {
+                return override;
+            }
+        }
+        return config;
+    }
+
+    private static Map<String, Settings> ReadWorlds(ConfigurationSection config, Logger logger) {
+        ConfigurationSection worlds = config.getConfigurationSection(worlds_Key);
+        if (worlds == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Settings> byWorld = new HashMap<>();
+        for (String world : worlds.getKeys(false)) {
+            ConfigurationSection section = worlds.getConfigurationSection(world);
+            if (section == null) {
+                logger.warning("Worlds entry '" + world + "' has no settings in it. Ignoring it.");
+                continue;
+            }
+
+            byWorld.put(world, new Settings(config, new ConfigurationSection[] { section }, "world " + world, logger));
+        }
+        return byWorld;
+    }
+
+    private static RegionIndex ReadRegions(ConfigurationSection config, Logger logger) {
+        ConfigurationSection regions = config.getConfigurationSection(regions_Key);
+        if (regions == null) {
+            return null;
         }
 
-        //ThisPlugin.getLogger().info("Seconds to remain open: " + Settings.secondsToRemainOpen);
-        //ThisPlugin.getLogger().info("Ignore if in creative mode: " + Settings.ignoreIfInCreative);
-        //ThisPlugin.getLogger().info("Ignore if sneaking: " + Settings.ignoreIfSneaking);
-        //ThisPlugin.getLogger().info("Play sound: " + Settings.playSound);
-        //ThisPlugin.getLogger().info("Config file generated by version: " + Settings.configFileGeneratedByVersion);
+        ConfigurationSection worlds = config.getConfigurationSection(worlds_Key);
+        List<RegionIndex.Region> read = new ArrayList<>();
+
+        for (String name : regions.getKeys(false)) {
+            ConfigurationSection section = regions.getConfigurationSection(name);
+            String world = section != null ? section.getString(regionWorld_Key) : null;
+            int[] min = section != null ? ReadCorner(section, regionMin_Key) : null;
+            int[] max = section != null ? ReadCorner(section, regionMax_Key) : null;
+
+            if (world == null || min == null || max == null) {
+                logger.warning("Region '" + name + "' needs a World, and Min and Max corners as [x, y, z]. Ignoring it.");
+                continue;
+            }
+
+            // a region falls back to its world's overrides, then the global ones
+            ConfigurationSection worldSection = worlds != null ? worlds.getConfigurationSection(world) : null;
+            Settings settings = new Settings(config, new ConfigurationSection[] { section, worldSection }, "region " + name, logger);
+
+            read.add(new RegionIndex.Region(name, world, min, max, section.getInt(regionPriority_Key, 0), read.size(), settings));
+        }
+
+        return read.isEmpty() ? null : new RegionIndex(read);
+    }
+
+    private static int[] ReadCorner(ConfigurationSection section, String key) {
+        List<Integer> values = section.getIntegerList(key);
+        if (values.size() != 3) {
+            return null;
+        }
+        return new int[] { values.get(0), values.get(1), values.get(2) };
+    }
+
+    private static byte[] BuildMaterialKinds(List<Material> trapDoorsInScope, List<Material> gatesInScope, List<Material> doorsInScope) {
+        byte[] kinds = NaturalKinds().clone();
+
+        // only mark a material in scope if it's listed under the matching kind,
+        // same as checking the block data type and the list together
+        MarkInScope(kinds, trapDoorsInScope, KIND_TRAPDOOR);
+        MarkInScope(kinds, gatesInScope, KIND_GATE);
+        MarkInScope(kinds, doorsInScope, KIND_DOOR);
+
+        return kinds;
+    }
+
+    private static void MarkInScope(byte[] kinds, List<Material> materials, byte kind) {
+        for (Material m : materials) {
+            if (kinds[m.ordinal()] == kind) {
+                kinds[m.ordinal()] |= KIND_IN_SCOPE;
+            }
+        }
+    }
+
+    private static synchronized byte[] NaturalKinds() {
+        if (naturalKinds == null) {
+            byte[] kinds = new byte[allMaterials.length];
+
+            for (Material m : allMaterials) {
+                kinds[m.ordinal()] = NaturalKindOf(m);
+            }
+            naturalKinds = kinds;
+        }
+        return naturalKinds;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static byte NaturalKindOf(Material material) {
+        if (!material.isBlock() || material.isLegacy()) {
+            return KIND_NONE;
+        }
+
+        BlockData data;
+        try {
+            data = material.createBlockData();
+        } catch (IllegalArgumentException ex) {
+            return KIND_NONE;
+        }
+
+        if (data instanceof Door) {
+            return KIND_DOOR;
+        } else if (data instanceof Gate) {
+            return KIND_GATE;
+        } else if (data instanceof TrapDoor) {
+            return KIND_TRAPDOOR;
+        } else {
+            return KIND_NONE;
+        }
     }
 }
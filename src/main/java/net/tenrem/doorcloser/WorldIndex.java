@@ -0,0 +1,118 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Hands out the small per-world numbers used in BlockKey. Lookups for the same
+// world as last time skip the map entirely, which is the usual case.
+//
+// Safe to use from several region threads: lookups don't lock, and only
+// handing out or freeing an index does.
+final class WorldIndex {
+    public static final int NO_INDEX = -1;
+
+    // the last world looked up and its index, swapped as a pair
+    private static final class Last {
+        final World world;
+        final int index;
+
+        Last(World world, int index) {
+            this.world = world;
+            this.index = index;
+        }
+    }
+
+    private static final Last NONE = new Last(null, NO_INDEX);
+
+    private final Map<UUID, Integer> _indexByWorld = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<World> _worlds = new AtomicReferenceArray<>(BlockKey.MAX_WORLDS);
+
+    private volatile Last _last = NONE;
+
+    // returns NO_INDEX if we've run out of world slots
+    int IndexOf(World world) {
+        Last last = _last;
+        if (world == last.world) {
+            return last.index;
+        }
+
+        Integer index = _indexByWorld.get(world.getUID());
+
+        if (index == null) {
+            index = Assign(world);
+            if (index == NO_INDEX) {
+                return NO_INDEX;
+            }
+        }
+
+        // keep the handle current, it can change if the world was reloaded
+        _worlds.set(index, world);
+        _last = new Last(world, index);
+        return index;
+    }
+
+    // like IndexOf, but never hands out a new index
+    int Find(World world) {
+        Last last = _last;
+        if (world == last.world) {
+            return last.index;
+        }
+
+        Integer index = _indexByWorld.get(world.getUID());
+        return index == null ? NO_INDEX : index;
+    }
+
+    // frees the world's index for reuse, e.g. after the world was unloaded
+    synchronized void Release(World world) {
+        Integer index = _indexByWorld.remove(world.getUID());
+
+        if (index != null) {
+            _worlds.set(index, null);
+        }
+
+        if (_last.world == world) {
+            _last = NONE;
+        }
+    }
+
+    // packed key for a block, or BlockKey.NONE if it can't be represented
+    long KeyOf(Block block) {
+        int worldIndex = IndexOf(block.getWorld());
+        int x = block.getX();
+        int y = block.getY();
+        int z = block.getZ();
+
+        if (worldIndex == NO_INDEX || !BlockKey.IsPackable(x, y, z)) {
+            return BlockKey.NONE;
+        }
+
+        return BlockKey.Pack(worldIndex, x, y, z);
+    }
+
+    World WorldAt(int index) {
+        return _worlds.get(index);
+    }
+
+    private synchronized int Assign(World world) {
+        // another thread may have got here first
+        Integer existing = _indexByWorld.get(world.getUID());
+        if (existing != null) {
+            return existing;
+        }
+
+        for (int i = 0; i < _worlds.length(); i++) {
+            if (_worlds.get(i) == null) {
+                _worlds.set(i, world);
+                _indexByWorld.put(world.getUID(), i);
+                return i;
+            }
+        }
+
+        return NO_INDEX;
+    }
+}
@@ -0,0 +1,178 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// What AutoOpen remembers: a door closed by proximity until it opens it
+// again or the chunk unloads, and who protection plugins kept out.
+class AutoOpenTest {
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+    private Player _walker;
+    private Block _gate;
+
+    // where the walker last stood, so each move starts from there
+    private Location _at;
+
+    @BeforeEach
+    void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.closeMode_Key, "Proximity");
+        settings.put(Settings.autoOpen_Key, true);
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        _world = _server.AddWorld("autoopen");
+        _gate = _world.Set(8, 64, 8, Material.OAK_FENCE_GATE);
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserTest");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+        _walker = _server.CreatePlayer("walker");
+        _at = new Location(_world.Handle(), 40.5, 64, 8.5);
+
+        // clicked open with nobody near it, so proximity closes it and
+        // AutoOpen remembers it
+        _listener.blockInteract(new PlayerInteractEvent(_server.CreatePlayer("clicker"), Action.RIGHT_CLICK_BLOCK, null, _gate, BlockFace.NORTH));
+        _world.Toggle(_gate);
+        _server.RunTicks(10);
+    }
+
+    @AfterEach
+    void TearDown() {
+        _server.SetEventListener(null);
+        _listener.CloseAllPending();
+    }
+
+    private void WalkTo(int x) {
+        Location to = new Location(_world.Handle(), x + 0.5, 64, 8.5);
+        _listener.GetPlayerIndex().playerMove(new PlayerMoveEvent(_walker, _at, to));
+        _at = to;
+    }
+
+    @Test
+    void OpenedDoorIsForgottenUntilItClosesAgain() {
+        assertFalse(_world.IsOpen(_gate));
+        assertEquals(1, _listener.GetAutoOpenDoors().Size());
+
+        WalkTo(7);
+        assertTrue(_world.IsOpen(_gate));
+        assertEquals(1, _listener.GetMetrics().doorsAutoOpened.sum());
+        assertEquals(0, _listener.GetAutoOpenDoors().Size());
+
+        // walking off lets it close, and then it's remembered again
+        WalkTo(40);
+        _server.RunTicks(10);
+        assertFalse(_world.IsOpen(_gate));
+        assertEquals(1, _listener.GetAutoOpenDoors().Size());
+
+        WalkTo(9);
+        assertTrue(_world.IsOpen(_gate));
+        assertEquals(2, _listener.GetMetrics().doorsAutoOpened.sum());
+    }
+
+    @Test
+    void ChunkUnloadForgetsItsDoors() {
+        _listener.chunkUnload(new ChunkUnloadEvent(_world.ChunkAt(1, 0)));
+        assertEquals(1, _listener.GetAutoOpenDoors().Size());
+
+        _listener.chunkUnload(new ChunkUnloadEvent(_world.ChunkAt(0, 0)));
+        assertEquals(0, _listener.GetAutoOpenDoors().Size());
+
+        WalkTo(7);
+        assertFalse(_world.IsOpen(_gate));
+    }
+
+    // protection plugins are asked once for a player standing around a door
+    // they may not use, and again once the denial runs out
+    @Test
+    void DenialsAreRememberedForAWhile() {
+        int[] asked = new int[1];
+        _server.SetEventListener(event -> {
+            if (event instanceof PlayerInteractEvent) {
+                asked[0]++;
+                ((PlayerInteractEvent)event).setUseInteractedBlock(Event.Result.DENY);
+            }
+        });
+
+        WalkTo(7);
+        WalkTo(6);
+        WalkTo(7);
+        WalkTo(9);
+        assertEquals(1, asked[0]);
+        assertFalse(_world.IsOpen(_gate));
+
+        _server.RunTicks(100);
+        WalkTo(8);
+        assertEquals(2, asked[0]);
+
+        // allowed now
+        _server.SetEventListener(null);
+        _server.RunTicks(100);
+        WalkTo(7);
+        assertTrue(_world.IsOpen(_gate));
+    }
+
+    // the denial is for that player only
+    @Test
+    void OtherPlayersAreStillAsked() {
+        int[] asked = new int[1];
+        _server.SetEventListener(event -> {
+            if (event instanceof PlayerInteractEvent) {
+                asked[0]++;
+                PlayerInteractEvent check = (PlayerInteractEvent)event;
+                if (check.getPlayer() == _walker) {
+                    check.setUseInteractedBlock(Event.Result.DENY);
+                }
+            }
+        });
+
+        WalkTo(7);
+        assertFalse(_world.IsOpen(_gate));
+
+        Player friend = _server.CreatePlayer("friend");
+        Location from = new Location(_world.Handle(), 40.5, 64, 8.5);
+        _listener.GetPlayerIndex().playerMove(new PlayerMoveEvent(friend, from, new Location(_world.Handle(), 9.5, 64, 8.5)));
+        assertEquals(2, asked[0]);
+        assertTrue(_world.IsOpen(_gate));
+    }
+
+    @Test
+    void FullIndexTurnsDoorsAway() {
+        AutoOpenDoors doors = new AutoOpenDoors();
+        for (int i = 0; i < AutoOpenDoors.LIMIT; i++) {
+            assertTrue(doors.Add(null, null, BlockKey.Pack(0, i, 64, 0)));
+        }
+
+        // one already there is fine, a new one isn't
+        assertTrue(doors.Add(null, null, BlockKey.Pack(0, 0, 64, 0)));
+        assertFalse(doors.Add(null, null, BlockKey.Pack(0, -1, 64, 0)));
+
+        doors.Remove(BlockKey.Pack(0, 5, 64, 0));
+        assertTrue(doors.Add(null, null, BlockKey.Pack(0, -1, 64, 0)));
+        assertEquals(AutoOpenDoors.LIMIT, doors.Size());
+    }
+}
@@ -0,0 +1,331 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The journal file format on a temp folder: what goes in comes back out
+// after a restart, through compactions and a process dying mid-write.
+class CloseJournalTest {
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 48;
+
+    private File _folder;
+    private FakeWorld _world;
+    private CloseJournal _journal;
+
+    @BeforeEach
+    void Setup() throws IOException {
+        FakeServer.Install();
+        _folder = Files.createTempDirectory("doorcloser-journal").toFile();
+        _world = new FakeWorld("journal");
+        _journal = new CloseJournal(_folder, 16);
+        _journal.ReadLive();
+    }
+
+    @AfterEach
+    void TearDown() {
+        _journal.Close();
+        for (File file : _folder.listFiles()) {
+            file.delete();
+        }
+        _folder.delete();
+    }
+
+    private PendingClose Close(int x) {
+        return new PendingClose(_world.Set(x, 64, 0, Material.OAK_FENCE_GATE), null, x);
+    }
+
+    // what a restart reads back
+    private List<CloseJournal.Record> Reopen() throws IOException {
+        _journal.Close();
+        _journal = new CloseJournal(_folder, 16);
+        return _journal.ReadLive();
+    }
+
+    @Test
+    void RecordsRoundTrip() throws IOException {
+        Block lower = _world.Set(1, 64, 2, Material.OAK_DOOR);
+        Block pair = _world.Set(2, 64, 2, Material.OAK_DOOR);
+        PendingClose door = new PendingClose(lower, pair, 1);
+        door.targetOpen = true;
+        door.proximity = true;
+
+        PendingClose gate = Close(-30000000 + 7);
+        gate.byEntity = true;
+
+        _journal.AppendSchedule(door, 123456789L);
+        _journal.AppendSchedule(gate, 42L);
+
+        List<CloseJournal.Record> records = Reopen();
+        assertEquals(2, records.size());
+
+        CloseJournal.Record first = records.get(0);
+        assertEquals(_world.Handle().getUID(), first.WorldId());
+        assertEquals(1, first.x);
+        assertEquals(64, first.y);
+        assertEquals(2, first.z);
+        assertTrue(first.HasPair());
+        assertEquals(2, first.pairX);
+        assertEquals(2, first.pairZ);
+        assertTrue(first.TargetOpen());
+        assertTrue(first.Proximity());
+        assertFalse(first.ByEntity());
+        assertEquals(123456789L, first.deadlineMillis);
+
+        CloseJournal.Record second = records.get(1);
+        assertEquals(-30000000 + 7, second.x);
+        assertFalse(second.HasPair());
+        assertFalse(second.TargetOpen());
+        assertFalse(second.Proximity());
+        assertTrue(second.ByEntity());
+        assertEquals(42L, second.deadlineMillis);
+    }
+
+    @Test
+    void RemovedAndUpdatedClosesAreReplaced() throws IOException {
+        PendingClose[] closes = { Close(0), Close(1), Close(2) };
+        for (PendingClose close : closes) {
+            _journal.AppendSchedule(close, 100);
+        }
+
+        _journal.AppendRemove(closes[0]);
+        closes[1].targetOpen = true;
+        _journal.AppendUpdate(closes[1], 200);
+
+        assertEquals(2, _journal.LiveRecords());
+        assertEquals(3, _journal.DeadRecords());
+
+        // the update goes after the close it replaced
+        List<CloseJournal.Record> records = Reopen();
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(0).x);
+        assertEquals(1, records.get(1).x);
+        assertTrue(records.get(1).TargetOpen());
+        assertEquals(200, records.get(1).deadlineMillis);
+        assertEquals(3, _journal.DeadRecords());
+    }
+
+    @Test
+    void CompactionKeepsOnlyLiveCloses() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            PendingClose close = Close(i);
+            _journal.AppendSchedule(close, i);
+            if (i % 10 != 0) {
+                _journal.AppendRemove(close);
+            }
+        }
+        assertTrue(_journal.NeedsCompaction());
+
+        _journal.Compact();
+        assertEquals(10, _journal.LiveRecords());
+        assertEquals(0, _journal.DeadRecords());
+        assertFalse(_journal.NeedsCompaction());
+
+        // appends carry on in the new file
+        _journal.AppendSchedule(Close(1000), 5);
+
+        List<CloseJournal.Record> records = Reopen();
+        assertEquals(11, records.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i * 10, records.get(i).x);
+            assertEquals(i * 10, records.get(i).deadlineMillis);
+        }
+        assertEquals(1000, records.get(10).x);
+    }
+
+    // a record the process died writing has no op yet, so the log ends
+    // before it
+    @Test
+    void TornRecordEndsTheLog() throws IOException {
+        _journal.AppendSchedule(Close(0), 1);
+        _journal.AppendSchedule(Close(1), 1);
+        _journal.Close();
+
+        File file = new File(_folder, "pending-closes.0.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            int torn = HEADER_SIZE + 2 * RECORD_SIZE;
+            raf.seek(torn + 4);
+            raf.write(ByteBuffer.allocate(RECORD_SIZE - 4).putInt(99).putInt(64).putInt(99).array());
+        }
+
+        _journal = new CloseJournal(_folder, 16);
+        List<CloseJournal.Record> records = _journal.ReadLive();
+        assertEquals(2, records.size());
+
+        // and the next append writes over it
+        _journal.AppendSchedule(Close(2), 1);
+        assertEquals(3, Reopen().size());
+    }
+
+    // a crash part way through writing the compacted file leaves it without
+    // a header, and the old file is used
+    @Test
+    void HalfWrittenCompactionIsIgnored() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            _journal.AppendSchedule(Close(i), i);
+        }
+        _journal.AppendRemove(Close(0));
+        _journal.Compact();
+        _journal.AppendSchedule(Close(5), 5);
+        _journal.Close();
+
+        // the compaction went to the second file; pretend it never finished
+        try (RandomAccessFile raf = new RandomAccessFile(new File(_folder, "pending-closes.1.journal"), "rw")) {
+            raf.writeInt(0);
+        }
+
+        _journal = new CloseJournal(_folder, 16);
+        List<CloseJournal.Record> records = _journal.ReadLive();
+        assertEquals(4, records.size());
+        assertEquals(1, records.get(0).x);
+        assertEquals(4, records.get(3).x);
+    }
+
+    // compactions on another thread while closes come and go; nothing is
+    // lost or brought back
+    @Test
+    void AppendsDuringCompactionSurvive() throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean stop = new AtomicBoolean();
+
+        Thread compactor = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    _journal.Compact();
+                }
+            } catch (Throwable ex) {
+                failure.set(ex);
+            }
+        });
+        compactor.start();
+
+        try {
+            for (int i = 0; i < 20000; i++) {
+                PendingClose close = Close(i % 500);
+                _journal.AppendSchedule(close, i);
+                if (i < 19500) {
+                    _journal.AppendRemove(close);
+                }
+            }
+        } finally {
+            stop.set(true);
+            compactor.join();
+        }
+        assertNull(failure.get());
+
+        List<CloseJournal.Record> records = Reopen();
+        assertEquals(500, records.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, records.get(i).x);
+            assertEquals(19500 + i, records.get(i).deadlineMillis);
+        }
+    }
+
+    // a journal written before deadlines were kept comes back, its closes
+    // due straight away
+    @Test
+    void VersionOneFileIsUpgraded() throws IOException {
+        _journal.Close();
+        for (File file : _folder.listFiles()) {
+            file.delete();
+        }
+
+        long most = _world.Handle().getUID().getMostSignificantBits();
+        long least = _world.Handle().getUID().getLeastSignificantBits();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 3 * 40 + 1);
+        buffer.putInt(0x44434A31).putInt(1).putLong(7);
+        for (int x = 0; x < 3; x++) {
+            byte op = x == 2 ? CloseJournal.OP_REMOVE : CloseJournal.OP_SCHEDULE;
+            int at = x == 2 ? 0 : x;
+            buffer.put(op).put(CloseJournal.FLAG_TARGET_OPEN).putShort((short)0)
+                .putInt(at).putInt(64).putInt(0).putInt(0).putInt(0).putLong(most).putLong(least);
+        }
+        Files.write(new File(_folder, "pending-closes.0.journal").toPath(), buffer.array());
+
+        _journal = new CloseJournal(_folder, 16);
+        List<CloseJournal.Record> records = _journal.ReadLive();
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).x);
+        assertTrue(records.get(0).TargetOpen());
+        assertEquals(0, records.get(0).deadlineMillis);
+
+        // and it stays upgraded
+        _journal.AppendSchedule(Close(5), 9);
+        assertEquals(2, Reopen().size());
+    }
+
+    // A server killed with closes pending: the next start brings them back
+    // with the time they had left and as the kind of close they were
+    @Test
+    void RestartKeepsTheTimeLeft() {
+        _journal.Close();
+        FakeServer server = FakeServer.Install();
+        server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.closeMode_Key, "Proximity");
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        settings.put(Settings.persistPendingCloses_Key, true);
+        Fakes.LoadSettings(settings);
+
+        FakeWorld world = server.AddWorld("restart");
+        Block timed = world.Set(0, 64, 0, Material.OAK_FENCE_GATE);
+        Block moved = world.Set(4, 64, 0, Material.OAK_FENCE_GATE);
+        Block near = world.Set(8, 64, 0, Material.OAK_FENCE_GATE);
+
+        // the plugin's data folder is ours
+        Plugin plugin = server.CreatePlugin(_folder.getName());
+        InteractListener crashed = new InteractListener(plugin, new BukkitScheduling(plugin));
+        crashed.Start();
+
+        int worldIndex = crashed.WorldNumberOf(world.Handle());
+        crashed.ScheduleClose(timed, null, BlockKey.Pack(worldIndex, 0, 64, 0), 60, false);
+        crashed.ScheduleClose(moved, null, BlockKey.Pack(worldIndex, 4, 64, 0), 60, false);
+        crashed.Reschedule(crashed.PendingAt(moved), 300);
+        crashed.blockInteract(new PlayerInteractEvent(server.CreatePlayer("clicker"), Action.RIGHT_CLICK_BLOCK, null, near, BlockFace.NORTH));
+        world.Toggle(near);
+        server.RunTicks(1);
+        assertTrue(crashed.PendingAt(near).proximity);
+
+        server.ClearTasks();
+        InteractListener restarted = new InteractListener(plugin, new BukkitScheduling(plugin));
+        restarted.Start();
+
+        try {
+            // the fake's ticks take no time, so only rounding is lost
+            long timedLeft = restarted.TicksUntil(restarted.PendingAt(timed));
+            long movedLeft = restarted.TicksUntil(restarted.PendingAt(moved));
+            assertTrue(timedLeft > 60 * 20 - 5 && timedLeft <= 60 * 20, "left " + timedLeft);
+            assertTrue(movedLeft > 300 - 5 && movedLeft <= 300, "left " + movedLeft);
+
+            PendingClose proximity = restarted.PendingAt(near);
+            assertTrue(proximity.proximity);
+            assertFalse(restarted.PendingAt(timed).proximity);
+        } finally {
+            restarted.CloseAllPending();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.tenrem.doorcloser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CloseWheelTest {
+    // the tick each close came out of the wheel on
+    private static final class Fired {
+        final PendingClose close;
+        final long tick;
+
+        Fired(PendingClose close, long tick) {
+            this.close = close;
+            this.tick = tick;
+        }
+    }
+
+    private static List<Fired> AdvanceTo(CloseWheel wheel, long tick) {
+        List<Fired> fired = new ArrayList<>();
+        while (wheel.CurrentTick() < tick) {
+            wheel.Advance(close -> fired.add(new Fired(close, wheel.CurrentTick())));
+        }
+        return fired;
+    }
+
+    @Test
+    void FiresEachCloseOnItsDeadline() {
+        CloseWheel wheel = new CloseWheel();
+
+        // either side of every level boundary
+        long[] deadlines = { 1, 2, 63, 64, 65, 4095, 4096, 4097, 262143, 262144, 262145 };
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.Schedule(new PendingClose(null, null, i), deadlines[i]);
+        }
+        assertEquals(deadlines.length, wheel.Size());
+
+        List<Fired> fired = AdvanceTo(wheel, 262145);
+
+        assertEquals(deadlines.length, fired.size());
+        for (Fired f : fired) {
+            assertEquals(deadlines[(int)f.close.key], f.tick);
+        }
+        assertEquals(0, wheel.Size());
+    }
+
+    @Test
+    void OverdueCloseFiresOnTheNextTick() {
+        CloseWheel wheel = new CloseWheel();
+        AdvanceTo(wheel, 100);
+
+        PendingClose close = new PendingClose(null, null, 1);
+        wheel.Schedule(close, 10);
+
+        List<Fired> fired = AdvanceTo(wheel, 101);
+        assertEquals(1, fired.size());
+        assertEquals(101, fired.get(0).tick);
+    }
+
+    @Test
+    void CancelledCloseNeverFires() {
+        CloseWheel wheel = new CloseWheel();
+        PendingClose kept = new PendingClose(null, null, 1);
+        PendingClose cancelled = new PendingClose(null, null, 2);
+        wheel.Schedule(kept, 500);
+        wheel.Schedule(cancelled, 500);
+
+        wheel.Cancel(cancelled);
+        assertFalse(cancelled.IsScheduled());
+        assertEquals(1, wheel.Size());
+
+        // cancelling twice is harmless
+        wheel.Cancel(cancelled);
+        assertEquals(1, wheel.Size());
+
+        List<Fired> fired = AdvanceTo(wheel, 1000);
+        assertEquals(1, fired.size());
+        assertTrue(fired.get(0).close == kept);
+    }
+
+    @Test
+    void RescheduleMovesTheDeadline() {
+        CloseWheel wheel = new CloseWheel();
+        PendingClose close = new PendingClose(null, null, 1);
+        wheel.Schedule(close, 5000);
+        wheel.Schedule(close, 70);
+        assertEquals(1, wheel.Size());
+
+        List<Fired> fired = AdvanceTo(wheel, 6000);
+        assertEquals(1, fired.size());
+        assertEquals(70, fired.get(0).tick);
+    }
+
+    @Test
+    void DrainEmptiesEveryLevel() {
+        CloseWheel wheel = new CloseWheel();
+        for (int i = 0; i < 100; i++) {
+            wheel.Schedule(new PendingClose(null, null, i), 1 + i * 997L);
+        }
+
+        List<PendingClose> drained = new ArrayList<>();
+        wheel.Drain(drained::add);
+
+        assertEquals(100, drained.size());
+        assertEquals(0, wheel.Size());
+        assertTrue(AdvanceTo(wheel, 100000).isEmpty());
+    }
+}
@@ -0,0 +1,132 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Door.Hinge;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// How a double door is written when it closes: through block physics by
+// default, and with SkipBlockPhysics straight into all four halves unless an
+// observer is watching one of them.
+class DoorPhysicsTest {
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+
+    // lower and upper half of the left leaf, then of the right one
+    private Block[] _halves;
+
+    private void Start(boolean skipBlockPhysics) {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        if (skipBlockPhysics) {
+            settings.put(Settings.skipBlockPhysics_Key, true);
+        }
+        settings.put(Settings.playSound_Key, false);
+        Fakes.LoadSettings(settings);
+
+        _world = _server.AddWorld("physics");
+        Block left = _world.PlaceDoor(0, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.LEFT);
+        Block right = _world.PlaceDoor(1, 64, 0, Material.OAK_DOOR, BlockFace.NORTH, Hinge.RIGHT);
+        _halves = new Block[] { left, left.getRelative(BlockFace.UP), right, right.getRelative(BlockFace.UP) };
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserTest");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+    }
+
+    @AfterEach
+    void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    private void Watch(int x, int y, int z, BlockFace facing) {
+        Block observer = _world.Set(x, y, z, Material.OBSERVER);
+        FakeBlockData.Of(FakeBlock.Of(observer).data).facing = facing;
+    }
+
+    // opens every half, has the plugin close the door, and checks they all
+    // ended up shut. Returns the block updates it took
+    private int CloseDoubleDoor() {
+        for (Block half : _halves) {
+            _world.Toggle(half);
+        }
+
+        int before = _world.physicsUpdates;
+        assertTrue(new PendingCloseService(_listener).Schedule(_halves[0], 1));
+        _server.RunTicks(1);
+
+        for (Block half : _halves) {
+            assertFalse(_world.IsOpen(half), half.toString());
+        }
+        return _world.physicsUpdates - before;
+    }
+
+    @Test
+    void PhysicsIsOnByDefault() {
+        Start(false);
+        assertFalse(Settings.Current().skipBlockPhysics);
+
+        // one write per leaf; physics brings the upper halves along
+        assertEquals(2, CloseDoubleDoor());
+        assertEquals(0, _listener.GetMetrics().physicsFallbacks.sum());
+    }
+
+    @Test
+    void SkippingPhysicsWritesAllFourHalves() {
+        Start(true);
+
+        assertEquals(0, CloseDoubleDoor());
+        assertEquals(0, _listener.GetMetrics().physicsFallbacks.sum());
+    }
+
+    // an observer facing a door somewhere else doesn't count
+    @Test
+    void ObserverFacingAwayIsIgnored() {
+        Start(true);
+        Watch(-1, 64, 0, BlockFace.WEST);
+
+        assertEquals(0, CloseDoubleDoor());
+        assertEquals(0, _listener.GetMetrics().physicsFallbacks.sum());
+    }
+
+    @Test
+    void ObserverOnALowerHalfGetsItsUpdate() {
+        Start(true);
+        Watch(0, 64, 1, BlockFace.NORTH);
+
+        assertEquals(1, CloseDoubleDoor());
+        assertEquals(1, _listener.GetMetrics().physicsFallbacks.sum());
+    }
+
+    @Test
+    void ObserverOnAnUpperHalfGetsItsUpdate() {
+        Start(true);
+        Watch(2, 65, 0, BlockFace.WEST);
+
+        assertEquals(1, CloseDoubleDoor());
+        assertEquals(1, _listener.GetMetrics().physicsFallbacks.sum());
+    }
+
+    // the half above a door is looked at from the top, not through the door
+    @Test
+    void ObserverAboveTheDoorGetsItsUpdate() {
+        Start(true);
+        Watch(0, 66, 0, BlockFace.DOWN);
+
+        assertEquals(1, CloseDoubleDoor());
+        assertEquals(1, _listener.GetMetrics().physicsFallbacks.sum());
+    }
+}
@@ -0,0 +1,255 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OwnerIndexTest {
+    private final UUID _alice = UUID.randomUUID();
+    private final UUID _bob = UUID.randomUUID();
+
+    private static PendingClose[] Closes(int count) {
+        PendingClose[] closes = new PendingClose[count];
+        for (int i = 0; i < count; i++) {
+            closes[i] = new PendingClose(null, null, i);
+        }
+        return closes;
+    }
+
+    @Test
+    void OldestIsTheFirstAddedThatsLeft() {
+        OwnerIndex owners = new OwnerIndex();
+        PendingClose[] closes = Closes(4);
+        owners.Add(closes[0], _alice);
+        owners.Add(closes[1], _bob);
+        owners.Add(closes[2], _alice);
+        owners.Add(closes[3], _alice);
+
+        assertEquals(3, owners.SizeOf(_alice));
+        assertEquals(1, owners.SizeOf(_bob));
+        assertSame(closes[0], owners.OldestOf(_alice));
+
+        owners.Remove(closes[0]);
+        assertSame(closes[2], owners.OldestOf(_alice));
+
+        // taking one out of the middle keeps the order of the rest
+        owners.Add(closes[0], _alice);
+        owners.Remove(closes[3]);
+        assertSame(closes[2], owners.OldestOf(_alice));
+        owners.Remove(closes[2]);
+        assertSame(closes[0], owners.OldestOf(_alice));
+        assertEquals(1, owners.SizeOf(_alice));
+    }
+
+    @Test
+    void PlayerIsForgottenWithTheirLastClose() {
+        OwnerIndex owners = new OwnerIndex();
+        PendingClose close = new PendingClose(null, null, 1);
+        owners.Add(close, _alice);
+        owners.Remove(close);
+
+        assertEquals(0, owners.SizeOf(_alice));
+        assertNull(owners.OldestOf(_alice));
+        assertNull(close.owner);
+
+        // removing a close nobody owns does nothing
+        owners.Remove(close);
+        assertEquals(0, owners.SizeOf(_alice));
+    }
+
+    @Test
+    void RemovePlayerVisitsOldestFirst() {
+        OwnerIndex owners = new OwnerIndex();
+        PendingClose[] closes = Closes(5);
+        for (int i = 0; i < closes.length; i++) {
+            owners.Add(closes[i], i == 2 ? _bob : _alice);
+        }
+
+        List<PendingClose> visited = new ArrayList<>();
+        owners.RemovePlayer(_alice, visited::add);
+
+        assertEquals(4, visited.size());
+        assertSame(closes[0], visited.get(0));
+        assertSame(closes[1], visited.get(1));
+        assertSame(closes[3], visited.get(2));
+        assertSame(closes[4], visited.get(3));
+        assertEquals(0, owners.SizeOf(_alice));
+        assertSame(closes[2], owners.OldestOf(_bob));
+    }
+
+    // past MaxPendingClosesPerPlayer a click closes that player's oldest
+    // door, and nobody else's
+    @Test
+    void OverTheLimitClosesThePlayersOldestDoor() {
+        FakeServer server = FakeServer.Install();
+        server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 300);
+        settings.put(Settings.maxPendingClosesPerPlayer_Key, 2);
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        FakeWorld world = server.AddWorld("quota");
+        Block[] gates = new Block[4];
+        for (int i = 0; i < gates.length; i++) {
+            gates[i] = world.Set(i * 4, 64, 0, Material.OAK_FENCE_GATE);
+        }
+
+        Plugin plugin = server.CreatePlugin("DoorCloserTest");
+        InteractListener listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        listener.Start();
+        Player alice = server.CreatePlayer("alice");
+        Player bob = server.CreatePlayer("bob");
+
+        try {
+            Open(server, world, listener, bob, gates[3]);
+            Open(server, world, listener, alice, gates[0]);
+            Open(server, world, listener, alice, gates[1]);
+            assertEquals(3, listener.GetMetrics().PendingCloses());
+
+            Open(server, world, listener, alice, gates[2]);
+
+            assertEquals(3, listener.GetMetrics().PendingCloses());
+            assertEquals(1, listener.GetMetrics().closesOverQuota.sum());
+            assertFalse(world.IsOpen(gates[0]));
+            assertTrue(world.IsOpen(gates[1]));
+            assertTrue(world.IsOpen(gates[2]));
+            assertTrue(world.IsOpen(gates[3]));
+
+            // and the next one goes after it
+            Open(server, world, listener, alice, gates[0]);
+            assertFalse(world.IsOpen(gates[1]));
+            assertTrue(world.IsOpen(gates[0]));
+            assertEquals(2, listener.GetMetrics().closesOverQuota.sum());
+        } finally {
+            listener.CloseAllPending();
+        }
+    }
+
+    // closes that run or are flushed give the player their places back
+    @Test
+    void LeavingFreesThePlayersPlaces() {
+        FakeServer server = FakeServer.Install();
+        server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 1);
+        settings.put(Settings.maxPendingClosesPerPlayer_Key, 2);
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        FakeWorld world = server.AddWorld("places");
+        Block[] gates = new Block[4];
+        for (int i = 0; i < gates.length; i++) {
+            gates[i] = world.Set(i * 4, 64, 0, Material.OAK_FENCE_GATE);
+        }
+
+        Plugin plugin = server.CreatePlugin("DoorCloserTest");
+        InteractListener listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        listener.Start();
+        Player alice = server.CreatePlayer("alice");
+
+        try {
+            Open(server, world, listener, alice, gates[0]);
+            Open(server, world, listener, alice, gates[1]);
+            listener.playerQuit(new PlayerQuitEvent(alice, null));
+            server.RunTicks(1);
+            assertEquals(0, listener.GetMetrics().PendingCloses());
+
+            Open(server, world, listener, alice, gates[2]);
+            server.RunTicks(20);
+            assertEquals(0, listener.GetMetrics().PendingCloses());
+
+            Open(server, world, listener, alice, gates[3]);
+            Open(server, world, listener, alice, gates[0]);
+            assertEquals(2, listener.GetMetrics().PendingCloses());
+            assertEquals(0, listener.GetMetrics().closesOverQuota.sum());
+        } finally {
+            listener.CloseAllPending();
+        }
+    }
+
+    // On Folia the limit counts the player's doors in every region section,
+    // but only closes one from the section they're in
+    @Test
+    void FoliaLimitCountsEverySection() {
+        FakeServer server = FakeServer.Install();
+        server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 300);
+        settings.put(Settings.maxPendingClosesPerPlayer_Key, 2);
+        settings.put(Settings.maxTogglesPerSecond_Key, 0);
+        Fakes.LoadSettings(settings);
+
+        int section = 16 << CloseShard.SECTION_SHIFT;
+        FakeWorld world = server.AddWorld("sections");
+        Block first = world.Set(0, 64, 0, Material.OAK_FENCE_GATE);
+        Block second = world.Set(section, 64, 0, Material.OAK_FENCE_GATE);
+        Block third = world.Set(section + 4, 64, 0, Material.OAK_FENCE_GATE);
+        Block fourth = world.Set(2 * section, 64, 0, Material.OAK_FENCE_GATE);
+
+        FakeRegionScheduling scheduling = new FakeRegionScheduling(3);
+        InteractListener listener = new InteractListener(server.CreatePlugin("DoorCloserTest"), scheduling);
+        listener.Start();
+        Player alice = server.CreatePlayer("alice");
+
+        try {
+            Open(scheduling, world, listener, alice, first);
+            Open(scheduling, world, listener, alice, second);
+            assertEquals(2, listener.GetMetrics().PendingCloses());
+
+            // the oldest one in this section goes, though the first is older
+            Open(scheduling, world, listener, alice, third);
+            assertEquals(2, listener.GetMetrics().PendingCloses());
+            assertEquals(1, listener.GetMetrics().closesOverQuota.sum());
+            assertTrue(world.IsOpen(first));
+            assertFalse(world.IsOpen(second));
+            assertTrue(world.IsOpen(third));
+
+            // nothing of theirs here to close, so this one isn't taken on
+            Open(scheduling, world, listener, alice, fourth);
+            assertEquals(2, listener.GetMetrics().PendingCloses());
+            assertEquals(1, listener.GetMetrics().closesRefusedOverQuota.sum());
+            assertTrue(world.IsOpen(fourth));
+        } finally {
+            listener.CloseAllPending();
+            scheduling.Shutdown();
+        }
+    }
+
+    // the same on the region thread that owns the gate
+    private static void Open(FakeRegionScheduling scheduling, FakeWorld world, InteractListener listener, Player player, Block gate) {
+        scheduling.RunAt(world.Handle(), gate.getX() >> 4, gate.getZ() >> 4, () -> {
+            listener.blockInteract(new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, gate, BlockFace.NORTH));
+            world.Toggle(gate);
+        });
+        scheduling.RunTicks(1);
+    }
+
+    // a right click, the door opening as the server would, and a tick
+    private static void Open(FakeServer server, FakeWorld world, InteractListener listener, Player player, Block gate) {
+        listener.blockInteract(new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, gate, BlockFace.NORTH));
+        world.Toggle(gate);
+        server.RunTicks(1);
+    }
+}
@@ -0,0 +1,112 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingCloseServiceTest {
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+    private DoorCloserService _service;
+
+    @BeforeEach
+    void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+        Fakes.LoadSettings(new HashMap<>());
+
+        _world = _server.AddWorld("service");
+        Plugin plugin = _server.CreatePlugin("DoorCloserTest");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+        _service = new PendingCloseService(_listener);
+    }
+
+    @AfterEach
+    void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    private long KeyOf(Block block) {
+        return BlockKey.Pack(_listener.WorldNumberOf(_world.Handle()), block.getX(), block.getY(), block.getZ());
+    }
+
+    @Test
+    void ClosesAnOpenDoorOnTime() {
+        Block gate = _world.Set(0, 64, 0, Material.OAK_FENCE_GATE);
+        _world.Toggle(gate);
+
+        assertTrue(_service.Schedule(gate, 10));
+        assertEquals(10, _service.TicksUntilClose(gate));
+
+        _server.RunTicks(9);
+        assertTrue(_world.IsOpen(gate));
+        _server.RunTicks(1);
+        assertFalse(_world.IsOpen(gate));
+        assertFalse(_service.IsPending(gate));
+    }
+
+    @Test
+    void RefusesBlocksThatArentDoors() {
+        assertFalse(_service.Schedule(_world.Set(0, 64, 0, Material.STONE), 10));
+    }
+
+    // a player shut a door that was open before, so its own close would
+    // open it again. The plugin's close has to leave it shut
+    @Test
+    void TakesOverACloseThatWouldReopenTheDoor() {
+        Block gate = _world.Set(0, 64, 0, Material.OAK_FENCE_GATE);
+        PendingClose pending = _listener.ScheduleClose(gate, null, KeyOf(gate), 60, true);
+
+        assertTrue(_service.Schedule(gate, 5));
+        assertSame(pending, _listener.PendingAt(gate));
+        assertFalse(pending.targetOpen);
+        assertTrue(pending.restoreTarget);
+        assertNull(pending.material);
+
+        _server.RunTicks(5);
+        assertFalse(_world.IsOpen(gate));
+        assertFalse(_service.IsPending(gate));
+        assertEquals(1, _listener.GetMetrics().closesFired.sum());
+    }
+
+    @Test
+    void TakesOverAProximityClose() {
+        Block gate = _world.Set(0, 64, 0, Material.OAK_FENCE_GATE);
+        _world.Toggle(gate);
+        PendingClose pending = _listener.ScheduleClose(gate, null, KeyOf(gate), 60, false);
+        pending.proximity = true;
+
+        _service.Schedule(gate, 5);
+        assertFalse(pending.proximity);
+        assertEquals(5, _service.TicksUntilClose(gate));
+
+        _server.RunTicks(5);
+        assertFalse(_world.IsOpen(gate));
+    }
+
+    @Test
+    void CancelLeavesTheDoorAsItIs() {
+        Block gate = _world.Set(0, 64, 0, Material.OAK_FENCE_GATE);
+        _world.Toggle(gate);
+        _service.Schedule(gate, 5);
+
+        assertTrue(_service.Cancel(gate));
+        assertFalse(_service.Cancel(gate));
+
+        _server.RunTicks(10);
+        assertTrue(_world.IsOpen(gate));
+    }
+}
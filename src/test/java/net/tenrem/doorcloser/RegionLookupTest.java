@@ -0,0 +1,151 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Which Time a door gets: the highest priority region it's in, the first
+// listed of equal ones, else its world's, else the global one.
+class RegionLookupTest {
+    private FakeServer _server;
+
+    // in config order, which decides ties
+    private final Map<String, Object> _settings = new LinkedHashMap<>();
+
+    @BeforeEach
+    void Setup() {
+        _server = FakeServer.Install();
+        _settings.clear();
+        _settings.put(Settings.secondsToRemainOpen_Key, 10);
+    }
+
+    private void Region(String name, String world, int[] min, int[] max, int priority, int seconds) {
+        String prefix = Settings.regions_Key + "." + name + ".";
+        _settings.put(prefix + Settings.regionWorld_Key, world);
+        _settings.put(prefix + Settings.regionMin_Key, Arrays.asList(min[0], min[1], min[2]));
+        _settings.put(prefix + Settings.regionMax_Key, Arrays.asList(max[0], max[1], max[2]));
+        _settings.put(prefix + Settings.regionPriority_Key, priority);
+        _settings.put(prefix + Settings.secondsToRemainOpen_Key, seconds);
+    }
+
+    private static float SecondsAt(Settings settings, FakeWorld world, int x, int y, int z) {
+        return settings.At(world.Set(x, y, z, Material.OAK_DOOR)).secondsToRemainOpen;
+    }
+
+    @Test
+    void NoOverridesIsTheGlobalSnapshot() {
+        Fakes.LoadSettings(_settings);
+        Settings settings = Settings.Current();
+        FakeWorld world = _server.AddWorld("plain");
+
+        assertSame(settings, settings.At(world.Set(0, 64, 0, Material.OAK_DOOR)));
+    }
+
+    @Test
+    void WorldOverridesGlobal() {
+        _settings.put(Settings.worlds_Key + ".nether." + Settings.secondsToRemainOpen_Key, 20);
+        Fakes.LoadSettings(_settings);
+        Settings settings = Settings.Current();
+
+        assertEquals(20, SecondsAt(settings, _server.AddWorld("nether"), 0, 64, 0));
+        assertEquals(10, SecondsAt(settings, _server.AddWorld("overworld"), 0, 64, 0));
+    }
+
+    @Test
+    void RegionOverridesWorld() {
+        _settings.put(Settings.worlds_Key + ".town." + Settings.secondsToRemainOpen_Key, 20);
+        Region("square", "town", new int[] { 0, 0, 0 }, new int[] { 99, 255, 99 }, 0, 30);
+        Fakes.LoadSettings(_settings);
+        Settings settings = Settings.Current();
+        FakeWorld town = _server.AddWorld("town");
+
+        assertEquals(30, SecondsAt(settings, town, 0, 64, 0));
+        assertEquals(30, SecondsAt(settings, town, 99, 255, 99));
+        assertEquals(20, SecondsAt(settings, town, 100, 64, 50));
+        assertEquals(20, SecondsAt(settings, town, -1, 64, 50));
+
+        // a region only applies in its own world
+        assertEquals(10, SecondsAt(settings, _server.AddWorld("elsewhere"), 50, 64, 50));
+    }
+
+    @Test
+    void HigherPriorityWinsWhereRegionsOverlap() {
+        Region("low", "city", new int[] { 0, 0, 0 }, new int[] { 199, 255, 199 }, 0, 30);
+        Region("high", "city", new int[] { 100, 0, 100 }, new int[] { 299, 255, 299 }, 5, 40);
+        Fakes.LoadSettings(_settings);
+        Settings settings = Settings.Current();
+        FakeWorld city = _server.AddWorld("city");
+
+        assertEquals(30, SecondsAt(settings, city, 50, 64, 50));
+        assertEquals(40, SecondsAt(settings, city, 150, 64, 150));
+        assertEquals(40, SecondsAt(settings, city, 250, 64, 250));
+        assertEquals(10, SecondsAt(settings, city, 350, 64, 350));
+    }
+
+    @Test
+    void FirstListedWinsOnEqualPriority() {
+        Region("first", "city", new int[] { 0, 0, 0 }, new int[] { 99, 255, 99 }, 2, 30);
+        Region("second", "city", new int[] { 0, 0, 0 }, new int[] { 99, 255, 99 }, 2, 40);
+        Fakes.LoadSettings(_settings);
+
+        assertEquals(30, SecondsAt(Settings.Current(), _server.AddWorld("city"), 50, 64, 50));
+    }
+
+    @Test
+    void RegionHeightIsChecked() {
+        Region("cellar", "mine", new int[] { 0, 0, 0 }, new int[] { 99, 40, 99 }, 0, 30);
+        Fakes.LoadSettings(_settings);
+        Settings settings = Settings.Current();
+        FakeWorld mine = _server.AddWorld("mine");
+
+        assertEquals(30, SecondsAt(settings, mine, 50, 40, 50));
+        assertEquals(10, SecondsAt(settings, mine, 50, 41, 50));
+    }
+
+    // regions too big for the grid are checked on their own, and still lose
+    // to a smaller region of higher priority inside them
+    @Test
+    void LargeRegionsKeepTheirPriority() {
+        Region("everywhere", "huge", new int[] { -100000, 0, -100000 }, new int[] { 100000, 255, 100000 }, 1, 30);
+        Region("spawn", "huge", new int[] { 0, 0, 0 }, new int[] { 99, 255, 99 }, 2, 40);
+        Region("beneath", "huge", new int[] { 200, 0, 200 }, new int[] { 299, 255, 299 }, 0, 50);
+        Fakes.LoadSettings(_settings);
+        Settings settings = Settings.Current();
+        FakeWorld huge = _server.AddWorld("huge");
+
+        assertEquals(40, SecondsAt(settings, huge, 50, 64, 50));
+        assertEquals(30, SecondsAt(settings, huge, 250, 64, 250));
+        assertEquals(30, SecondsAt(settings, huge, -90000, 64, 90000));
+        assertEquals(10, SecondsAt(settings, huge, 100001, 64, 0));
+    }
+
+    @Test
+    void RegionsCanChangeWhatIsInScope() {
+        _settings.put(Settings.regions_Key + ".nogates." + Settings.regionWorld_Key, "farm");
+        _settings.put(Settings.regions_Key + ".nogates." + Settings.regionMin_Key, Arrays.asList(0, 0, 0));
+        _settings.put(Settings.regions_Key + ".nogates." + Settings.regionMax_Key, Arrays.asList(99, 255, 99));
+        _settings.put(Settings.regions_Key + ".nogates." + Settings.gatesInScope_Key, Arrays.asList());
+        Fakes.LoadSettings(_settings);
+        Settings settings = Settings.Current();
+        FakeWorld farm = _server.AddWorld("farm");
+
+        Settings inside = settings.At(farm.Set(50, 64, 50, Material.OAK_FENCE_GATE));
+        Settings outside = settings.At(farm.Set(150, 64, 50, Material.OAK_FENCE_GATE));
+
+        assertFalse(Settings.IsInScope(inside.KindOf(Material.OAK_FENCE_GATE)));
+        assertTrue(Settings.IsInScope(outside.KindOf(Material.OAK_FENCE_GATE)));
+
+        // but what is a door at all never changes
+        assertEquals(Settings.KindOnly(outside.KindOf(Material.OAK_FENCE_GATE)), Settings.KindOnly(inside.KindOf(Material.OAK_FENCE_GATE)));
+        assertEquals(Settings.KIND_NONE, inside.KindOf(Material.STONE));
+    }
+}
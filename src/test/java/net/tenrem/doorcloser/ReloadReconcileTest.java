@@ -0,0 +1,148 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// What /dcreload does to closes already pending: drop the ones whose door
+// left scope and move the rest to the deadline the new Time gives, counted
+// from when they were opened.
+class ReloadReconcileTest {
+    private FakeServer _server;
+    private FakeWorld _world;
+    private InteractListener _listener;
+    private Settings _old;
+    private String _summary;
+
+    @BeforeEach
+    void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 60);
+        Fakes.LoadSettings(settings);
+        _old = Settings.Current();
+
+        _world = _server.AddWorld("reload");
+        Plugin plugin = _server.CreatePlugin("DoorCloserTest");
+        _listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        _listener.Start();
+    }
+
+    @AfterEach
+    void TearDown() {
+        _listener.CloseAllPending();
+    }
+
+    private PendingClose Schedule(int x, Material material) {
+        Block block = _world.Set(x, 64, 0, material);
+        long key = BlockKey.Pack(_listener.WorldNumberOf(_world.Handle()), x, 64, 0);
+        return _listener.ScheduleClose(block, null, key, _old.secondsToRemainOpen, false);
+    }
+
+    private Settings Load(Map<String, Object> settings) {
+        Fakes.LoadSettings(settings);
+        return Settings.Current();
+    }
+
+    @Test
+    void SameTimingLeavesClosesAlone() {
+        PendingClose gate = Schedule(0, Material.OAK_FENCE_GATE);
+        _server.RunTicks(100);
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 60);
+        _listener.SettingsReloaded(_old, Load(settings), summary -> _summary = summary);
+
+        assertEquals("Pending closes unchanged.", _summary);
+        assertEquals(60 * 20, gate.deadline);
+    }
+
+    @Test
+    void ClosesAreRetimedFromWhenTheyOpened() {
+        PendingClose gate = Schedule(0, Material.OAK_FENCE_GATE);
+        PendingClose door = Schedule(4, Material.OAK_DOOR);
+        _server.RunTicks(100);
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 30);
+        _listener.SettingsReloaded(_old, Load(settings), summary -> _summary = summary);
+
+        assertEquals(30 * 20, gate.deadline);
+        assertEquals(30 * 20, door.deadline);
+        assertEquals(2, _listener.GetMetrics().closesRetimedByReload.sum());
+        assertTrue(_summary.startsWith("Pending closes: 2 checked, 0 cancelled as out of scope, 2 re-timed"), _summary);
+
+        _server.RunTicks(30 * 20 - 100);
+        assertEquals(2, _listener.GetMetrics().closesFired.sum());
+    }
+
+    // a close whose new deadline has already passed runs on the next tick
+    @Test
+    void ShorterTimeThanElapsedRunsRightAway() {
+        PendingClose gate = Schedule(0, Material.OAK_FENCE_GATE);
+        _server.RunTicks(200);
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 5);
+        _listener.SettingsReloaded(_old, Load(settings), summary -> _summary = summary);
+
+        assertEquals(200, gate.deadline);
+        _server.RunTicks(1);
+        assertEquals(1, _listener.GetMetrics().closesFired.sum());
+    }
+
+    @Test
+    void OutOfScopeClosesAreCancelled() {
+        PendingClose trapDoor = Schedule(0, Material.OAK_TRAPDOOR);
+        PendingClose gate = Schedule(4, Material.OAK_FENCE_GATE);
+
+        // another plugin's close, which a reload never touches
+        PendingClose plugin = Schedule(8, Material.OAK_TRAPDOOR);
+        plugin.material = null;
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 60);
+        settings.put(Settings.trapDoorsInScope_Key, Arrays.asList());
+        _listener.SettingsReloaded(_old, Load(settings), summary -> _summary = summary);
+
+        assertFalse(trapDoor.IsScheduled());
+        assertTrue(gate.IsScheduled());
+        assertTrue(plugin.IsScheduled());
+        assertEquals(2, _listener.GetMetrics().PendingCloses());
+        assertEquals(1, _listener.GetMetrics().closesCancelledByReload.sum());
+        assertTrue(_summary.startsWith("Pending closes: 3 checked, 1 cancelled as out of scope, 0 re-timed"), _summary);
+    }
+
+    // a region's own Time applies to the doors inside it
+    @Test
+    void RegionTimesApplyPerDoor() {
+        PendingClose inside = Schedule(10, Material.OAK_FENCE_GATE);
+        PendingClose outside = Schedule(200, Material.OAK_FENCE_GATE);
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.secondsToRemainOpen_Key, 60);
+        String region = Settings.regions_Key + ".quick.";
+        settings.put(region + Settings.regionWorld_Key, "reload");
+        settings.put(region + Settings.regionMin_Key, Arrays.asList(0, 0, -10));
+        settings.put(region + Settings.regionMax_Key, Arrays.asList(99, 255, 10));
+        settings.put(region + Settings.secondsToRemainOpen_Key, 10);
+        _listener.SettingsReloaded(_old, Load(settings), summary -> _summary = summary);
+
+        assertEquals(10 * 20, inside.deadline);
+        assertEquals(60 * 20, outside.deadline);
+        assertEquals(1, _listener.GetMetrics().closesRetimedByReload.sum());
+    }
+}
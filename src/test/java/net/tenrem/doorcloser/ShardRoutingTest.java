@@ -0,0 +1,136 @@
+package net.tenrem.doorcloser;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ShardRoutingTest {
+    // blocks per side of a region section
+    private static final int SECTION_BLOCKS = 16 << CloseShard.SECTION_SHIFT;
+
+    private FakeServer _server;
+
+    @BeforeEach
+    void Setup() {
+        _server = FakeServer.Install();
+        _server.ClearTasks();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Settings.maxBlockUpdatesPerTick_Key, 0);
+        Fakes.LoadSettings(settings);
+    }
+
+    @Test
+    void SectionKeyRoundTrips() {
+        int[][] sections = { { 0, 0 }, { 1, -1 }, { -1, 1 }, { -4096, 4095 }, { 123456, -654321 } };
+
+        for (int[] section : sections) {
+            long sectionKey = CloseShard.SectionKey(3, section[0], section[1]);
+            assertEquals(3, CloseShard.SectionWorld(sectionKey));
+            assertEquals(section[0], CloseShard.SectionX(sectionKey));
+            assertEquals(section[1], CloseShard.SectionZ(sectionKey));
+        }
+    }
+
+    @Test
+    void BlocksMapToTheirRegionSection() {
+        // the corners of one section, and the blocks just outside it
+        long inside = CloseShard.SectionKeyOf(BlockKey.Pack(0, 0, 64, 0));
+        assertEquals(inside, CloseShard.SectionKeyOf(BlockKey.Pack(0, SECTION_BLOCKS - 1, 64, SECTION_BLOCKS - 1)));
+        assertEquals(CloseShard.SectionKey(0, -1, 0), CloseShard.SectionKeyOf(BlockKey.Pack(0, -1, 64, 0)));
+        assertEquals(CloseShard.SectionKey(0, 1, 0), CloseShard.SectionKeyOf(BlockKey.Pack(0, SECTION_BLOCKS, 64, 0)));
+        assertEquals(CloseShard.SectionKey(0, 0, -1), CloseShard.SectionKeyOf(BlockKey.Pack(0, 0, 64, -1)));
+        assertEquals(CloseShard.SectionKey(1, 0, 0), CloseShard.SectionKeyOf(BlockKey.Pack(1, 0, 64, 0)));
+    }
+
+    @Test
+    void FoliaClosesGoToTheShardOfTheirSection() {
+        FakeWorld fakeWorld = _server.AddWorld("shards");
+        World world = fakeWorld.Handle();
+
+        // two doors in each of four sections, two of them on the negative side
+        int[][] at = {
+            { 0, 0 }, { 40, 50 },
+            { SECTION_BLOCKS, 0 }, { SECTION_BLOCKS + 100, 7 },
+            { -1, -1 }, { -SECTION_BLOCKS, -SECTION_BLOCKS },
+            { 5, -SECTION_BLOCKS - 3 }, { 90, -SECTION_BLOCKS - 80 },
+        };
+        Block[] doors = new Block[at.length];
+        for (int i = 0; i < at.length; i++) {
+            doors[i] = fakeWorld.Set(at[i][0], 64, at[i][1], Material.OAK_TRAPDOOR);
+        }
+
+        FakeRegionScheduling scheduling = new FakeRegionScheduling(3);
+        InteractListener listener = new InteractListener(_server.CreatePlugin("DoorCloserTest"), scheduling);
+        listener.Start();
+
+        try {
+            int worldIndex = listener.WorldNumberOf(world);
+            Map<Integer, PendingClose> scheduled = new ConcurrentHashMap<>();
+
+            for (int i = 0; i < doors.length; i++) {
+                int door = i;
+                long key = BlockKey.Pack(worldIndex, at[i][0], 64, at[i][1]);
+                scheduling.RunAt(world, at[i][0] >> 4, at[i][1] >> 4,
+                    () -> scheduled.put(door, listener.ScheduleClose(doors[door], null, key, 1, false)));
+            }
+            scheduling.RunTicks(1);
+
+            assertEquals(doors.length, scheduled.size());
+            for (int i = 0; i < doors.length; i++) {
+                PendingClose close = scheduled.get(i);
+                assertEquals(CloseShard.SectionKeyOf(close.key), close.shard.sectionKey);
+            }
+
+            // pairs share a shard, and no two sections do
+            for (int i = 0; i < doors.length; i += 2) {
+                assertSame(scheduled.get(i).shard, scheduled.get(i + 1).shard);
+                for (int j = i + 2; j < doors.length; j += 2) {
+                    assertNotSame(scheduled.get(i).shard, scheduled.get(j).shard);
+                }
+            }
+
+            // one second, and every close runs on its own region's thread
+            scheduling.RunTicks(22);
+            assertEquals(doors.length, listener.GetMetrics().closesFired.sum());
+            assertEquals(0, listener.GetMetrics().PendingCloses());
+        } finally {
+            listener.CloseAllPending();
+            scheduling.Shutdown();
+        }
+    }
+
+    @Test
+    void BukkitClosesShareOneShard() {
+        FakeWorld fakeWorld = _server.AddWorld("single");
+        Block near = fakeWorld.Set(0, 64, 0, Material.OAK_TRAPDOOR);
+        Block far = fakeWorld.Set(SECTION_BLOCKS * 10, 64, -SECTION_BLOCKS * 10, Material.OAK_TRAPDOOR);
+
+        Plugin plugin = _server.CreatePlugin("DoorCloserTest");
+        InteractListener listener = new InteractListener(plugin, new BukkitScheduling(plugin));
+        listener.Start();
+
+        try {
+            int worldIndex = listener.WorldNumberOf(fakeWorld.Handle());
+            PendingClose first = listener.ScheduleClose(near, null, BlockKey.Pack(worldIndex, 0, 64, 0), 1, false);
+            PendingClose second = listener.ScheduleClose(far, null, BlockKey.Pack(worldIndex, SECTION_BLOCKS * 10, 64, -SECTION_BLOCKS * 10), 1, false);
+            assertSame(first.shard, second.shard);
+
+            _server.RunTicks(21);
+            assertEquals(2, listener.GetMetrics().closesFired.sum());
+        } finally {
+            listener.CloseAllPending();
+        }
+    }
+}